@@ -0,0 +1,100 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.FilterChain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import edu.ucsb.cs156.example.aop.AccessLogFilter;
+import edu.ucsb.cs156.example.aop.AccessLogProperties;
+
+/**
+ * Overhead AccessLogFilter adds to a trivial request: "direct" runs the
+ * rest of the filter chain on its own, "filtered" through the filter, at
+ * the given sample rate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessLogFilterBenchmark {
+
+  public static class PingController {
+    @GetMapping("/api/ping")
+    public ResponseEntity<String> ping() {
+      return ResponseEntity.ok("pong");
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Request {
+    MockHttpServletRequest request;
+    MockHttpServletResponse response;
+
+    @Setup
+    public void setup() throws Exception {
+      request = new MockHttpServletRequest("GET", "/api/ping");
+      Method ping = PingController.class.getMethod("ping");
+      request.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, new HandlerMethod(new PingController(), ping));
+      response = new MockHttpServletResponse();
+    }
+  }
+
+  @Param({ "0.0", "0.01", "1.0" })
+  double sampleRate;
+
+  AccessLogFilter filter;
+  PingController controller = new PingController();
+  FilterChain chain = (request, response) -> controller.ping();
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception {
+    AccessLogProperties properties = new AccessLogProperties();
+    properties.setCapacity(1 << 16);
+    properties.setDefaultSampleRate(sampleRate);
+
+    filter = new AccessLogFilter();
+    ReflectionTestUtils.setField(filter, "properties", properties);
+    filter.afterPropertiesSet();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    filter.destroy();
+  }
+
+  @Benchmark
+  public MockHttpServletResponse direct(Request request) throws Exception {
+    chain.doFilter(request.request, request.response);
+    return request.response;
+  }
+
+  @Benchmark
+  public MockHttpServletResponse filtered(Request request) throws Exception {
+    filter.doFilter(request.request, request.response, chain);
+    return request.response;
+  }
+}
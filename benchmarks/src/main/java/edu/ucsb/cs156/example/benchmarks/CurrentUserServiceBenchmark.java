@@ -0,0 +1,88 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.models.CurrentUser;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.CurrentUserServiceImpl;
+import edu.ucsb.cs156.example.services.GrantedAuthoritiesService;
+
+/**
+ * CurrentUserServiceImpl.getCurrentUser for a logged in OAuth user, with
+ * the User cached in the session ("session") and without a request, so that
+ * every call goes to the repository ("noSession").  The repository is an
+ * in-memory stub, so this measures the service's own overhead.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CurrentUserServiceBenchmark {
+
+  @Param({ "session", "noSession" })
+  String mode;
+
+  CurrentUserServiceImpl service;
+
+  @Setup
+  public void setup() {
+    String email = "cgaucho@ucsb.edu";
+    User user = User.builder().id(1L).email(email).build();
+    UserRepository userRepository = (UserRepository) Proxy.newProxyInstance(
+        UserRepository.class.getClassLoader(), new Class<?>[] { UserRepository.class },
+        (proxy, method, args) -> switch (method.getName()) {
+          case "findByEmail" -> Optional.of(user);
+          case "save" -> args[0];
+          default -> throw new UnsupportedOperationException(method.getName());
+        });
+
+    service = new CurrentUserServiceImpl();
+    ReflectionTestUtils.setField(service, "userRepository", userRepository);
+    ReflectionTestUtils.setField(service, "grantedAuthoritiesService", new GrantedAuthoritiesService());
+    ReflectionTestUtils.setField(service, "adminEmails", List.of("phtcon@ucsb.edu"));
+
+    Map<String, Object> attributes = Map.of("sub", email, "email", email, "email_verified", true);
+    DefaultOAuth2User principal = new DefaultOAuth2User(
+        List.of(new SimpleGrantedAuthority("ROLE_USER")), attributes, "sub");
+    SecurityContextHolder.getContext().setAuthentication(
+        new OAuth2AuthenticationToken(principal, principal.getAuthorities(), "google"));
+
+    if (mode.equals("session")) {
+      RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+    } else {
+      RequestContextHolder.resetRequestAttributes();
+    }
+  }
+
+  @Benchmark
+  public CurrentUser getCurrentUser() {
+    return service.getCurrentUser();
+  }
+}
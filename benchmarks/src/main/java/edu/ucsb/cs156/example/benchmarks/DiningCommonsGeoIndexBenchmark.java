@@ -0,0 +1,81 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.models.NearbyDiningCommons;
+import edu.ucsb.cs156.example.services.DiningCommonsGeoIndex;
+
+/**
+ * Cost of /api/ucsbdiningcommons/nearest and /within once the snapshot is
+ * built: a k-nearest and a 1km radius lookup around campus, plus the cost
+ * of rebuilding the index on a write.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DiningCommonsGeoIndexBenchmark {
+
+  @Param({ "10", "1000", "100000" })
+  int commons;
+
+  List<UCSBDiningCommons> rows;
+  DiningCommonsGeoIndex index;
+  double[] lats;
+  double[] lons;
+  int next;
+
+  @Setup
+  public void setup() {
+    Random random = new Random(156);
+    rows = new ArrayList<>(commons);
+    for (int i = 0; i < commons; i++) {
+      rows.add(UCSBDiningCommons.builder().code("commons-" + i).name("Commons " + i)
+          .latitude(34.40 + random.nextDouble() * 0.03)
+          .longitude(-119.87 + random.nextDouble() * 0.04)
+          .build());
+    }
+    index = DiningCommonsGeoIndex.of(rows);
+    lats = new double[1024];
+    lons = new double[1024];
+    for (int i = 0; i < lats.length; i++) {
+      lats[i] = 34.40 + random.nextDouble() * 0.03;
+      lons[i] = -119.87 + random.nextDouble() * 0.04;
+    }
+  }
+
+  @Benchmark
+  public List<NearbyDiningCommons> nearest5() {
+    int i = next++ & (lats.length - 1);
+    return index.nearest(lats[i], lons[i], 5);
+  }
+
+  @Benchmark
+  public List<NearbyDiningCommons> within1km() {
+    int i = next++ & (lats.length - 1);
+    return index.within(lats[i], lons[i], 1000);
+  }
+
+  @Benchmark
+  public DiningCommonsGeoIndex rebuild() {
+    return DiningCommonsGeoIndex.of(rows);
+  }
+}
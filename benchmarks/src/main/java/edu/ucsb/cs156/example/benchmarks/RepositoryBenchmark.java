@@ -0,0 +1,181 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+
+import edu.ucsb.cs156.example.config.SecondLevelCacheConfig;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+
+/**
+ * findById and save through the real Spring Data repositories, on an
+ * embedded H2 database migrated by the application's Flyway scripts and
+ * using the application's JPA batching settings.  The update and delete
+ * pairs compare what the PUT and DELETE handlers used to do (load the row,
+ * then save or delete it) with the single statements they issue now.
+ * Everything runs with and without the second-level cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+  static final int SEED_ROWS = 10_000;
+
+  @SpringBootConfiguration
+  @EnableAutoConfiguration
+  @EntityScan(basePackageClasses = Restaurant.class)
+  @EnableJpaRepositories(basePackageClasses = RestaurantRepository.class)
+  @Import(SecondLevelCacheConfig.class)
+  static class JpaOnly {
+  }
+
+  @Param({ "false", "true" })
+  boolean secondLevelCache;
+
+  ConfigurableApplicationContext context;
+  RestaurantRepository restaurantRepository;
+  UCSBDateRepository ucsbDateRepository;
+  long[] restaurantIds;
+  long[] restaurantVersions;
+  long[] ucsbDateIds;
+
+  @Setup
+  public void setup() {
+    context = new SpringApplicationBuilder(JpaOnly.class)
+        .web(WebApplicationType.NONE)
+        .properties(
+            "spring.datasource.url=jdbc:h2:mem:benchmarks;DB_CLOSE_DELAY=-1",
+            "spring.jpa.hibernate.ddl-auto=validate",
+            "spring.jpa.open-in-view=false",
+            "spring.flyway.locations=classpath:db/migration/common,classpath:db/migration/{vendor}",
+            "spring.jpa.properties.hibernate.jdbc.batch_size=50",
+            "spring.jpa.properties.hibernate.order_inserts=true",
+            "spring.jpa.properties.hibernate.order_updates=true")
+        // application.properties would override a default property
+        .run("--app.cache.enabled=" + secondLevelCache);
+    restaurantRepository = context.getBean(RestaurantRepository.class);
+    ucsbDateRepository = context.getBean(UCSBDateRepository.class);
+
+    List<Restaurant> restaurants = new ArrayList<>(SEED_ROWS);
+    List<UCSBDate> ucsbDates = new ArrayList<>(SEED_ROWS);
+    for (int i = 0; i < SEED_ROWS; i++) {
+      restaurants.add(restaurant(i));
+      ucsbDates.add(ucsbDate(i));
+    }
+    restaurantIds = ids(restaurantRepository.saveAll(restaurants), Restaurant::getId);
+    ucsbDateIds = ids(ucsbDateRepository.saveAll(ucsbDates), UCSBDate::getId);
+    restaurantVersions = new long[SEED_ROWS];
+  }
+
+  @TearDown
+  public void tearDown() {
+    context.close();
+  }
+
+  @Benchmark
+  public Object restaurantFindById() {
+    return restaurantRepository.findById(pick(restaurantIds));
+  }
+
+  @Benchmark
+  public Object ucsbDateFindById() {
+    return ucsbDateRepository.findById(pick(ucsbDateIds));
+  }
+
+  @Benchmark
+  public Object restaurantSave() {
+    return restaurantRepository.save(restaurant(ThreadLocalRandom.current().nextInt()));
+  }
+
+  @Benchmark
+  public Object ucsbDateSave() {
+    return ucsbDateRepository.save(ucsbDate(ThreadLocalRandom.current().nextInt()));
+  }
+
+  @Benchmark
+  public Object restaurantLoadAndSave() {
+    int i = ThreadLocalRandom.current().nextInt(SEED_ROWS);
+    Restaurant restaurant = restaurantRepository.findById(restaurantIds[i]).orElseThrow();
+    restaurant.setDescription("Edited " + System.nanoTime());
+    return restaurantRepository.save(restaurant);
+  }
+
+  @Benchmark
+  public Object restaurantUpdateVersioned() {
+    int i = ThreadLocalRandom.current().nextInt(SEED_ROWS);
+    Restaurant restaurant = restaurant(i);
+    restaurant.setId(restaurantIds[i]);
+    restaurant.setVersion(restaurantVersions[i]);
+    restaurant.setDescription("Edited " + System.nanoTime());
+    restaurantRepository.updateVersioned(restaurant);
+    restaurantVersions[i] = restaurant.getVersion();
+    return restaurant;
+  }
+
+  // the deletes each insert the row they delete; restaurantSave is the
+  // cost of that insert on its own
+  @Benchmark
+  public Object restaurantInsertThenLoadAndDelete() {
+    long id = restaurantRepository.save(restaurant(ThreadLocalRandom.current().nextInt())).getId();
+    Restaurant restaurant = restaurantRepository.findById(id).orElseThrow();
+    restaurantRepository.delete(restaurant);
+    return restaurant;
+  }
+
+  @Benchmark
+  public int restaurantInsertThenDeleteOne() {
+    long id = restaurantRepository.save(restaurant(ThreadLocalRandom.current().nextInt())).getId();
+    return restaurantRepository.deleteOne(id);
+  }
+
+  private static long pick(long[] ids) {
+    return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+  }
+
+  private static <T> long[] ids(Iterable<T> saved, ToLongFunction<T> id) {
+    List<Long> ids = new ArrayList<>();
+    saved.forEach(row -> ids.add(id.applyAsLong(row)));
+    return ids.stream().mapToLong(Long::longValue).toArray();
+  }
+
+  private static Restaurant restaurant(int i) {
+    return Restaurant.builder().name("Restaurant " + i).address(i + " State St")
+        .city("Santa Barbara").state("CA").zip("93101").description("Benchmark row " + i).build();
+  }
+
+  private static UCSBDate ucsbDate(int i) {
+    return UCSBDate.builder().quarterYYYYQ("20221").name("Date " + i)
+        .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00").plusMinutes(i % 100_000)).build();
+  }
+}
@@ -0,0 +1,94 @@
+package edu.ucsb.cs156.example.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.entities.UCSBDate;
+
+/**
+ * Cost of writing an /all response body: Jackson serialization of an
+ * Iterable of entities, configured the way Spring Boot configures it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SerializationBenchmark {
+
+  @Param({ "1000", "100000", "1000000" })
+  int rows;
+
+  ObjectMapper mapper;
+  Iterable<Restaurant> restaurants;
+  Iterable<UCSBDate> ucsbDates;
+
+  @Setup
+  public void setup() {
+    mapper = Jackson2ObjectMapperBuilder.json()
+        .featuresToDisable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS)
+        .build();
+
+    List<Restaurant> r = new ArrayList<>(rows);
+    List<UCSBDate> d = new ArrayList<>(rows);
+    LocalDateTime start = LocalDateTime.parse("2022-01-03T00:00:00");
+    for (int i = 0; i < rows; i++) {
+      r.add(Restaurant.builder().id(i).name("Restaurant " + i).address(i + " State St")
+          .city("Santa Barbara").state("CA").zip("93101").description("Benchmark row " + i).build());
+      d.add(UCSBDate.builder().id(i).quarterYYYYQ("2022" + (1 + i % 4)).name("Date " + i)
+          .localDateTime(start.plusMinutes(i)).build());
+    }
+    restaurants = r;
+    ucsbDates = d;
+  }
+
+  @Benchmark
+  public long restaurants() throws IOException {
+    CountingOutputStream out = new CountingOutputStream();
+    mapper.writeValue(out, restaurants);
+    return out.count;
+  }
+
+  @Benchmark
+  public long ucsbDates() throws IOException {
+    CountingOutputStream out = new CountingOutputStream();
+    mapper.writeValue(out, ucsbDates);
+    return out.count;
+  }
+
+  static class CountingOutputStream extends OutputStream {
+    long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package edu.ucsb.cs156.example.loadtest;
+
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+/**
+ * What the load generator needs to know about one entity controller: its
+ * base path, the name of its key (id or code) and how to make the n-th
+ * row, used for POST parameters, PUT bodies and seeding via /bulk.
+ */
+public record EntityTarget(String name, String path, String key, IntFunction<Map<String, Object>> row) {
+
+  public boolean hasStringKey() {
+    return !key.equals("id");
+  }
+
+  public static final List<EntityTarget> ALL = List.of(
+      new EntityTarget("animals", "/api/animals", "id", n -> fields(
+          "name", "Animal " + n, "genus", "Genus" + n % 50, "species", "species" + n)),
+      new EntityTarget("books", "/api/Book", "id", n -> fields(
+          "title", "Book " + n, "author", "Author " + n % 200, "genre", "Genre" + n % 20)),
+      new EntityTarget("movies", "/api/movies", "id", n -> fields(
+          "title", "Movie " + n, "rating", (n % 50) / 10.0, "views", n % 10_000)),
+      new EntityTarget("musics", "/api/musics", "id", n -> fields(
+          "title", "Song " + n, "author", "Artist " + n % 200, "rating", (n % 50) / 10.0, "views", n % 10_000)),
+      new EntityTarget("parks", "/api/parks", "id", n -> fields(
+          "name", "Park " + n, "address", n + " Cabrillo Blvd", "rating", String.valueOf(n % 5))),
+      new EntityTarget("restaurants", "/api/restaurant", "id", n -> fields(
+          "name", "Restaurant " + n, "address", n + " State St", "city", "Santa Barbara",
+          "state", "CA", "zip", "931" + String.format("%02d", n % 100), "description", "Load test row " + n)),
+      new EntityTarget("ucsbdates", "/api/ucsbdates", "id", n -> fields(
+          "quarterYYYYQ", "2022" + (1 + n % 4), "name", "Date " + n,
+          "localDateTime", LocalDateTime.parse("2022-01-03T00:00:00").plusHours(n % 100_000).toString())),
+      new EntityTarget("ucsbdiningcommons", "/api/ucsbdiningcommons", "code", n -> fields(
+          "code", "lt-" + n, "name", "Commons " + n, "hasSackMeal", n % 2 == 0,
+          "hasTakeOutMeal", n % 3 == 0, "hasDiningCam", n % 5 == 0,
+          "latitude", 34.41 + (n % 100) / 10_000.0, "longitude", -119.84 - (n % 100) / 10_000.0)));
+
+  private static Map<String, Object> fields(Object... keysAndValues) {
+    Map<String, Object> fields = new LinkedHashMap<>();
+    for (int i = 0; i < keysAndValues.length; i += 2) {
+      fields.put((String) keysAndValues[i], keysAndValues[i + 1]);
+    }
+    return fields;
+  }
+}
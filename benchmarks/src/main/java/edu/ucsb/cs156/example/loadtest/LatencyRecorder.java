@@ -0,0 +1,49 @@
+package edu.ucsb.cs156.example.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies of one endpoint as seen by one worker thread; workers never
+ * share a recorder, so nothing here is synchronized.  merge() combines the
+ * workers' recorders once the run is over.
+ */
+public class LatencyRecorder {
+  private long[] nanos = new long[1024];
+  private int count;
+  private long errors;
+
+  public void record(long latencyNanos, boolean ok) {
+    if (count == nanos.length) {
+      nanos = Arrays.copyOf(nanos, count * 2);
+    }
+    nanos[count++] = latencyNanos;
+    if (!ok) {
+      errors++;
+    }
+  }
+
+  public void merge(LatencyRecorder other) {
+    for (int i = 0; i < other.count; i++) {
+      record(other.nanos[i], true);
+    }
+    errors += other.errors;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  public long errors() {
+    return errors;
+  }
+
+  /** Latency at quantile q (0..1) in milliseconds; sorts the samples in place. */
+  public double percentileMillis(double q) {
+    if (count == 0) {
+      return 0.0;
+    }
+    Arrays.sort(nanos, 0, count);
+    int index = (int) Math.min(count - 1, Math.ceil(q * count) - 1);
+    return nanos[Math.max(index, 0)] / 1_000_000.0;
+  }
+}
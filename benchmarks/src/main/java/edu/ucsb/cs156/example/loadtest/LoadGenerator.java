@@ -0,0 +1,334 @@
+package edu.ucsb.cs156.example.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Replays a weighted mix of GET/POST/PUT/DELETE requests against the eight
+ * entity controllers from a number of concurrent virtual users, each with
+ * its own USER and ADMIN session from MockOAuthLoginController, and
+ * reports throughput and p50/p99/p999 latency per endpoint.
+ *
+ * Without --target it starts a LoadTestServer in-process on a free port.
+ * See docs/load-testing.md for the options.
+ */
+public class LoadGenerator {
+
+  static final String CSRF_TOKEN = "loadtest";
+
+  record Options(URI target, int users, Duration warmup, Duration duration, Map<String, Integer> mix,
+      List<EntityTarget> entities, int seedRows, Path json) {
+
+    static Options parse(String[] args) {
+      Map<String, String> values = new HashMap<>();
+      for (String arg : args) {
+        if (!arg.startsWith("--") || !arg.contains("=")) {
+          throw new IllegalArgumentException("expected --name=value, got " + arg);
+        }
+        values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      }
+      String target = values.get("target");
+      String entities = values.getOrDefault("entities", "all");
+      String json = values.get("json");
+      return new Options(
+          target == null ? null : URI.create(target),
+          Integer.parseInt(values.getOrDefault("users", "8")),
+          Duration.ofSeconds(Long.parseLong(values.getOrDefault("warmup", "10"))),
+          Duration.ofSeconds(Long.parseLong(values.getOrDefault("duration", "30"))),
+          parseMix(values.getOrDefault("mix", "GET:70,POST:10,PUT:10,DELETE:10")),
+          entities.equals("all") ? EntityTarget.ALL
+              : EntityTarget.ALL.stream().filter(e -> List.of(entities.split(",")).contains(e.name())).toList(),
+          Integer.parseInt(values.getOrDefault("seed", "1000")),
+          json == null ? null : Path.of(json));
+    }
+
+    private static Map<String, Integer> parseMix(String mix) {
+      Map<String, Integer> weights = new LinkedHashMap<>();
+      for (String part : mix.split(",")) {
+        String[] kv = part.split(":");
+        String method = kv[0].trim().toUpperCase();
+        if (!List.of("GET", "POST", "PUT", "DELETE").contains(method)) {
+          throw new IllegalArgumentException("unknown method in --mix: " + method);
+        }
+        weights.put(method, Integer.parseInt(kv[1].trim()));
+      }
+      return weights;
+    }
+  }
+
+  /** A logged in session: the cookies and CSRF header every request carries. */
+  record Session(String cookie) {
+    HttpRequest.Builder request(URI uri) {
+      return HttpRequest.newBuilder(uri)
+          .timeout(Duration.ofSeconds(30))
+          .header("Cookie", cookie + "; XSRF-TOKEN=" + CSRF_TOKEN)
+          .header("X-XSRF-TOKEN", CSRF_TOKEN);
+    }
+  }
+
+  private final Options options;
+  private final URI base;
+  private final HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+  private final ObjectMapper mapper = new ObjectMapper();
+
+  public LoadGenerator(Options options, URI base) {
+    this.options = options;
+    this.base = base;
+  }
+
+  public static void main(String[] args) throws Exception {
+    Options options = Options.parse(args);
+    ConfigurableApplicationContext server = null;
+    URI base = options.target();
+    if (base == null) {
+      server = LoadTestServer.start(0);
+      base = URI.create("http://localhost:" + LoadTestServer.port(server));
+    }
+    try {
+      new LoadGenerator(options, base).run();
+    } finally {
+      if (server != null) {
+        server.close();
+      }
+    }
+  }
+
+  public void run() throws Exception {
+    Session seeder = login("loadtest-seed@ucsb.edu", true);
+    Map<String, List<String>> keys = new HashMap<>();
+    for (EntityTarget entity : options.entities()) {
+      seed(seeder, entity);
+      keys.put(entity.name(), fetchKeys(seeder, entity));
+    }
+
+    long start = System.nanoTime();
+    long measureFrom = start + options.warmup().toNanos();
+    long end = measureFrom + options.duration().toNanos();
+    System.err.printf("%d users, warmup %ds, measuring %ds against %s%n", options.users(),
+        options.warmup().toSeconds(), options.duration().toSeconds(), base);
+
+    ExecutorService pool = Executors.newFixedThreadPool(options.users());
+    List<Future<Map<String, LatencyRecorder>>> results = new ArrayList<>();
+    for (int w = 0; w < options.users(); w++) {
+      Worker worker = new Worker(w, login("loadtest-user-" + w + "@ucsb.edu", false),
+          login("loadtest-admin-" + w + "@ucsb.edu", true), partition(keys, w));
+      results.add(pool.submit(() -> worker.run(measureFrom, end)));
+    }
+    Map<String, LatencyRecorder> merged = new TreeMap<>();
+    for (Future<Map<String, LatencyRecorder>> result : results) {
+      result.get().forEach((label, recorder) -> merged.computeIfAbsent(label, l -> new LatencyRecorder()).merge(recorder));
+    }
+    pool.shutdown();
+    report(merged, options.duration().toNanos() / 1e9);
+  }
+
+  private Map<String, List<String>> partition(Map<String, List<String>> keys, int worker) {
+    Map<String, List<String>> mine = new HashMap<>();
+    keys.forEach((entity, all) -> mine.put(entity, IntStream.range(0, all.size())
+        .filter(i -> i % options.users() == worker).mapToObj(all::get)
+        .collect(Collectors.toCollection(ArrayList::new))));
+    return mine;
+  }
+
+  private class Worker {
+    final int id;
+    final Session user;
+    final Session admin;
+    final Map<String, List<String>> keys;
+    final Map<String, LatencyRecorder> recorders = new HashMap<>();
+    int created;
+
+    Worker(int id, Session user, Session admin, Map<String, List<String>> keys) {
+      this.id = id;
+      this.user = user;
+      this.admin = admin;
+      this.keys = keys;
+    }
+
+    Map<String, LatencyRecorder> run(long measureFrom, long end) {
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+      int total = options.mix().values().stream().mapToInt(Integer::intValue).sum();
+      long now;
+      while ((now = System.nanoTime()) < end) {
+        EntityTarget entity = options.entities().get(random.nextInt(options.entities().size()));
+        String method = pick(random.nextInt(total));
+        List<String> mine = keys.get(entity.name());
+        if (!method.equals("GET") && !method.equals("POST") && mine.isEmpty()) {
+          method = "POST";
+        }
+        boolean measured = now >= measureFrom;
+        switch (method) {
+          case "GET" -> {
+            if (mine.isEmpty() || random.nextBoolean()) {
+              send(measured, "GET " + entity.path() + "/all", user.request(uri(entity.path() + "/all", Map.of("limit", 100))).GET());
+            } else {
+              String key = mine.get(random.nextInt(mine.size()));
+              send(measured, "GET " + entity.path(), user.request(uri(entity.path(), Map.of(entity.key(), key))).GET());
+            }
+          }
+          case "POST" -> {
+            HttpResponse<String> response = send(measured, "POST " + entity.path() + "/post",
+                admin.request(uri(entity.path() + "/post", entity.row().apply(nextRow()))).POST(HttpRequest.BodyPublishers.noBody()));
+            if (response != null && response.statusCode() == 200) {
+              mine.add(keyOf(entity, response.body()));
+            }
+          }
+          case "PUT" -> {
+            String key = mine.get(random.nextInt(mine.size()));
+            Map<String, Object> row = entity.row().apply(nextRow());
+            if (entity.hasStringKey()) {
+              row.put(entity.key(), key);
+            }
+            send(measured, "PUT " + entity.path(), admin.request(uri(entity.path(), Map.of(entity.key(), key)))
+                .header("Content-Type", "application/json").PUT(HttpRequest.BodyPublishers.ofString(json(row))));
+          }
+          case "DELETE" -> {
+            String key = mine.remove(mine.size() - 1);
+            send(measured, "DELETE " + entity.path(), admin.request(uri(entity.path(), Map.of(entity.key(), key))).DELETE());
+          }
+          default -> throw new IllegalStateException(method);
+        }
+      }
+      return recorders;
+    }
+
+    private int nextRow() {
+      return 1_000_000 * (id + 1) + created++;
+    }
+
+    private String pick(int roll) {
+      for (Map.Entry<String, Integer> weight : options.mix().entrySet()) {
+        roll -= weight.getValue();
+        if (roll < 0) {
+          return weight.getKey();
+        }
+      }
+      throw new IllegalStateException("empty --mix");
+    }
+
+    private HttpResponse<String> send(boolean measured, String label, HttpRequest.Builder request) {
+      long start = System.nanoTime();
+      HttpResponse<String> response = null;
+      try {
+        response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+      } catch (IOException e) {
+        // counted as an error below
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      if (measured) {
+        boolean ok = response != null && response.statusCode() < 400;
+        recorders.computeIfAbsent(label, l -> new LatencyRecorder()).record(System.nanoTime() - start, ok);
+      }
+      return response;
+    }
+  }
+
+  private Session login(String email, boolean admin) throws IOException, InterruptedException {
+    HttpResponse<String> response = client.send(
+        HttpRequest.newBuilder(uri("/loadtest/login", Map.of("email", email, "admin", admin))).GET().build(),
+        HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException("mock login failed with " + response.statusCode()
+          + "; is the server running with the loadtest profile?");
+    }
+    String cookie = response.headers().allValues("Set-Cookie").stream()
+        .filter(c -> c.startsWith("JSESSIONID="))
+        .map(c -> c.substring(0, c.indexOf(';') < 0 ? c.length() : c.indexOf(';')))
+        .findFirst()
+        .orElseThrow(() -> new IllegalStateException("mock login did not create a session"));
+    return new Session(cookie);
+  }
+
+  private void seed(Session admin, EntityTarget entity) throws IOException, InterruptedException {
+    List<Map<String, Object>> rows = IntStream.range(0, options.seedRows()).mapToObj(entity.row()).toList();
+    HttpResponse<String> response = client.send(admin.request(uri(entity.path() + "/bulk", Map.of()))
+        .header("Content-Type", "application/json")
+        .POST(HttpRequest.BodyPublishers.ofString(json(rows))).build(), HttpResponse.BodyHandlers.ofString());
+    if (response.statusCode() != 200) {
+      throw new IllegalStateException("seeding " + entity.name() + " failed with " + response.statusCode());
+    }
+  }
+
+  private List<String> fetchKeys(Session session, EntityTarget entity) throws IOException, InterruptedException {
+    HttpResponse<String> response = client.send(session.request(uri(entity.path() + "/all", Map.of())).GET().build(),
+        HttpResponse.BodyHandlers.ofString());
+    List<String> keys = new ArrayList<>();
+    mapper.readTree(response.body()).forEach(row -> keys.add(row.get(entity.key()).asText()));
+    return keys;
+  }
+
+  private String keyOf(EntityTarget entity, String body) {
+    try {
+      JsonNode row = mapper.readTree(body);
+      return row.get(entity.key()).asText();
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private String json(Object value) {
+    try {
+      return mapper.writeValueAsString(value);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private URI uri(String path, Map<String, ?> params) {
+    String query = params.entrySet().stream()
+        .map(e -> e.getKey() + "=" + URLEncoder.encode(String.valueOf(e.getValue()), StandardCharsets.UTF_8))
+        .collect(Collectors.joining("&"));
+    return base.resolve(query.isEmpty() ? path : path + "?" + query);
+  }
+
+  private void report(Map<String, LatencyRecorder> recorders, double seconds) throws IOException {
+    System.out.printf("%-40s %9s %7s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms");
+    List<Map<String, Object>> rows = new ArrayList<>();
+    long total = 0;
+    for (Map.Entry<String, LatencyRecorder> entry : recorders.entrySet()) {
+      LatencyRecorder r = entry.getValue();
+      total += r.count();
+      Map<String, Object> row = new LinkedHashMap<>();
+      row.put("endpoint", entry.getKey());
+      row.put("requests", r.count());
+      row.put("errors", r.errors());
+      row.put("throughput", r.count() / seconds);
+      row.put("p50", r.percentileMillis(0.50));
+      row.put("p99", r.percentileMillis(0.99));
+      row.put("p999", r.percentileMillis(0.999));
+      rows.add(row);
+      System.out.printf("%-40s %9d %7d %9.1f %9.2f %9.2f %9.2f%n", entry.getKey(), r.count(), r.errors(),
+          r.count() / seconds, row.get("p50"), row.get("p99"), row.get("p999"));
+    }
+    System.out.printf("total %d requests, %.1f req/s%n", total, total / seconds);
+    if (options.json() != null) {
+      Files.writeString(options.json(), mapper.writerWithDefaultPrettyPrinter().writeValueAsString(rows));
+    }
+  }
+}
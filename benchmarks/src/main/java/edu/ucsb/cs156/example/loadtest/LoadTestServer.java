@@ -0,0 +1,28 @@
+package edu.ucsb.cs156.example.loadtest;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import edu.ucsb.cs156.example.ExampleApplication;
+
+/**
+ * The application with the loadtest profile: in-memory H2 plus the mock
+ * login.  Run it on its own to load test from another machine, or let
+ * LoadGenerator start it in-process.
+ */
+public class LoadTestServer {
+
+  public static ConfigurableApplicationContext start(int port) {
+    return new SpringApplicationBuilder(ExampleApplication.class)
+        .run("--spring.profiles.active=loadtest", "--server.port=" + port);
+  }
+
+  public static int port(ConfigurableApplicationContext context) {
+    return Integer.parseInt(context.getEnvironment().getProperty("local.server.port"));
+  }
+
+  public static void main(String[] args) {
+    int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+    System.err.println("load test server listening on port " + port(start(port)));
+  }
+}
@@ -0,0 +1,57 @@
+package edu.ucsb.cs156.example.loadtest;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.security.oauth2.core.user.OAuth2UserAuthority;
+import org.springframework.security.web.context.HttpSessionSecurityContextRepository;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+/**
+ * Stands in for the Google login when load testing: stores an
+ * OAuth2AuthenticationToken shaped like the one SecurityConfig produces
+ * in a new session.  Only exists in the benchmarks build, and only with
+ * the loadtest profile.
+ */
+@Profile("loadtest")
+@RestController
+public class MockOAuthLoginController {
+
+  private final HttpSessionSecurityContextRepository contexts = new HttpSessionSecurityContextRepository();
+
+  @GetMapping("/loadtest/login")
+  public ResponseEntity<String> login(
+      @RequestParam String email,
+      @RequestParam(defaultValue = "false") boolean admin,
+      HttpServletRequest request, HttpServletResponse response) {
+
+    Map<String, Object> attributes = Map.of(
+        "sub", email, "email", email, "email_verified", true, "name", email);
+    Set<GrantedAuthority> authorities = new HashSet<>();
+    authorities.add(new OAuth2UserAuthority("ROLE_USER", attributes));
+    if (admin) {
+      authorities.add(new SimpleGrantedAuthority("ROLE_ADMIN"));
+    }
+    DefaultOAuth2User principal = new DefaultOAuth2User(authorities, attributes, "sub");
+
+    SecurityContext context = SecurityContextHolder.createEmptyContext();
+    context.setAuthentication(new OAuth2AuthenticationToken(principal, authorities, "google"));
+    request.getSession(true);
+    contexts.saveContext(context, request, response);
+    return ResponseEntity.ok(email);
+  }
+}
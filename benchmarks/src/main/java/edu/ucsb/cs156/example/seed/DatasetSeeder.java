@@ -0,0 +1,295 @@
+package edu.ucsb.cs156.example.seed;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.flywaydb.core.Flyway;
+
+/**
+ * Fills every entity table with synthetic rows for scale testing, using
+ * batched JDBC inserts rather than the controllers.  See
+ * docs/load-testing.md for the options.
+ *
+ * Ids for the sequence-backed tables are reserved the way Hibernate's
+ * pooled optimizer does it (one nextval per block of 50), so seeding is
+ * safe while the application is running against the same database.
+ */
+public class DatasetSeeder {
+
+  static final int ID_BLOCK = 50;
+
+  static final List<String> TABLES = List.of(
+      "animals", "books", "movies", "musics", "parks", "restaurants", "ucsbdates", "ucsbdiningcommons", "users");
+
+  static final String[] WORDS = {
+      "golden", "quiet", "coastal", "hidden", "sunny", "ancient", "electric", "velvet", "silver", "wild",
+      "lagoon", "harbor", "canyon", "mesa", "garden", "island", "river", "summit", "meadow", "pier",
+      "tacos", "noodles", "espresso", "burritos", "sushi", "pizza", "salads", "dumplings", "curry", "bagels" };
+  static final String[] FIRST_NAMES = {
+      "Chris", "Alex", "Sam", "Jordan", "Taylor", "Morgan", "Casey", "Riley", "Jamie", "Avery",
+      "Priya", "Wei", "Diego", "Fatima", "Kenji", "Amara", "Lucas", "Sofia", "Omar", "Mei" };
+  static final String[] LAST_NAMES = {
+      "Gaucho", "Nguyen", "Garcia", "Smith", "Kim", "Patel", "Lopez", "Chen", "Johnson", "Martinez",
+      "Brown", "Singh", "Wang", "Davis", "Hernandez", "Lee", "Wilson", "Ali", "Tanaka", "Okafor" };
+  static final String[] CITIES = {
+      "Santa Barbara", "Goleta", "Isla Vista", "Carpinteria", "Montecito", "Ventura", "Lompoc",
+      "Santa Maria", "Solvang", "Buellton", "Oxnard", "San Luis Obispo", "Los Angeles", "San Diego" };
+  static final String[] QUARTERS = { "1", "2", "3", "4" };
+  static final String[] QUARTER_NAMES = { "Winter", "Spring", "Summer", "Fall" };
+
+  record Options(String url, String username, String password, Map<String, Integer> rows, int batch,
+      long seed, double skew, int fromYear, int toYear, int minDescription, int maxDescription,
+      double admins, boolean migrate) {
+
+    static Options parse(String[] args) {
+      Map<String, String> values = new HashMap<>();
+      for (String arg : args) {
+        if (!arg.startsWith("--") || !arg.contains("=")) {
+          throw new IllegalArgumentException("expected --name=value, got " + arg);
+        }
+        values.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+      }
+      int defaultRows = Integer.parseInt(values.getOrDefault("rows", "100000"));
+      Map<String, Integer> rows = new HashMap<>();
+      for (String table : TABLES) {
+        rows.put(table, Integer.parseInt(values.getOrDefault("rows." + table, String.valueOf(defaultRows))));
+      }
+      String[] years = values.getOrDefault("years", "2000-2030").split("-");
+      String[] description = values.getOrDefault("description", "40-255").split("-");
+      return new Options(
+          values.getOrDefault("url", "jdbc:h2:file:./target/db-development"),
+          values.getOrDefault("username", "sa"),
+          values.getOrDefault("password", "password"),
+          rows,
+          Integer.parseInt(values.getOrDefault("batch", "1000")),
+          Long.parseLong(values.getOrDefault("seed", "42")),
+          Double.parseDouble(values.getOrDefault("skew", "1.1")),
+          Integer.parseInt(years[0]), Integer.parseInt(years[1]),
+          Integer.parseInt(description[0]), Math.min(255, Integer.parseInt(description[1])),
+          Double.parseDouble(values.getOrDefault("admins", "0.01")),
+          Boolean.parseBoolean(values.getOrDefault("migrate", "true")));
+    }
+  }
+
+  /** Binds the parameters of one row; n is the row's number within this run. */
+  interface RowBinder {
+    void bind(PreparedStatement insert, int n) throws SQLException;
+  }
+
+  private final Options options;
+  private final Random random;
+  private final String run;
+  private final Zipf authors;
+  private final Zipf genres;
+  private final Zipf genera;
+  private final Zipf cities;
+  private final Zipf views;
+
+  public DatasetSeeder(Options options) {
+    this.options = options;
+    this.random = new Random(options.seed());
+    // keeps unique columns (users.email, ucsbdiningcommons.code) unique across runs
+    this.run = Long.toString(System.currentTimeMillis(), 36);
+    this.authors = new Zipf(5_000, options.skew());
+    this.genres = new Zipf(40, options.skew());
+    this.genera = new Zipf(2_000, options.skew());
+    this.cities = new Zipf(CITIES.length, options.skew());
+    this.views = new Zipf(100_000, options.skew());
+  }
+
+  public static void main(String[] args) throws SQLException {
+    Options options = Options.parse(args);
+    if (options.migrate()) {
+      migrate(options);
+    }
+    try (Connection connection = DriverManager.getConnection(options.url(), options.username(), options.password())) {
+      new DatasetSeeder(options).seed(connection);
+    }
+  }
+
+  static void migrate(Options options) {
+    String vendor = options.url().startsWith("jdbc:postgresql:") ? "postgresql" : "h2";
+    Flyway.configure()
+        .dataSource(options.url(), options.username(), options.password())
+        .locations("classpath:db/migration/common", "classpath:db/migration/" + vendor)
+        .baselineOnMigrate(true)
+        .load()
+        .migrate();
+  }
+
+  public void seed(Connection connection) throws SQLException {
+    connection.setAutoCommit(false);
+    insert(connection, "animals", "animals_seq", "INSERT INTO animals (id, name, genus, species) VALUES (?, ?, ?, ?)",
+        (ps, n) -> {
+          int genus = genera.next(random);
+          ps.setString(2, capitalize(word()) + " " + FIRST_NAMES[n % FIRST_NAMES.length]);
+          ps.setString(3, "Genus" + genus);
+          ps.setString(4, "genus" + genus + "-" + word() + "-" + random.nextInt(1000));
+        });
+    insert(connection, "books", "books_seq", "INSERT INTO books (id, title, author, genre) VALUES (?, ?, ?, ?)",
+        (ps, n) -> {
+          ps.setString(2, title(2 + random.nextInt(4)));
+          ps.setString(3, person(authors.next(random)));
+          ps.setString(4, "Genre " + genres.next(random));
+        });
+    insert(connection, "movies", "movies_seq", "INSERT INTO movies (id, title, rating, views) VALUES (?, ?, ?, ?)",
+        (ps, n) -> {
+          ps.setString(2, title(1 + random.nextInt(4)));
+          ps.setDouble(3, rating());
+          ps.setInt(4, views.next(random));
+        });
+    insert(connection, "musics", "musics_seq", "INSERT INTO musics (id, title, author, rating, views) VALUES (?, ?, ?, ?, ?)",
+        (ps, n) -> {
+          ps.setString(2, title(1 + random.nextInt(5)));
+          ps.setString(3, person(authors.next(random)));
+          ps.setFloat(4, (float) rating());
+          ps.setInt(5, views.next(random));
+        });
+    insert(connection, "parks", "parks_seq", "INSERT INTO parks (id, name, address, rating) VALUES (?, ?, ?, ?)",
+        (ps, n) -> {
+          ps.setString(2, title(2) + " Park");
+          ps.setString(3, address());
+          ps.setString(4, String.valueOf(1 + random.nextInt(5)));
+        });
+    insert(connection, "restaurants", "restaurants_seq",
+        "INSERT INTO restaurants (id, name, address, city, state, zip, description) VALUES (?, ?, ?, ?, ?, ?, ?)",
+        (ps, n) -> {
+          int city = cities.next(random);
+          ps.setString(2, title(2));
+          ps.setString(3, address());
+          ps.setString(4, CITIES[city]);
+          ps.setString(5, "CA");
+          ps.setString(6, String.valueOf(93001 + city * 7 + random.nextInt(5)));
+          ps.setString(7, description());
+        });
+    insert(connection, "ucsbdates", "ucsbdates_seq",
+        "INSERT INTO ucsbdates (id, quarteryyyyq, name, local_date_time) VALUES (?, ?, ?, ?)",
+        (ps, n) -> {
+          int year = options.fromYear() + random.nextInt(options.toYear() - options.fromYear() + 1);
+          int quarter = random.nextInt(4);
+          LocalDateTime when = LocalDateTime.of(year, 1 + quarter * 3, 1, 8, 0)
+              .plusDays(random.nextInt(90)).plusMinutes(random.nextInt(12 * 60));
+          ps.setString(2, year + QUARTERS[quarter]);
+          ps.setString(3, QUARTER_NAMES[quarter] + " " + year + " " + title(2));
+          ps.setTimestamp(4, Timestamp.valueOf(when));
+        });
+    insert(connection, "ucsbdiningcommons", null,
+        "INSERT INTO ucsbdiningcommons (code, name, has_sack_meal, has_take_out_meal, has_dining_cam, latitude, longitude)"
+            + " VALUES (?, ?, ?, ?, ?, ?, ?)",
+        (ps, n) -> {
+          ps.setString(1, "seed-" + run + "-" + n);
+          ps.setString(2, title(2) + " Commons");
+          ps.setBoolean(3, random.nextBoolean());
+          ps.setBoolean(4, random.nextBoolean());
+          ps.setBoolean(5, random.nextInt(4) == 0);
+          // scattered over roughly the UCSB / Isla Vista / Goleta area
+          ps.setDouble(6, 34.40 + random.nextDouble() * 0.04);
+          ps.setDouble(7, -119.88 + random.nextDouble() * 0.06);
+        });
+    insert(connection, "users", null,
+        "INSERT INTO users (email, google_sub, picture_url, full_name, given_name, family_name, email_verified,"
+            + " locale, hosted_domain, admin) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)",
+        (ps, n) -> {
+          String given = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+          String family = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+          ps.setString(1, "seed." + run + "." + n + "@ucsb.edu");
+          ps.setString(2, run + n);
+          ps.setString(3, "https://example.org/pictures/" + n + ".png");
+          ps.setString(4, given + " " + family);
+          ps.setString(5, given);
+          ps.setString(6, family);
+          ps.setBoolean(7, true);
+          ps.setString(8, "en");
+          ps.setString(9, "ucsb.edu");
+          ps.setBoolean(10, random.nextDouble() < options.admins());
+        });
+  }
+
+  private void insert(Connection connection, String table, String sequence, String sql, RowBinder binder)
+      throws SQLException {
+    int rows = options.rows().get(table);
+    long start = System.nanoTime();
+    long nextId = 1;
+    long blockEnd = 0;
+    try (PreparedStatement insert = connection.prepareStatement(sql)) {
+      for (int n = 0; n < rows; n++) {
+        if (sequence != null) {
+          if (nextId > blockEnd) {
+            blockEnd = reserveBlock(connection, sequence);
+            nextId = Math.max(1, blockEnd - ID_BLOCK + 1);
+          }
+          insert.setLong(1, nextId++);
+        }
+        binder.bind(insert, n);
+        insert.addBatch();
+        if ((n + 1) % options.batch() == 0) {
+          insert.executeBatch();
+          connection.commit();
+        }
+      }
+      insert.executeBatch();
+      connection.commit();
+    }
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.err.printf("%-18s %,12d rows in %7.1fs (%,.0f rows/s)%n", table, rows, seconds, rows / seconds);
+  }
+
+  private static long reserveBlock(Connection connection, String sequence) throws SQLException {
+    String sql = connection.getMetaData().getDatabaseProductName().equals("PostgreSQL")
+        ? "SELECT nextval('" + sequence + "')"
+        : "SELECT NEXT VALUE FOR " + sequence;
+    try (Statement statement = connection.createStatement(); ResultSet rs = statement.executeQuery(sql)) {
+      rs.next();
+      return rs.getLong(1);
+    }
+  }
+
+  private String word() {
+    return WORDS[random.nextInt(WORDS.length)];
+  }
+
+  private String title(int words) {
+    StringBuilder title = new StringBuilder();
+    for (int i = 0; i < words; i++) {
+      title.append(i == 0 ? "" : " ").append(capitalize(word()));
+    }
+    return title.toString();
+  }
+
+  private static String person(int rank) {
+    return FIRST_NAMES[rank % FIRST_NAMES.length] + " " + LAST_NAMES[(rank / FIRST_NAMES.length) % LAST_NAMES.length]
+        + (rank >= FIRST_NAMES.length * LAST_NAMES.length ? " " + rank : "");
+  }
+
+  private String address() {
+    return (1 + random.nextInt(9999)) + " " + capitalize(word()) + " " + (random.nextBoolean() ? "St" : "Ave");
+  }
+
+  private double rating() {
+    // most ratings between 2.5 and 4.5
+    return Math.round(Math.max(0, Math.min(5, 3.5 + random.nextGaussian() * 0.8)) * 10) / 10.0;
+  }
+
+  private String description() {
+    int length = options.minDescription() + random.nextInt(options.maxDescription() - options.minDescription() + 1);
+    StringBuilder description = new StringBuilder(length + 16);
+    while (description.length() < length) {
+      description.append(description.length() == 0 ? capitalize(word()) : word()).append(' ');
+    }
+    return description.substring(0, length).trim();
+  }
+
+  private static String capitalize(String word) {
+    return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+  }
+}
@@ -0,0 +1,30 @@
+package edu.ucsb.cs156.example.seed;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Samples 0..n-1 with probability proportional to 1 / (rank + 1)^exponent,
+ * so that a few values (genres, authors, ...) are very common and most are
+ * rare.  An exponent of 0 gives a uniform distribution.
+ */
+public class Zipf {
+  private final double[] cumulative;
+
+  public Zipf(int n, double exponent) {
+    cumulative = new double[n];
+    double sum = 0;
+    for (int i = 0; i < n; i++) {
+      sum += 1.0 / Math.pow(i + 1, exponent);
+      cumulative[i] = sum;
+    }
+    for (int i = 0; i < n; i++) {
+      cumulative[i] /= sum;
+    }
+  }
+
+  public int next(Random random) {
+    int index = Arrays.binarySearch(cumulative, random.nextDouble());
+    return Math.min(index < 0 ? -index - 1 : index, cumulative.length - 1);
+  }
+}
@@ -0,0 +1,185 @@
+package edu.ucsb.cs156.example.aop;
+
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// Access log for every controller handler.  It runs outside everything
+// else, Spring Security included, so the status it records is the one the
+// client got (after @ExceptionHandlers, @ResponseStatus and access denied
+// handling) and the duration covers the whole request, serialization of
+// the body included.  For async responses (ndjson exports) both are taken
+// when the async request completes.
+//
+// The request thread only times the request, makes the sampling decision
+// and copies a handful of fields into a preallocated slot of an
+// AccessLogRingBuffer; a daemon thread drains the ring and does the actual
+// (synchronous, formatted) logging.  Requests that never reach a
+// @RequestMapping handler (static resources, actuator, requests rejected
+// before dispatch) are not logged.
+
+@Slf4j
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@EnableConfigurationProperties(AccessLogProperties.class)
+public class AccessLogFilter extends OncePerRequestFilter {
+  private static final String STOPPED_CONTROLLER = "FrontendProxyController";
+
+  private record Endpoint(String handler, double sampleRate) {
+  }
+
+  private static final Endpoint NOT_LOGGED = new Endpoint(null, 0.0);
+
+  @Autowired
+  AccessLogProperties properties;
+
+  private final Map<Method, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+  AccessLogRingBuffer ring;
+  private Thread drainer;
+  private long reportedDrops;
+
+  // Both Spring and the servlet container initialize and destroy a filter
+  // bean, so these run twice.
+  @Override
+  protected synchronized void initFilterBean() {
+    if (drainer != null) {
+      return;
+    }
+    ring = new AccessLogRingBuffer(properties.getCapacity());
+    drainer = new Thread(this::drainLoop, "access-log-drain");
+    drainer.setDaemon(true);
+    drainer.start();
+  }
+
+  @Override
+  public synchronized void destroy() {
+    if (drainer == null || !drainer.isAlive()) {
+      return;
+    }
+    drainer.interrupt();
+    try {
+      drainer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    drain();
+  }
+
+  @Override
+  protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+      throws ServletException, IOException {
+    long start = System.nanoTime();
+    boolean failed = true;
+    try {
+      chain.doFilter(request, response);
+      failed = false;
+    } finally {
+      if (!failed && request.isAsyncStarted()) {
+        request.getAsyncContext().addListener(new Completion(request, response, start));
+      } else {
+        // an exception that got this far becomes a 500 from the container
+        record(request, failed && response.getStatus() < 400 ? 500 : response.getStatus(), start);
+      }
+    }
+  }
+
+  private void record(HttpServletRequest request, int status, long start) {
+    long duration = System.nanoTime() - start;
+    Endpoint endpoint = endpointFor(request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE));
+    if (endpoint.sampleRate() <= 0.0
+        || (endpoint.sampleRate() < 1.0 && ThreadLocalRandom.current().nextDouble() >= endpoint.sampleRate())) {
+      return;
+    }
+    ring.offer(System.currentTimeMillis(), request.getMethod(), request.getRequestURI(), endpoint.handler(), status,
+        duration);
+  }
+
+  private Endpoint endpointFor(Object handler) {
+    if (!(handler instanceof HandlerMethod handlerMethod)) {
+      return NOT_LOGGED;
+    }
+    return endpoints.computeIfAbsent(handlerMethod.getMethod(), m -> {
+      if (!AnnotatedElementUtils.hasAnnotation(m, RequestMapping.class)) {
+        return NOT_LOGGED;
+      }
+      String controller = handlerMethod.getBeanType().getSimpleName();
+      double rate = STOPPED_CONTROLLER.equals(controller) ? 0.0
+          : properties.sampleRateFor(controller, m.getName());
+      return new Endpoint(controller + "." + m.getName(), rate);
+    });
+  }
+
+  private class Completion implements AsyncListener {
+    private final HttpServletRequest request;
+    private final HttpServletResponse response;
+    private final long start;
+
+    Completion(HttpServletRequest request, HttpServletResponse response, long start) {
+      this.request = request;
+      this.response = response;
+      this.start = start;
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      record(request, response.getStatus(), start);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      event.getAsyncContext().addListener(this);
+    }
+  }
+
+  private void drainLoop() {
+    long parkNanos = TimeUnit.MILLISECONDS.toNanos(properties.getDrainIntervalMillis());
+    while (!Thread.currentThread().isInterrupted()) {
+      if (drain() == 0) {
+        LockSupport.parkNanos(parkNanos);
+      }
+    }
+  }
+
+  private int drain() {
+    int drained = ring.drain(record -> log.info(record.format()));
+    long dropped = ring.dropped();
+    if (dropped != reportedDrops) {
+      log.warn("access log ring full, {} records dropped so far", dropped);
+      reportedDrops = dropped;
+    }
+    return drained;
+  }
+}
@@ -0,0 +1,31 @@
+package edu.ucsb.cs156.example.aop;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// app.accesslog.* settings.  sampleRates is keyed by handler, written as
+// ControllerSimpleName.methodName (or just ControllerSimpleName for every
+// handler in that controller); values are between 0.0 (never log) and 1.0
+// (always log).  Handlers with no entry use defaultSampleRate.  Bound by
+// AccessLogFilter's @EnableConfigurationProperties.
+
+@Data
+@ConfigurationProperties(prefix = "app.accesslog")
+public class AccessLogProperties {
+  private int capacity = 4096;
+  private long drainIntervalMillis = 200;
+  private double defaultSampleRate = 1.0;
+  private Map<String, Double> sampleRates = new HashMap<>();
+
+  public double sampleRateFor(String controller, String handler) {
+    Double rate = sampleRates.get(controller + "." + handler);
+    if (rate == null) {
+      rate = sampleRates.get(controller);
+    }
+    return rate == null ? defaultSampleRate : rate;
+  }
+}
@@ -0,0 +1,30 @@
+package edu.ucsb.cs156.example.aop;
+
+import lombok.Getter;
+
+// One slot of the AccessLogRingBuffer.  Instances are allocated once, up
+// front, and overwritten in place; only the ring buffer may call set().
+
+@Getter
+public class AccessLogRecord {
+  private long timestampMillis;
+  private String method;
+  private String uri;
+  private String handler;
+  private int status;
+  private long durationNanos;
+
+  void set(long timestampMillis, String method, String uri, String handler, int status, long durationNanos) {
+    this.timestampMillis = timestampMillis;
+    this.method = method;
+    this.uri = uri;
+    this.handler = handler;
+    this.status = status;
+    this.durationNanos = durationNanos;
+  }
+
+  public String format() {
+    return "method=%s uri=%s handler=%s status=%d durationMs=%.3f ts=%d".formatted(
+        method, uri, handler, status, durationNanos / 1_000_000.0, timestampMillis);
+  }
+}
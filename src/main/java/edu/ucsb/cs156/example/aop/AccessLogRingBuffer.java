@@ -0,0 +1,74 @@
+package edu.ucsb.cs156.example.aop;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Bounded, lock-free, many-producer / single-consumer ring of preallocated
+// AccessLogRecords.  Request threads claim a sequence number with a CAS on
+// head, fill the slot, then publish it; the drain thread reads published
+// slots in order.  When the ring is full offer() drops the record and
+// counts it rather than making the request wait.
+
+public class AccessLogRingBuffer {
+  private final AccessLogRecord[] slots;
+  private final AtomicLongArray published;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private volatile long tail;
+
+  public AccessLogRingBuffer(int capacity) {
+    if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("capacity must be a power of two, got " + capacity);
+    }
+    slots = new AccessLogRecord[capacity];
+    for (int i = 0; i < capacity; i++) {
+      slots[i] = new AccessLogRecord();
+    }
+    // slot i holds sequence (published[i] - 1); 0 means never written
+    published = new AtomicLongArray(capacity);
+    mask = capacity - 1;
+  }
+
+  public boolean offer(long timestampMillis, String method, String uri, String handler, int status,
+      long durationNanos) {
+    long seq;
+    do {
+      seq = head.get();
+      if (seq - tail >= slots.length) {
+        dropped.increment();
+        return false;
+      }
+    } while (!head.compareAndSet(seq, seq + 1));
+
+    int index = (int) (seq & mask);
+    slots[index].set(timestampMillis, method, uri, handler, status, durationNanos);
+    published.lazySet(index, seq + 1);
+    return true;
+  }
+
+  // Must only be called from one thread at a time.
+  public int drain(Consumer<AccessLogRecord> sink) {
+    int drained = 0;
+    long next = tail;
+    while (true) {
+      int index = (int) (next & mask);
+      if (published.get(index) != next + 1) {
+        return drained;
+      }
+      sink.accept(slots[index]);
+      tail = ++next;
+      drained++;
+    }
+  }
+
+  public long dropped() {
+    return dropped.sum();
+  }
+
+  public int capacity() {
+    return slots.length;
+  }
+}
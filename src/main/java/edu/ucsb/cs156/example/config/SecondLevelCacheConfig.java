@@ -0,0 +1,119 @@
+package edu.ucsb.cs156.example.config;
+
+import java.net.URI;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.persistence.SharedCacheMode;
+
+import org.hibernate.annotations.Cache;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+
+import edu.ucsb.cs156.example.entities.Animal;
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.entities.Park;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.JCacheMetrics;
+
+/**
+ * Hibernate's second-level cache, held in Caffeine through JCache.  Each
+ * entity in CACHED_ENTITIES has its own region, named by its @Cache
+ * annotation and bounded by app.cache.* (see SecondLevelCacheProperties),
+ * so findById on those entities is answered from memory once the row has
+ * been loaded.  Hit, miss, put and eviction counts are published per
+ * region as the cache.* meters, tagged cache=&lt;region&gt;.
+ *
+ * The regions are READ_WRITE, so every write that goes through Hibernate
+ * keeps them correct, including Session.update.  A JPQL delete would clear
+ * the entity's whole region, so deleteOne issues a native DELETE and
+ * soft-locks just that id (VersionedRepository.removeOne).  Other writes
+ * that bypass Hibernate must evict what they change; ViewCounterService does, and because a
+ * concurrent load can still put a stale row back after that eviction, the
+ * movies and musics regions expire quickly.  Each region only
+ * sees writes made through this JVM, so expireAfterWrite bounds how stale
+ * a row written by another instance can be.
+ *
+ * With app.cache.enabled=false none of that is built and Hibernate is told
+ * not to cache.  Saying nothing is not enough: hibernate-jcache is on the
+ * classpath, and Hibernate would pick it up and give every @Cache entity an
+ * unbounded region of its own.
+ */
+@Configuration
+@EnableConfigurationProperties(SecondLevelCacheProperties.class)
+public class SecondLevelCacheConfig {
+  public static final List<Class<?>> CACHED_ENTITIES = List.of(
+      Animal.class, Book.class, Movie.class, Music.class, Park.class, Restaurant.class, UCSBDate.class);
+
+  // JCache keys cache managers (and their statistics MBeans) by URI, so
+  // every application context in the JVM gets its own
+  private static final AtomicInteger managers = new AtomicInteger();
+
+  public static String region(Class<?> entity) {
+    return entity.getAnnotation(Cache.class).region();
+  }
+
+  @Bean(destroyMethod = "close")
+  @ConditionalOnProperty(name = "app.cache.enabled", havingValue = "true", matchIfMissing = true)
+  public CacheManager secondLevelCacheManager(SecondLevelCacheProperties properties) {
+    CacheManager manager = Caching.getCachingProvider(CaffeineCachingProvider.class.getName())
+        .getCacheManager(URI.create("second-level-cache-" + managers.incrementAndGet()), getClass().getClassLoader());
+    for (Class<?> entity : CACHED_ENTITIES) {
+      String region = region(entity);
+      CaffeineConfiguration<Object, Object> configuration = new CaffeineConfiguration<>();
+      // Hibernate caches its own disassembled copy of each row
+      configuration.setStoreByValue(false);
+      configuration.setMaximumSize(OptionalLong.of(properties.maximumSizeFor(region)));
+      configuration.setExpireAfterWrite(OptionalLong.of(properties.expireAfterWriteFor(region).toNanos()));
+      configuration.setStatisticsEnabled(true);
+      manager.createCache(region, configuration);
+    }
+    return manager;
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "app.cache.enabled", havingValue = "true", matchIfMissing = true)
+  public HibernatePropertiesCustomizer secondLevelCache(CacheManager secondLevelCacheManager) {
+    return hibernate -> {
+      hibernate.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, true);
+      hibernate.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+      hibernate.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.ENABLE_SELECTIVE);
+      hibernate.put(ConfigSettings.CACHE_MANAGER, secondLevelCacheManager);
+      // an @Cache region that is not created above fails startup rather
+      // than getting an unbounded cache
+      hibernate.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+    };
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "app.cache.enabled", havingValue = "false")
+  public HibernatePropertiesCustomizer noSecondLevelCache() {
+    return hibernate -> {
+      hibernate.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, false);
+      hibernate.put(AvailableSettings.USE_QUERY_CACHE, false);
+      hibernate.put(AvailableSettings.JPA_SHARED_CACHE_MODE, SharedCacheMode.NONE);
+    };
+  }
+
+  @Bean
+  @ConditionalOnProperty(name = "app.cache.enabled", havingValue = "true", matchIfMissing = true)
+  public MeterBinder secondLevelCacheMetrics(CacheManager secondLevelCacheManager) {
+    return registry -> CACHED_ENTITIES.forEach(entity -> JCacheMetrics.monitor(registry,
+        secondLevelCacheManager.getCache(region(entity)), List.of()));
+  }
+}
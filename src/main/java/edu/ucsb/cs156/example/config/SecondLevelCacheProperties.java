@@ -0,0 +1,40 @@
+package edu.ucsb.cs156.example.config;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import lombok.Data;
+
+// app.cache.* settings for SecondLevelCacheConfig.  maximumSize (entries)
+// and expireAfterWrite apply to every region; regions overrides either of
+// them for one region, keyed by region name, e.g.
+// app.cache.regions.movies.expire-after-write=1m
+
+@Data
+@ConfigurationProperties(prefix = "app.cache")
+public class SecondLevelCacheProperties {
+  private boolean enabled = true;
+  private long maximumSize = 10_000;
+  private Duration expireAfterWrite = Duration.ofMinutes(10);
+  private Map<String, Region> regions = new HashMap<>();
+
+  @Data
+  public static class Region {
+    private Long maximumSize;
+    private Duration expireAfterWrite;
+  }
+
+  public long maximumSizeFor(String region) {
+    Region overrides = regions.get(region);
+    return overrides == null || overrides.getMaximumSize() == null ? maximumSize : overrides.getMaximumSize();
+  }
+
+  public Duration expireAfterWriteFor(String region) {
+    Region overrides = regions.get(region);
+    return overrides == null || overrides.getExpireAfterWrite() == null ? expireAfterWrite
+        : overrides.getExpireAfterWrite();
+  }
+}
@@ -3,26 +3,41 @@ package edu.ucsb.cs156.example.controllers;
 import edu.ucsb.cs156.example.entities.Animal;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import edu.ucsb.cs156.example.repositories.AnimalRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.MediaType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 
 @Api(description = "Animals")
 @RequestMapping("/api/animals")
@@ -33,23 +48,47 @@ public class AnimalController extends ApiController {
     @Autowired
     AnimalRepository animalRepository;
 
-    @ApiOperation(value = "List all animals")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all animals (pass after and/or limit for keyset paging)", response = Animal.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Animal> allAnimals() {
-        Iterable<Animal> animals = animalRepository.findAll();
-        return animals;
+    public ResponseEntity<?> allAnimals(
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return cachedAll(Animal.class, animalRepository::findAll);
+        }
+        return conditionalGet(Animal.class, () -> {
+            Pageable page = keysetPage(limit, "id");
+            List<Animal> animals = animalRepository.findByIdGreaterThan(after == null ? 0L : after, page);
+            return keysetResponse(animals, page, Animal::getId);
+        });
+    }
+
+    @ApiOperation(value = "Stream all animals as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAnimals() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(animalRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     @ApiOperation(value = "Get a single animal")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Animal getById(
+    public ResponseEntity<Animal> getById(
             @ApiParam("id") @RequestParam Long id) {
-        Animal animal = animalRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Animal.class, id));
-
-        return animal;
+        return versionedGet(animalRepository, Animal.class, id);
     }
 
     @ApiOperation(value = "Create a new animal")
@@ -71,36 +110,47 @@ public class AnimalController extends ApiController {
         return savedAnimal;
     }
 
+    @ApiOperation(value = "Create many animals from a JSON array or newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postAnimalsBulk(InputStream body) throws IOException {
+        long count = bulkIngestService.ingest(body, Animal.class, animal -> animal.setId(0), animalRepository);
+        return genericMessage("%d Animal rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a animal")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteAnimal(
             @ApiParam("id") @RequestParam Long id) {
-        Animal animal = animalRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Animal.class, id));
-
-        animalRepository.delete(animal);
+        deleted(animalRepository.deleteOne(id), Animal.builder().id(id).build(), id);
         return genericMessage("Animal with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single animal")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Animal updateAnimal(
+    public ResponseEntity<Animal> updateAnimal(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid Animal incoming) {
 
-        Animal animal = animalRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Animal.class, id));
+        incoming.setId(id);
+        Animal animal = updateVersioned(animalRepository, id, incoming, ifMatch);
 
+        return ResponseEntity.ok().eTag(rowEtag(animal)).body(animal);
+    }
 
-        animal.setName(incoming.getName());  
-        animal.setGenus(incoming.getGenus());
-        animal.setSpecies(incoming.getSpecies());
-
+    @ApiOperation(value = "Change some fields of a single animal (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Animal> patchAnimal(
+            @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        animalRepository.save(animal);
+        Animal animal = patched(mergePatchService, Animal.class, id, patch, ifMatch);
 
-        return animal;
+        return ResponseEntity.ok().eTag(rowEtag(animal)).body(animal);
     }
 }
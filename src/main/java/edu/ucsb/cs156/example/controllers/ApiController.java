@@ -1,23 +1,76 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import net.bytebuddy.implementation.bytecode.Throw;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import edu.ucsb.cs156.example.entities.Versioned;
 import edu.ucsb.cs156.example.models.CurrentUser;
+import edu.ucsb.cs156.example.repositories.VersionedRepository;
 import edu.ucsb.cs156.example.services.CurrentUserService;
+import edu.ucsb.cs156.example.services.EntityDeletedEvent;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.RequestCoalescingService;
+import edu.ucsb.cs156.example.services.ResponseBodyCacheService;
+import edu.ucsb.cs156.example.services.TableVersionService;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.servlet.HandlerMapping;
 import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.io.IOException;
+import java.util.Enumeration;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.servlet.http.HttpServletRequest;
 
 @Slf4j
 public abstract class ApiController {
+  public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+  public static final int DEFAULT_PAGE_SIZE = 100;
+  public static final int MAX_PAGE_SIZE = 1000;
+  public static final int MAX_UPDATE_ATTEMPTS = 3;
+
+  private static final CacheControl REVALIDATE = CacheControl.noCache().cachePrivate();
+
   @Autowired
   private CurrentUserService currentUserService;
 
+  @Autowired
+  private HttpServletRequest request;
+
+  @Autowired
+  private TableVersionService tableVersions;
+
+  @Autowired
+  private ApplicationEventPublisher events;
+
+  @Autowired
+  private ResponseBodyCacheService responseBodies;
+
+  @Autowired
+  private RequestCoalescingService coalescing;
+
   protected CurrentUser getCurrentUser() {
     return currentUserService.getCurrentUser();
   }
@@ -26,6 +79,254 @@ public abstract class ApiController {
     return Map.of("message", message);
   }
 
+  // Keyset paging: the caller asks for rows whose key is greater than the
+  // cursor, so every page is an index range scan no matter how deep it is.
+  // Pass more than one key when the first is not unique.
+  protected Pageable keysetPage(Integer limit, String... keys) {
+    int size = limit == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    return PageRequest.of(0, size, Sort.by(keys));
+  }
+
+  protected <T> ResponseEntity<Iterable<T>> keysetResponse(List<T> rows, Pageable page, Function<T, ?> cursor) {
+    ResponseEntity.BodyBuilder builder = ResponseEntity.ok();
+    if (rows.size() == page.getPageSize()) {
+      builder.header(NEXT_CURSOR_HEADER, cursor.apply(rows.get(rows.size() - 1)).toString());
+    }
+    return builder.body(rows);
+  }
+
+  // Conditional GET: etag must describe the current data and be computed
+  // before it is read.  When the request's If-None-Match already has it,
+  // the response is a 304 and the supplier (and so the database read and
+  // serialization) is skipped.  no-cache lets browsers keep the body but
+  // makes them revalidate it every time.
+  protected <T> ResponseEntity<T> conditionalGet(String etag, Supplier<ResponseEntity<T>> response) {
+    if (ifNoneMatchContains(etag)) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+    }
+    ResponseEntity<T> full = response.get();
+    return ResponseEntity.status(full.getStatusCode())
+        .headers(full.getHeaders())
+        .eTag(etag)
+        .cacheControl(REVALIDATE)
+        .body(full.getBody());
+  }
+
+  /**
+   * conditionalGet validated by the change counter of entity's table;
+   * identical requests that arrive while one is being answered share it.
+   */
+  protected <T> ResponseEntity<T> conditionalGet(Class<?> entity, Supplier<ResponseEntity<T>> response) {
+    String etag = tableVersions.etag(entity);
+    return conditionalGet(etag, () -> coalescing.coalesce(endpoint(), requestKey(etag), response));
+  }
+
+  /**
+   * Runs a read of entity's table once for all identical requests that
+   * arrive while it is running; see RequestCoalescingService.
+   */
+  protected <T> T coalesced(Class<?> entity, Supplier<T> read) {
+    return coalescing.coalesce(endpoint(), requestKey(tableVersions.etag(entity)), read);
+  }
+
+  private String endpoint() {
+    Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+    return pattern == null ? request.getRequestURI() : pattern.toString();
+  }
+
+  // the path and the parameters in name order, so ?a=1&b=2 and ?b=2&a=1
+  // share a read
+  private String requestKey(String etag) {
+    StringBuilder key = new StringBuilder(request.getRequestURI()).append('?');
+    new TreeMap<>(request.getParameterMap())
+        .forEach((name, values) -> key.append(name).append('=').append(String.join(",", values)).append('&'));
+    return key.append(' ').append(etag).toString();
+  }
+
+  // The whole of entity's table for /all: rows is only called when the
+  // cached body is not for the current ETag, and then once for all the
+  // requests waiting on it.  The bytes are written as they are, gzipped if
+  // the client accepts that, without Jackson.
+  //
+  // The gzipped and identity bodies are different representations, so
+  // they get different strong ETags: the gzipped one has -gzip appended
+  // inside the quotes.  Either tag in If-None-Match is current while the
+  // table is unchanged, and the 304 echoes the one that matched, with the
+  // same Vary as the full response so caches keep the two apart.
+  protected ResponseEntity<byte[]> cachedAll(Class<?> entity, Supplier<?> rows) {
+    return cachedAll(entity, tableVersions.etag(entity), rows);
+  }
+
+  /** cachedAll for a table whose ETag is not its TableVersionService one. */
+  protected ResponseEntity<byte[]> cachedAll(Class<?> entity, String etag, Supplier<?> rows) {
+    boolean gzip = acceptsGzip();
+    String gzipEtag = gzipEtag(etag);
+    for (String tag : gzip ? List.of(gzipEtag, etag) : List.of(etag, gzipEtag)) {
+      if (ifNoneMatchContains(tag)) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+            .eTag(tag)
+            .cacheControl(REVALIDATE)
+            .varyBy(HttpHeaders.ACCEPT_ENCODING)
+            .build();
+      }
+    }
+    ResponseBodyCacheService.Body body = coalescing.coalesce(endpoint(), requestKey(etag),
+        () -> responseBodies.get(entity, etag, rows));
+    ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+        .contentType(MediaType.APPLICATION_JSON)
+        .cacheControl(REVALIDATE)
+        .varyBy(HttpHeaders.ACCEPT_ENCODING);
+    if (body.gzip() != null && gzip) {
+      return builder.eTag(gzipEtag).header(HttpHeaders.CONTENT_ENCODING, "gzip").body(body.gzip());
+    }
+    return builder.eTag(etag).body(body.json());
+  }
+
+  // "v" becomes "v-gzip"
+  static String gzipEtag(String etag) {
+    return etag.substring(0, etag.length() - 1) + "-gzip\"";
+  }
+
+  private boolean acceptsGzip() {
+    Enumeration<String> headers = request.getHeaders(HttpHeaders.ACCEPT_ENCODING);
+    while (headers != null && headers.hasMoreElements()) {
+      for (String coding : headers.nextElement().split(",")) {
+        String[] parts = coding.split(";");
+        if (parts[0].trim().equalsIgnoreCase("gzip")) {
+          return parts.length == 1 || !parts[1].replace(" ", "").matches("q=0(\\.0*)?");
+        }
+      }
+    }
+    return false;
+  }
+
+  private boolean ifNoneMatchContains(String etag) {
+    Enumeration<String> headers = request.getHeaders(HttpHeaders.IF_NONE_MATCH);
+    while (headers != null && headers.hasMoreElements()) {
+      for (String candidate : headers.nextElement().split(",")) {
+        candidate = candidate.trim();
+        // If-None-Match uses the weak comparison
+        if (candidate.startsWith("W/")) {
+          candidate = candidate.substring(2);
+        }
+        if (candidate.equals(etag)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** Strong ETag for one row: its version. */
+  protected static String rowEtag(Versioned row) {
+    return rowEtag(row.getVersion());
+  }
+
+  private static String rowEtag(long version) {
+    return "\"" + version + "\"";
+  }
+
+  // GET of one row.  A request with If-None-Match is first checked against
+  // the row's version alone, so a 304 neither loads nor serializes the row;
+  // any other request, or one whose copy is out of date, reads the row and
+  // goes through conditionalGet as usual.
+  protected <T extends Versioned, ID, R extends CrudRepository<T, ID> & VersionedRepository<T>> ResponseEntity<T> versionedGet(
+      R repository, Class<T> type, ID id) {
+    if (request.getHeader(HttpHeaders.IF_NONE_MATCH) != null) {
+      String etag = rowEtag(repository.findVersion(type, id)
+          .orElseThrow(() -> new EntityNotFoundException(type, id)));
+      if (ifNoneMatchContains(etag)) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).cacheControl(REVALIDATE).build();
+      }
+    }
+    T row = repository.findById(id).orElseThrow(() -> new EntityNotFoundException(type, id));
+    return conditionalGet(rowEtag(row), () -> ResponseEntity.ok(row));
+  }
+
+  // PUT: writes incoming (whose id the caller has already set) over the row
+  // as one conditional UPDATE.  With If-Match the expected version comes
+  // from the header and the row is never read; a stale version is a 412.
+  // Without it (or with "*") the current version is read first and a write
+  // that races with another one is retried, so the last writer wins as
+  // before.  Either way a missing row is a 404, found out only after the
+  // UPDATE has matched nothing.
+  protected <T extends Versioned, ID, R extends CrudRepository<T, ID> & VersionedRepository<T>> T updateVersioned(
+      R repository, ID id, T incoming, String ifMatch) {
+    boolean conditional = ifMatch != null && !ifMatch.trim().equals("*");
+    for (int attempt = 1;; attempt++) {
+      incoming.setVersion(conditional ? ifMatchVersion(ifMatch)
+          : repository.findById(id)
+              .orElseThrow(() -> new EntityNotFoundException(incoming.getClass(), id))
+              .getVersion());
+      try {
+        return repository.updateVersioned(incoming);
+      } catch (OptimisticLockingFailureException e) {
+        if (!repository.existsById(id)) {
+          throw new EntityNotFoundException(incoming.getClass(), id);
+        }
+        if (conditional) {
+          throw changedSince(incoming.getClass(), id, ifMatch);
+        }
+        if (attempt == MAX_UPDATE_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  // PATCH: applies a JSON merge patch to the row.  If-Match works as for
+  // updateVersioned, except that the version check happens on the row the
+  // patch is applied to, so a patch is one SELECT and at most one UPDATE.
+  protected <T extends Versioned> T patched(MergePatchService patches, Class<T> type, Object id, JsonNode patch,
+      String ifMatch) throws IOException {
+    if (!patch.isObject()) {
+      throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "a merge patch must be a JSON object");
+    }
+    boolean conditional = ifMatch != null && !ifMatch.trim().equals("*");
+    Long expected = conditional ? ifMatchVersion(ifMatch) : null;
+    for (int attempt = 1;; attempt++) {
+      try {
+        return patches.patch(type, id, (ObjectNode) patch, expected)
+            .orElseThrow(() -> new EntityNotFoundException(type, id));
+      } catch (OptimisticLockingFailureException e) {
+        if (conditional) {
+          throw changedSince(type, id, ifMatch);
+        }
+        if (attempt == MAX_UPDATE_ATTEMPTS) {
+          throw e;
+        }
+      }
+    }
+  }
+
+  private static ResponseStatusException changedSince(Class<?> type, Object id, String ifMatch) {
+    return new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+        "%s with id %s has changed since version %s".formatted(type.getSimpleName(), id, ifMatch.trim()));
+  }
+
+  // DELETE: rows is what the repository's single-statement deleteOne
+  // returned, and deleted a stand-in for the row with only its id set
+  protected void deleted(int rows, Object deleted, Object id) {
+    if (rows == 0) {
+      throw new EntityNotFoundException(deleted.getClass(), id);
+    }
+    events.publishEvent(new EntityDeletedEvent(deleted));
+  }
+
+  // only our own row ETags, which are strong, can match
+  private static long ifMatchVersion(String ifMatch) {
+    String tag = ifMatch.trim();
+    if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+      try {
+        return Long.parseLong(tag.substring(1, tag.length() - 1));
+      } catch (NumberFormatException e) {
+        // falls through to the 412
+      }
+    }
+    throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED,
+        "If-Match %s is not a current version".formatted(tag));
+  }
+
   @ExceptionHandler({ EntityNotFoundException.class })
   @ResponseStatus(HttpStatus.NOT_FOUND)
   public Object handleGenericException(Throwable e) {
@@ -34,4 +335,25 @@ public abstract class ApiController {
       "message", e.getMessage()
     );
   }
+
+  // a save or update that lost a race with a concurrent write, e.g. a POST
+  // over an existing dining commons that has been edited, or a bulk insert
+  // of a dining commons code that already exists
+  @ExceptionHandler({ OptimisticLockingFailureException.class, DuplicateKeyException.class })
+  @ResponseStatus(HttpStatus.CONFLICT)
+  public Object handleConflict(Throwable e) {
+    return Map.of(
+      "type", e.getClass().getSimpleName(),
+      "message", e.getMessage()
+    );
+  }
+
+  @ExceptionHandler({ JsonProcessingException.class })
+  @ResponseStatus(HttpStatus.BAD_REQUEST)
+  public Object handleBadJson(Throwable e) {
+    return Map.of(
+      "type", e.getClass().getSimpleName(),
+      "message", e.getMessage()
+    );
+  }
 }
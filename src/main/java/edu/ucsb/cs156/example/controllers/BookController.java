@@ -3,27 +3,42 @@ package edu.ucsb.cs156.example.controllers;
 import edu.ucsb.cs156.example.entities.Book;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 import java.time.LocalDateTime;
 
 @Api(description = "Book")
@@ -35,23 +50,47 @@ public class BookController extends ApiController {
     @Autowired
     BookRepository BookRepository;
 
-    @ApiOperation(value = "List all ucsb dates")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all ucsb dates (pass after and/or limit for keyset paging)", response = Book.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Book> allBooks() {
-        Iterable<Book> dates = BookRepository.findAll();
-        return dates;
+    public ResponseEntity<?> allBooks(
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return cachedAll(Book.class, BookRepository::findAll);
+        }
+        return conditionalGet(Book.class, () -> {
+            Pageable page = keysetPage(limit, "id");
+            List<Book> dates = BookRepository.findByIdGreaterThan(after == null ? 0L : after, page);
+            return keysetResponse(dates, page, Book::getId);
+        });
+    }
+
+    @ApiOperation(value = "Stream all books as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamBooks() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(BookRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     @ApiOperation(value = "Get a single date")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Book getById(
+    public ResponseEntity<Book> getById(
             @ApiParam("id") @RequestParam Long id) {
-        Book Book = BookRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Book.class, id));
-
-        return Book;
+        return versionedGet(BookRepository, Book.class, id);
     }
 
     @ApiOperation(value = "Create a new date")
@@ -75,34 +114,47 @@ public class BookController extends ApiController {
         return savedBook;
     }
 
+    @ApiOperation(value = "Create many Books from a JSON array or newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postBooksBulk(InputStream body) throws IOException {
+        long count = bulkIngestService.ingest(body, Book.class, book -> book.setId(0), BookRepository);
+        return genericMessage("%d Book rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a Book")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteBook(
             @ApiParam("id") @RequestParam Long id) {
-        Book Book = BookRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Book.class, id));
-
-        BookRepository.delete(Book);
+        deleted(BookRepository.deleteOne(id), Book.builder().id(id).build(), id);
         return genericMessage("Book with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single date")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Book updateBook(
+    public ResponseEntity<Book> updateBook(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid Book incoming) {
 
-        Book Book = BookRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Book.class, id));
+        incoming.setId(id);
+        Book book = updateVersioned(BookRepository, id, incoming, ifMatch);
 
-        Book.setTitle(incoming.getTitle());
-        Book.setAuthor(incoming.getAuthor());
-        Book.setGenre(incoming.getGenre());
+        return ResponseEntity.ok().eTag(rowEtag(book)).body(book);
+    }
+
+    @ApiOperation(value = "Change some fields of a single book (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Book> patchBook(
+            @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        BookRepository.save(Book);
+        Book book = patched(mergePatchService, Book.class, id, patch, ifMatch);
 
-        return Book;
+        return ResponseEntity.ok().eTag(rowEtag(book)).body(book);
     }
 }
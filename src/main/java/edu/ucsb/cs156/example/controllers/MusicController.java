@@ -3,27 +3,48 @@ package edu.ucsb.cs156.example.controllers;
 import edu.ucsb.cs156.example.entities.Music;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import edu.ucsb.cs156.example.repositories.MusicRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.LeaderboardService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.ViewCounterProperties;
+import edu.ucsb.cs156.example.services.ViewCounterService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 import java.time.LocalDateTime;
 
 @Api(description = "Musics")
@@ -35,23 +56,81 @@ public class MusicController extends ApiController {
     @Autowired
     MusicRepository movieRepository;
 
-    @ApiOperation(value = "List all musics")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    LeaderboardService leaderboards;
+
+    @Autowired
+    ViewCounterService viewCounters;
+
+    @Autowired
+    ViewCounterProperties viewCounterProperties;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all musics (pass after and/or limit for keyset paging)", response = Music.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Music> allMusics() {
-        Iterable<Music> musics = movieRepository.findAll();
-        return musics;
+    public ResponseEntity<?> allMusics(
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return cachedAll(Music.class, movieRepository::findAll);
+        }
+        return conditionalGet(Music.class, () -> {
+            Pageable page = keysetPage(limit, "id");
+            List<Music> musics = movieRepository.findByIdGreaterThan(after == null ? 0L : after, page);
+            return keysetResponse(musics, page, Music::getId);
+        });
+    }
+
+    @ApiOperation(value = "Stream all musics as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamMusics() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(movieRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    @ApiOperation(value = "The highest ranked musics by rating or views")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/top")
+    public List<Music> topMusics(
+            @ApiParam("rating or views") @RequestParam(defaultValue = "rating") String by,
+            @ApiParam("number of musics to return, at most " + LeaderboardService.CAPACITY) @RequestParam(defaultValue = "10") int n) {
+        if (!LeaderboardService.RANKINGS.contains(by)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "by must be one of " + LeaderboardService.RANKINGS);
+        }
+        return leaderboards.topMusics(by, Math.max(1, Math.min(n, LeaderboardService.CAPACITY)));
+    }
+
+    @ApiOperation(value = "Count one view of a music; accepted counts reach the database on the next flush unless app.views.durability=IMMEDIATE")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @PostMapping("/{id}/view")
+    public ResponseEntity<Object> viewMusic(
+            @ApiParam("id") @PathVariable long id) {
+        if (!viewCounters.view(ViewCounterService.Table.MUSICS, id)) {
+            throw new EntityNotFoundException(Music.class, id);
+        }
+        HttpStatus status = viewCounterProperties.getDurability() == ViewCounterProperties.Durability.IMMEDIATE
+                ? HttpStatus.OK : HttpStatus.ACCEPTED;
+        return ResponseEntity.status(status).body(genericMessage("view of Music with id %s counted".formatted(id)));
     }
 
     @ApiOperation(value = "Get a single movie")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Music getById(
+    public ResponseEntity<Music> getById(
             @ApiParam("id") @RequestParam Long id) {
-        Music movie = movieRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Music.class, id));
-
-        return movie;
+        return versionedGet(movieRepository, Music.class, id);
     }
 
     @ApiOperation(value = "Create a new movie")
@@ -75,35 +154,47 @@ public class MusicController extends ApiController {
         return savedMusic;
     }
 
+    @ApiOperation(value = "Create many musics from a JSON array or newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postMusicsBulk(InputStream body) throws IOException {
+        long count = bulkIngestService.ingest(body, Music.class, music -> music.setId(0), movieRepository);
+        return genericMessage("%d Music rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a Music")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteMusic(
             @ApiParam("id") @RequestParam Long id) {
-        Music movie = movieRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Music.class, id));
-
-        movieRepository.delete(movie);
+        deleted(movieRepository.deleteOne(id), Music.builder().id(id).build(), id);
         return genericMessage("Music with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single movie")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Music updateMusic(
+    public ResponseEntity<Music> updateMusic(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid Music incoming) {
 
-        Music movie = movieRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Music.class, id));
+        incoming.setId(id);
+        Music music = updateVersioned(movieRepository, id, incoming, ifMatch);
 
-        movie.setTitle(incoming.getTitle());
-        movie.setAuthor(incoming.getAuthor());
-        movie.setRating(incoming.getRating());
-        movie.setViews(incoming.getViews());
+        return ResponseEntity.ok().eTag(rowEtag(music)).body(music);
+    }
+
+    @ApiOperation(value = "Change some fields of a single music (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Music> patchMusic(
+            @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        movieRepository.save(movie);
+        Music music = patched(mergePatchService, Music.class, id, patch, ifMatch);
 
-        return movie;
+        return ResponseEntity.ok().eTag(rowEtag(music)).body(music);
     }
 }
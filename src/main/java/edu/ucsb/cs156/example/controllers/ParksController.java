@@ -3,27 +3,42 @@ package edu.ucsb.cs156.example.controllers;
 import edu.ucsb.cs156.example.entities.Park;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import edu.ucsb.cs156.example.repositories.ParkRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 import java.time.LocalDateTime;
 
 @Api(description = "Parks")
@@ -35,23 +50,47 @@ public class ParksController extends ApiController {
     @Autowired
     ParkRepository parkRepository;
 
-    @ApiOperation(value = "List all parks")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all parks (pass after and/or limit for keyset paging)", response = Park.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Park> allParks() {
-        Iterable<Park> parks = parkRepository.findAll();
-        return parks;
+    public ResponseEntity<?> allParks(
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return cachedAll(Park.class, parkRepository::findAll);
+        }
+        return conditionalGet(Park.class, () -> {
+            Pageable page = keysetPage(limit, "id");
+            List<Park> parks = parkRepository.findByIdGreaterThan(after == null ? 0L : after, page);
+            return keysetResponse(parks, page, Park::getId);
+        });
+    }
+
+    @ApiOperation(value = "Stream all parks as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamParks() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(parkRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     @ApiOperation(value = "Get a single park")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Park getById(
+    public ResponseEntity<Park> getById(
             @ApiParam("id") @RequestParam Long id) {
-        Park park = parkRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Park.class, id));
-
-        return park;
+        return versionedGet(parkRepository, Park.class, id);
     }
 
     @ApiOperation(value = "Create a new park")
@@ -73,34 +112,47 @@ public class ParksController extends ApiController {
         return savedPark;
     }
 
+    @ApiOperation(value = "Create many parks from a JSON array or newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postParksBulk(InputStream body) throws IOException {
+        long count = bulkIngestService.ingest(body, Park.class, park -> park.setId(0), parkRepository);
+        return genericMessage("%d Park rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a Park")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deletePark(
             @ApiParam("id") @RequestParam Long id) {
-        Park park = parkRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Park.class, id));
-
-        parkRepository.delete(park);
+        deleted(parkRepository.deleteOne(id), Park.builder().id(id).build(), id);
         return genericMessage("Park with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single park")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Park updatePark(
+    public ResponseEntity<Park> updatePark(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid Park incoming) {
 
-        Park park = parkRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Park.class, id));
+        incoming.setId(id);
+        Park park = updateVersioned(parkRepository, id, incoming, ifMatch);
 
-        park.setName(incoming.getName());
-        park.setAddress(incoming.getAddress());
-        park.setRating(incoming.getRating());
+        return ResponseEntity.ok().eTag(rowEtag(park)).body(park);
+    }
+
+    @ApiOperation(value = "Change some fields of a single park (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Park> patchPark(
+            @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        parkRepository.save(park);
+        Park park = patched(mergePatchService, Park.class, id, patch, ifMatch);
 
-        return park;
+        return ResponseEntity.ok().eTag(rowEtag(park)).body(park);
     }
 }
@@ -1,26 +1,43 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import edu.ucsb.cs156.example.entities.Restaurant;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 
 @Api(description = "Restaurant")
 @RequestMapping("/api/restaurant")
@@ -31,23 +48,77 @@ public class RestaurantController extends ApiController {
     @Autowired
     RestaurantRepository restaurantRepository;
 
-    @ApiOperation(value = "List all restaurants")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all restaurants (pass after and/or limit for keyset paging)", response = Restaurant.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<Restaurant> allRestaurants() {
-        Iterable<Restaurant> restaurants = restaurantRepository.findAll();
-        return restaurants;
+    public ResponseEntity<?> allRestaurants(
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return cachedAll(Restaurant.class, restaurantRepository::findAll);
+        }
+        return conditionalGet(Restaurant.class, () -> {
+            Pageable page = keysetPage(limit, "id");
+            List<Restaurant> restaurants = restaurantRepository.findByIdGreaterThan(after == null ? 0L : after, page);
+            return keysetResponse(restaurants, page, Restaurant::getId);
+        });
+    }
+
+    @ApiOperation(value = "Restaurants in a city and/or state, or in a zip code (keyset paged like /all)")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/search")
+    public ResponseEntity<Iterable<Restaurant>> searchRestaurants(
+            @ApiParam("city") @RequestParam(required = false) String city,
+            @ApiParam("state") @RequestParam(required = false) String state,
+            @ApiParam("zip code; cannot be combined with city or state") @RequestParam(required = false) String zip,
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        Pageable page = keysetPage(limit, "id");
+        long cursor = after == null ? 0L : after;
+        if (zip != null && (city != null || state != null)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "zip cannot be combined with city or state");
+        }
+        if (zip == null && state == null && city == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "one of city, state or zip is required");
+        }
+        List<Restaurant> restaurants = coalesced(Restaurant.class, () -> {
+            if (zip != null) {
+                return restaurantRepository.findByZipAndIdGreaterThan(zip, cursor, page);
+            } else if (state != null && city != null) {
+                return restaurantRepository.findByStateAndCityAndIdGreaterThan(state, city, cursor, page);
+            } else if (state != null) {
+                return restaurantRepository.findByStateAndIdGreaterThan(state, cursor, page);
+            }
+            return restaurantRepository.findByCityAndIdGreaterThan(city, cursor, page);
+        });
+        return keysetResponse(restaurants, page, Restaurant::getId);
+    }
+
+    @ApiOperation(value = "Stream all restaurants as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamRestaurants() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(restaurantRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     @ApiOperation(value = "Get a single restaurant")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public Restaurant getById(
+    public ResponseEntity<Restaurant> getById(
             @ApiParam("id") @RequestParam Long id) {
-        Restaurant restaurant = restaurantRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
-
-        return restaurant;
+        return versionedGet(restaurantRepository, Restaurant.class, id);
     }
 
     @ApiOperation(value = "Create a new restaurant")
@@ -76,38 +147,48 @@ public class RestaurantController extends ApiController {
         return savedRestaurant;
     }
 
+    @ApiOperation(value = "Create many restaurants from a JSON array or newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postRestaurantsBulk(InputStream body) throws IOException {
+        long count = bulkIngestService.ingest(body, Restaurant.class, restaurant -> restaurant.setId(0), restaurantRepository);
+        return genericMessage("%d Restaurant rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a restaurant")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteRestaurant(
             @ApiParam("id") @RequestParam Long id) {
-        Restaurant restaurant = restaurantRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
-
-        restaurantRepository.delete(restaurant);
+        deleted(restaurantRepository.deleteOne(id), Restaurant.builder().id(id).build(), id);
         return genericMessage("Restaurant with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single restaurant")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public Restaurant updateRestaurant(
+    public ResponseEntity<Restaurant> updateRestaurant(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid Restaurant incoming) {
 
-        Restaurant restaurant = restaurantRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(Restaurant.class, id));
+        incoming.setId(id);
+        Restaurant restaurant = updateVersioned(restaurantRepository, id, incoming, ifMatch);
+
+        return ResponseEntity.ok().eTag(rowEtag(restaurant)).body(restaurant);
+    }
 
-        restaurant.setName(incoming.getName());
-        restaurant.setAddress(incoming.getAddress());
-        restaurant.setCity(incoming.getCity());
-        restaurant.setState(incoming.getState());
-        restaurant.setZip(incoming.getZip());
-        restaurant.setDescription(incoming.getDescription());
+    @ApiOperation(value = "Change some fields of a single restaurant (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<Restaurant> patchRestaurant(
+            @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        restaurantRepository.save(restaurant);
+        Restaurant restaurant = patched(mergePatchService, Restaurant.class, id, patch, ifMatch);
 
-        return restaurant;
+        return ResponseEntity.ok().eTag(rowEtag(restaurant)).body(restaurant);
     }
 
 }
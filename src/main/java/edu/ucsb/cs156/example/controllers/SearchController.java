@@ -0,0 +1,54 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.services.SearchIndexService;
+import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+import lombok.extern.slf4j.Slf4j;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.util.List;
+
+@Api(description = "Full-text search across animals, books, parks and restaurants")
+@RequestMapping("/api/search")
+@RestController
+@Slf4j
+public class SearchController extends ApiController {
+    public static final int MAX_RESULTS = 100;
+
+    @Autowired
+    SearchIndexService searchIndexService;
+
+    @ApiOperation(value = "Search, best matches first")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("")
+    public Iterable<SearchHit> search(
+            @ApiParam("words to look for; \"quoted phrases\", prefix*, +required and -excluded are supported") @RequestParam String q,
+            @ApiParam("only return these types (animals, books, parks, restaurants)") @RequestParam(required = false) List<String> types,
+            @ApiParam("maximum number of results") @RequestParam(defaultValue = "20") int limit) throws IOException {
+        if (types != null && !SearchIndexService.TYPES.containsAll(types)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "types must be among " + SearchIndexService.TYPES);
+        }
+        return searchIndexService.search(q, types, Math.max(1, Math.min(limit, MAX_RESULTS)));
+    }
+
+    @ApiOperation(value = "Rebuild the search index from the database")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping("/reindex")
+    public Object reindex() throws IOException {
+        long count = searchIndexService.reindex();
+        return genericMessage("%d documents indexed".formatted(count));
+    }
+}
@@ -3,28 +3,47 @@ package edu.ucsb.cs156.example.controllers;
 import edu.ucsb.cs156.example.entities.UCSBDate;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
 import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.UCSBDateTimelineService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
 
 @Api(description = "UCSBDates")
 @RequestMapping("/api/ucsbdates")
@@ -35,23 +54,92 @@ public class UCSBDatesController extends ApiController {
     @Autowired
     UCSBDateRepository ucsbDateRepository;
 
-    @ApiOperation(value = "List all ucsb dates")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    UCSBDateTimelineService ucsbDateTimeline;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all ucsb dates (pass after and/or limit for keyset paging)", response = UCSBDate.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<UCSBDate> allUCSBDates() {
-        Iterable<UCSBDate> dates = ucsbDateRepository.findAll();
-        return dates;
+    public ResponseEntity<?> allUCSBDates(
+            @ApiParam("return only rows with id greater than this cursor") @RequestParam(required = false) Long after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (after == null && limit == null) {
+            return cachedAll(UCSBDate.class, ucsbDateRepository::findAll);
+        }
+        return conditionalGet(UCSBDate.class, () -> {
+            Pageable page = keysetPage(limit, "id");
+            List<UCSBDate> dates = ucsbDateRepository.findByIdGreaterThan(after == null ? 0L : after, page);
+            return keysetResponse(dates, page, UCSBDate::getId);
+        });
+    }
+
+    @ApiOperation(value = "Stream all ucsb dates as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamUCSBDates() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(ucsbDateRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
+    }
+
+    @ApiOperation(value = "Dates from from (inclusive) to to (exclusive), in time order (keyset paged: a full page has an X-Next-Cursor to pass as after)")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/range")
+    public ResponseEntity<Iterable<UCSBDate>> ucsbDatesInRange(
+            @ApiParam("start, in iso format, inclusive") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @ApiParam("end, in iso format, exclusive") @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @ApiParam("return only dates after this cursor, the X-Next-Cursor of the previous page") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        if (to.isBefore(from)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "to must not be before from");
+        }
+        // the cursor is the last row's "localDateTime,id"; dates are not unique
+        LocalDateTime afterTime = from;
+        long afterId = Long.MIN_VALUE;
+        if (after != null) {
+            int comma = after.lastIndexOf(',');
+            try {
+                LocalDateTime cursorTime = LocalDateTime.parse(after.substring(0, Math.max(comma, 0)));
+                if (!cursorTime.isBefore(from)) {
+                    afterTime = cursorTime;
+                    afterId = Long.parseLong(after.substring(comma + 1));
+                }
+            } catch (DateTimeParseException | NumberFormatException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "after must be an X-Next-Cursor from /range");
+            }
+        }
+        Pageable page = keysetPage(limit, "localDateTime", "id");
+        LocalDateTime startTime = afterTime;
+        long startId = afterId;
+        List<UCSBDate> dates = coalesced(UCSBDate.class,
+                () -> ucsbDateRepository.findInRangeAfter(startTime, startId, to, page));
+        return keysetResponse(dates, page, date -> date.getLocalDateTime() + "," + date.getId());
+    }
+
+    @ApiOperation(value = "The next dates that have not happened yet, soonest first")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/upcoming")
+    public List<UCSBDate> upcomingUCSBDates(
+            @ApiParam("maximum number of dates to return") @RequestParam(defaultValue = "10") int limit) {
+        return ucsbDateTimeline.upcoming(Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
     }
 
     @ApiOperation(value = "Get a single date")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public UCSBDate getById(
+    public ResponseEntity<UCSBDate> getById(
             @ApiParam("id") @RequestParam Long id) {
-        UCSBDate ucsbDate = ucsbDateRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
-
-        return ucsbDate;
+        return versionedGet(ucsbDateRepository, UCSBDate.class, id);
     }
 
     @ApiOperation(value = "Create a new date")
@@ -74,38 +162,56 @@ public class UCSBDatesController extends ApiController {
         ucsbDate.setLocalDateTime(localDateTime);
 
         UCSBDate savedUcsbDate = ucsbDateRepository.save(ucsbDate);
+        ucsbDateTimeline.put(savedUcsbDate);
 
         return savedUcsbDate;
     }
 
+    @ApiOperation(value = "Create many dates from a JSON array or newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postUCSBDatesBulk(InputStream body) throws IOException {
+        long count = bulkIngestService.ingest(body, UCSBDate.class, date -> date.setId(0), ucsbDateRepository);
+        ucsbDateTimeline.reload();
+        return genericMessage("%d UCSBDate rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a UCSBDate")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteUCSBDate(
             @ApiParam("id") @RequestParam Long id) {
-        UCSBDate ucsbDate = ucsbDateRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
-
-        ucsbDateRepository.delete(ucsbDate);
+        deleted(ucsbDateRepository.deleteOne(id), UCSBDate.builder().id(id).build(), id);
+        ucsbDateTimeline.remove(id);
         return genericMessage("UCSBDate with id %s deleted".formatted(id));
     }
 
     @ApiOperation(value = "Update a single date")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public UCSBDate updateUCSBDate(
+    public ResponseEntity<UCSBDate> updateUCSBDate(
             @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid UCSBDate incoming) {
 
-        UCSBDate ucsbDate = ucsbDateRepository.findById(id)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDate.class, id));
+        incoming.setId(id);
+        UCSBDate ucsbDate = updateVersioned(ucsbDateRepository, id, incoming, ifMatch);
+        ucsbDateTimeline.put(ucsbDate);
+
+        return ResponseEntity.ok().eTag(rowEtag(ucsbDate)).body(ucsbDate);
+    }
 
-        ucsbDate.setQuarterYYYYQ(incoming.getQuarterYYYYQ());
-        ucsbDate.setName(incoming.getName());
-        ucsbDate.setLocalDateTime(incoming.getLocalDateTime());
+    @ApiOperation(value = "Change some fields of a single date (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<UCSBDate> patchUCSBDate(
+            @ApiParam("id") @RequestParam Long id,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        ucsbDateRepository.save(ucsbDate);
+        UCSBDate ucsbDate = patched(mergePatchService, UCSBDate.class, id, patch, ifMatch);
+        ucsbDateTimeline.put(ucsbDate);
 
-        return ucsbDate;
+        return ResponseEntity.ok().eTag(rowEtag(ucsbDate)).body(ucsbDate);
     }
 }
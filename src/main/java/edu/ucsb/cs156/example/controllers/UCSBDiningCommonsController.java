@@ -1,53 +1,159 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 import edu.ucsb.cs156.example.errors.EntityNotFoundException;
+import edu.ucsb.cs156.example.models.NearbyDiningCommons;
 import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.UCSBDiningCommonsSnapshotService;
+import edu.ucsb.cs156.example.services.UCSBDiningCommonsSnapshotService.Snapshot;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import lombok.extern.slf4j.Slf4j;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 
+import static edu.ucsb.cs156.example.services.UCSBDiningCommonsSnapshotService.SNAPSHOT_VERSION_HEADER;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
 
 @Api(description = "UCSBDiningCommons")
 @RequestMapping("/api/ucsbdiningcommons")
 @RestController
 @Slf4j
 public class UCSBDiningCommonsController extends ApiController {
+    public static final int MAX_NEAREST = 100;
 
     @Autowired
     UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
 
-    @ApiOperation(value = "List all ucsb dining commons")
+    @Autowired
+    NdjsonExportService ndjsonExportService;
+
+    @Autowired
+    BulkIngestService bulkIngestService;
+
+    @Autowired
+    UCSBDiningCommonsSnapshotService ucsbDiningCommonsSnapshot;
+
+    @Autowired
+    MergePatchService mergePatchService;
+
+    @ApiOperation(value = "List all ucsb dining commons (pass after and/or limit for keyset paging)", response = UCSBDiningCommons.class, responseContainer = "List")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("/all")
-    public Iterable<UCSBDiningCommons> allCommonss() {
-        Iterable<UCSBDiningCommons> commons = ucsbDiningCommonsRepository.findAll();
-        return commons;
+    public ResponseEntity<?> allCommonss(
+            @ApiParam("return only rows with code greater than this cursor") @RequestParam(required = false) String after,
+            @ApiParam("maximum number of rows to return") @RequestParam(required = false) Integer limit) {
+        Snapshot snapshot = ucsbDiningCommonsSnapshot.current();
+        if (after == null && limit == null) {
+            ResponseEntity<byte[]> all = cachedAll(UCSBDiningCommons.class, etag(snapshot), snapshot::all);
+            return ResponseEntity.status(all.getStatusCode())
+                    .headers(all.getHeaders())
+                    .header(SNAPSHOT_VERSION_HEADER, Long.toString(snapshot.version()))
+                    .body(all.getBody());
+        }
+        return conditionalGet(etag(snapshot), () -> {
+            Pageable page = keysetPage(limit, "code");
+            List<UCSBDiningCommons> commons = snapshot.after(after == null ? "" : after, page.getPageSize());
+            return keysetResponse(commons, page, UCSBDiningCommons::getCode);
+        });
+    }
+
+    @ApiOperation(value = "Stream all ucsb dining commons as newline-delimited JSON")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping(value = "/all", produces = NdjsonExportService.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamCommonss() {
+        StreamingResponseBody body = out -> ndjsonExportService.export(ucsbDiningCommonsRepository::streamAll, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                .body(body);
     }
 
     @ApiOperation(value = "Get a single commons")
     @PreAuthorize("hasRole('ROLE_USER')")
     @GetMapping("")
-    public UCSBDiningCommons getById(
+    public ResponseEntity<UCSBDiningCommons> getById(
             @ApiParam("code") @RequestParam String code) {
-        UCSBDiningCommons commons = ucsbDiningCommonsRepository.findById(code)
+        Snapshot snapshot = ucsbDiningCommonsSnapshot.current();
+        UCSBDiningCommons commons = snapshot.get(code)
                 .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommons.class, code));
+        return conditionalGet(rowEtag(commons), () -> ResponseEntity.ok()
+                .header(SNAPSHOT_VERSION_HEADER, Long.toString(snapshot.version()))
+                .body(commons));
+    }
 
-        return commons;
+    @ApiOperation(value = "The k dining commons nearest to a location, nearest first")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/nearest")
+    public ResponseEntity<List<NearbyDiningCommons>> nearestCommons(
+            @ApiParam("latitude in degrees") @RequestParam double lat,
+            @ApiParam("longitude in degrees") @RequestParam double lon,
+            @ApiParam("number of commons to return") @RequestParam(defaultValue = "1") int k) {
+        checkLocation(lat, lon);
+        if (k < 1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "k must be at least 1");
+        }
+        Snapshot snapshot = ucsbDiningCommonsSnapshot.current();
+        return ResponseEntity.ok()
+                .header(SNAPSHOT_VERSION_HEADER, Long.toString(snapshot.version()))
+                .body(snapshot.nearest(lat, lon, Math.min(k, MAX_NEAREST)));
+    }
+
+    @ApiOperation(value = "The dining commons within a radius of a location, nearest first")
+    @PreAuthorize("hasRole('ROLE_USER')")
+    @GetMapping("/within")
+    public ResponseEntity<List<NearbyDiningCommons>> commonsWithin(
+            @ApiParam("latitude in degrees") @RequestParam double lat,
+            @ApiParam("longitude in degrees") @RequestParam double lon,
+            @ApiParam("radius in meters") @RequestParam double radius) {
+        checkLocation(lat, lon);
+        if (!(radius >= 0)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "radius must not be negative");
+        }
+        Snapshot snapshot = ucsbDiningCommonsSnapshot.current();
+        return ResponseEntity.ok()
+                .header(SNAPSHOT_VERSION_HEADER, Long.toString(snapshot.version()))
+                .body(snapshot.within(lat, lon, radius));
+    }
+
+    // every snapshot has its own version, so it is already a validator for
+    // everything read from it
+    private static String etag(Snapshot snapshot) {
+        return "\"ucsbdiningcommons-" + snapshot.version() + "\"";
+    }
+
+    private static void checkLocation(double lat, double lon) {
+        if (!(lat >= -90 && lat <= 90 && lon >= -180 && lon <= 180)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "lat must be in [-90, 90] and lon in [-180, 180]");
+        }
     }
 
     @ApiOperation(value = "Create a new commons")
@@ -74,42 +180,64 @@ public class UCSBDiningCommonsController extends ApiController {
         commons.setLongitude(longitude);
 
         UCSBDiningCommons savedCommons = ucsbDiningCommonsRepository.save(commons);
+        ucsbDiningCommonsSnapshot.put(savedCommons);
 
         return savedCommons;
     }
 
+    @ApiOperation(value = "Create many new commons from a JSON array or newline-delimited JSON (409 if a code already exists)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PostMapping(value = "/bulk", consumes = { MediaType.APPLICATION_JSON_VALUE, NdjsonExportService.APPLICATION_NDJSON_VALUE })
+    public Object postCommonsBulk(InputStream body) throws IOException {
+        // code is the natural key, so rows keep the code they were sent
+        // with; insert-only, so existing commons are changed with PUT or
+        // PATCH, never overwritten here
+        long count;
+        try {
+            count = bulkIngestService.insert(body, UCSBDiningCommons.class, commons -> commons.setVersion(0));
+        } finally {
+            // chunks before a failed one are committed
+            ucsbDiningCommonsSnapshot.reload();
+        }
+        return genericMessage("%d UCSBDiningCommons rows saved".formatted(count));
+    }
+
     @ApiOperation(value = "Delete a UCSBDiningCommons")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @DeleteMapping("")
     public Object deleteCommons(
             @ApiParam("code") @RequestParam String code) {
-        UCSBDiningCommons commons = ucsbDiningCommonsRepository.findById(code)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommons.class, code));
-
-        ucsbDiningCommonsRepository.delete(commons);
+        deleted(ucsbDiningCommonsRepository.deleteOne(code), UCSBDiningCommons.builder().code(code).build(), code);
+        ucsbDiningCommonsSnapshot.remove(code);
         return genericMessage("UCSBDiningCommons with id %s deleted".formatted(code));
     }
 
     @ApiOperation(value = "Update a single commons")
     @PreAuthorize("hasRole('ROLE_ADMIN')")
     @PutMapping("")
-    public UCSBDiningCommons updateCommons(
+    public ResponseEntity<UCSBDiningCommons> updateCommons(
             @ApiParam("code") @RequestParam String code,
+            @ApiParam("ETag of the version being replaced") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
             @RequestBody @Valid UCSBDiningCommons incoming) {
 
-        UCSBDiningCommons commons = ucsbDiningCommonsRepository.findById(code)
-                .orElseThrow(() -> new EntityNotFoundException(UCSBDiningCommons.class, code));
+        incoming.setCode(code);
+        UCSBDiningCommons commons = updateVersioned(ucsbDiningCommonsRepository, code, incoming, ifMatch);
+        ucsbDiningCommonsSnapshot.put(commons);
 
+        return ResponseEntity.ok().eTag(rowEtag(commons)).body(commons);
+    }
 
-        commons.setName(incoming.getName());  
-        commons.setHasSackMeal(incoming.getHasSackMeal());
-        commons.setHasTakeOutMeal(incoming.getHasTakeOutMeal());
-        commons.setHasDiningCam(incoming.getHasDiningCam());
-        commons.setLatitude(incoming.getLatitude());
-        commons.setLongitude(incoming.getLongitude());
+    @ApiOperation(value = "Change some fields of a single commons (JSON merge patch)")
+    @PreAuthorize("hasRole('ROLE_ADMIN')")
+    @PatchMapping(value = "", consumes = { MergePatchService.APPLICATION_MERGE_PATCH_JSON_VALUE, MediaType.APPLICATION_JSON_VALUE })
+    public ResponseEntity<UCSBDiningCommons> patchCommons(
+            @ApiParam("code") @RequestParam String code,
+            @ApiParam("ETag of the version being changed") @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch,
+            @RequestBody JsonNode patch) throws IOException {
 
-        ucsbDiningCommonsRepository.save(commons);
+        UCSBDiningCommons commons = patched(mergePatchService, UCSBDiningCommons.class, code, patch, ifMatch);
+        ucsbDiningCommonsSnapshot.put(commons);
 
-        return commons;
+        return ResponseEntity.ok().eTag(rowEtag(commons)).body(commons);
     }
 }
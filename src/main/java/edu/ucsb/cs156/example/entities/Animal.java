@@ -1,10 +1,20 @@
 package edu.ucsb.cs156.example.entities;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Version;
 import javax.persistence.GeneratedValue;
+import javax.persistence.SequenceGenerator;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+
+import edu.ucsb.cs156.example.services.SearchIndexEntityListener;
+import edu.ucsb.cs156.example.services.TableVersionEntityListener;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -14,14 +24,21 @@ import lombok.Builder;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@EntityListeners({ SearchIndexEntityListener.class, TableVersionEntityListener.class })
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "animals")
 @Entity(name = "animals")
-public class Animal {
+public class Animal implements Versioned {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "animals_seq")
+  @SequenceGenerator(name = "animals_seq", allocationSize = 50)
   private long id;
   
   private String name;
   private String genus;
   private String species;
 
-}
\ No newline at end of file
+  @Version
+  private long version;
+}
@@ -1,10 +1,20 @@
 package edu.ucsb.cs156.example.entities;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Version;
 import javax.persistence.GeneratedValue;
+import javax.persistence.SequenceGenerator;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+
+import edu.ucsb.cs156.example.services.LeaderboardEntityListener;
+import edu.ucsb.cs156.example.services.TableVersionEntityListener;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -14,14 +24,22 @@ import lombok.Builder;
 @AllArgsConstructor
 @NoArgsConstructor
 @Builder
+@EntityListeners({ LeaderboardEntityListener.class, TableVersionEntityListener.class })
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "musics")
 @Entity(name = "musics")
-public class Music {
+public class Music implements Versioned {
   @Id
-  @GeneratedValue(strategy = GenerationType.IDENTITY)
+  @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "musics_seq")
+  @SequenceGenerator(name = "musics_seq", allocationSize = 50)
   private long id;
 
   private String title;
   private String author;
   private float rating;  
   private int views;
-}
\ No newline at end of file
+
+  @Version
+  private long version;
+}
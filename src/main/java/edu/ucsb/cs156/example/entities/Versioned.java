@@ -0,0 +1,9 @@
+package edu.ucsb.cs156.example.entities;
+
+// Entities with a JPA @Version column.  The version is the row's ETag and
+// is what PUT's If-Match is compared against.
+public interface Versioned {
+  long getVersion();
+
+  void setVersion(long version);
+}
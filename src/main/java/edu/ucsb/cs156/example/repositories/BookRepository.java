@@ -2,10 +2,33 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Book;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.List;
+import java.util.stream.Stream;
+
 
 @Repository
-public interface BookRepository extends CrudRepository<Book, Long> {
-}
\ No newline at end of file
+public interface BookRepository extends PagingAndSortingRepository<Book, Long>, VersionedRepository<Book> {
+  List<Book> findByIdGreaterThan(long id, Pageable pageable);
+
+  // ndjson exports; rows they load are not put in the second-level cache
+  @QueryHints({
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_MODE, value = "GET") })
+  @Query("select x from books x")
+  Stream<Book> streamAll();
+
+  // one DELETE with no SELECT first, and the second-level cache drops only
+  // this row; see VersionedRepository.removeOne.  Returns the number of rows
+  // deleted.  See EntityDeletedEvent.
+  default int deleteOne(long id) {
+    return removeOne(Book.class, id);
+  }
+}
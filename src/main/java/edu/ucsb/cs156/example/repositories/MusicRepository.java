@@ -2,10 +2,38 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Music;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.List;
+import java.util.stream.Stream;
+
 
 @Repository
-public interface MusicRepository extends CrudRepository<Music, Long> {
-}
\ No newline at end of file
+public interface MusicRepository extends PagingAndSortingRepository<Music, Long>, VersionedRepository<Music> {
+  List<Music> findByIdGreaterThan(long id, Pageable pageable);
+
+  // ndjson exports; rows they load are not put in the second-level cache
+  @QueryHints({
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_MODE, value = "GET") })
+  @Query("select x from musics x")
+  Stream<Music> streamAll();
+
+  // leaderboard loads; see V9__Add_leaderboard_indexes.sql
+  List<Music> findAllByOrderByRatingDescIdAsc(Pageable pageable);
+
+  List<Music> findAllByOrderByViewsDescIdAsc(Pageable pageable);
+
+  // one DELETE with no SELECT first, and the second-level cache drops only
+  // this row; see VersionedRepository.removeOne.  Returns the number of rows
+  // deleted.  See EntityDeletedEvent.
+  default int deleteOne(long id) {
+    return removeOne(Music.class, id);
+  }
+}
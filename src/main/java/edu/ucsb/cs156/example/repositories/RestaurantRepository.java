@@ -2,10 +2,42 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.Restaurant;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.util.List;
+import java.util.stream.Stream;
+
 
 @Repository
-public interface RestaurantRepository extends CrudRepository<Restaurant, Long> {
-}
\ No newline at end of file
+public interface RestaurantRepository extends PagingAndSortingRepository<Restaurant, Long>, VersionedRepository<Restaurant> {
+  List<Restaurant> findByIdGreaterThan(long id, Pageable pageable);
+
+  // location lookups; see V7__Add_restaurant_location_indexes.sql
+  List<Restaurant> findByStateAndCityAndIdGreaterThan(String state, String city, long id, Pageable pageable);
+
+  List<Restaurant> findByStateAndIdGreaterThan(String state, long id, Pageable pageable);
+
+  List<Restaurant> findByCityAndIdGreaterThan(String city, long id, Pageable pageable);
+
+  List<Restaurant> findByZipAndIdGreaterThan(String zip, long id, Pageable pageable);
+
+  // ndjson exports; rows they load are not put in the second-level cache
+  @QueryHints({
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_MODE, value = "GET") })
+  @Query("select x from restaurants x")
+  Stream<Restaurant> streamAll();
+
+  // one DELETE with no SELECT first, and the second-level cache drops only
+  // this row; see VersionedRepository.removeOne.  Returns the number of rows
+  // deleted.  See EntityDeletedEvent.
+  default int deleteOne(long id) {
+    return removeOne(Restaurant.class, id);
+  }
+}
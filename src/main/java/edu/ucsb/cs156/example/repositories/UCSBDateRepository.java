@@ -2,11 +2,50 @@ package edu.ucsb.cs156.example.repositories;
 
 import edu.ucsb.cs156.example.entities.UCSBDate;
 
-import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.QueryHint;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
 
 @Repository
-public interface UCSBDateRepository extends CrudRepository<UCSBDate, Long> {
+public interface UCSBDateRepository extends PagingAndSortingRepository<UCSBDate, Long>, VersionedRepository<UCSBDate> {
+  List<UCSBDate> findByIdGreaterThan(long id, Pageable pageable);
+
+  // ndjson exports; rows they load are not put in the second-level cache
+  @QueryHints({
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE, value = "500"),
+      @QueryHint(name = org.hibernate.jpa.QueryHints.HINT_CACHE_MODE, value = "GET") })
+  @Query("select x from ucsbdates x")
+  Stream<UCSBDate> streamAll();
+
   Iterable<UCSBDate> findAllByQuarterYYYYQ(String quarterYYYYQ);
-}
\ No newline at end of file
+
+  // time lookups, keyset paged on (localDateTime, id) by a page sorted that
+  // way; see V8__Add_ucsbdates_time_index.sql.  Rows before to that come
+  // after the cursor; the first page passes from and an afterId below every
+  // id.  The redundant lower bound lets the index range scan start at the
+  // cursor.
+  @Query("select x from ucsbdates x where x.localDateTime >= :afterTime and x.localDateTime < :to"
+      + " and (x.localDateTime > :afterTime or x.id > :afterId)")
+  List<UCSBDate> findInRangeAfter(@Param("afterTime") LocalDateTime afterTime, @Param("afterId") long afterId,
+      @Param("to") LocalDateTime to, Pageable pageable);
+
+  @Query("select x from ucsbdates x where x.localDateTime >= :from order by x.localDateTime, x.id")
+  List<UCSBDate> findAllFrom(@Param("from") LocalDateTime from, Pageable pageable);
+
+  // one DELETE with no SELECT first, and the second-level cache drops only
+  // this row; see VersionedRepository.removeOne.  Returns the number of rows
+  // deleted.  See EntityDeletedEvent.
+  default int deleteOne(long id) {
+    return removeOne(UCSBDate.class, id);
+  }
+}
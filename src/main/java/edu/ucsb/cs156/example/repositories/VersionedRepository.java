@@ -0,0 +1,33 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.Versioned;
+
+import java.util.Optional;
+
+// Repository fragment for writing a whole row back without reading it
+// first, and for deleting one row of a second-level cached entity
+// without reading it.
+public interface VersionedRepository<T extends Versioned> {
+  /**
+   * Overwrites the row with entity's id with entity's fields, as one
+   * UPDATE ... WHERE id = ? AND version = ?, and returns entity with its
+   * version bumped.  Throws OptimisticLockingFailureException when no row
+   * has that id and version.
+   */
+  T updateVersioned(T entity);
+
+  /**
+   * Deletes the row of type with that id as one DELETE ... WHERE id = ?,
+   * without reading it first, and returns the number of rows deleted.  The
+   * second-level cache drops just that id, where a JPQL delete would clear
+   * the entity's whole region.  @PostRemove callbacks do not run.
+   */
+  int removeOne(Class<? extends T> type, Object id);
+
+  /**
+   * The version of the row of type with that id, read with one
+   * SELECT version ... WHERE id = ? and without loading the row; empty when
+   * there is no such row.
+   */
+  Optional<Long> findVersion(Class<? extends T> type, Object id);
+}
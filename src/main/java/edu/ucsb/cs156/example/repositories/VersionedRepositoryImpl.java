@@ -0,0 +1,87 @@
+package edu.ucsb.cs156.example.repositories;
+
+import edu.ucsb.cs156.example.entities.Versioned;
+
+import java.util.Optional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.hibernate.Session;
+import org.hibernate.cache.spi.access.EntityDataAccess;
+import org.hibernate.cache.spi.access.SoftLock;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.persister.entity.AbstractEntityPersister;
+import org.springframework.transaction.annotation.Transactional;
+
+// Session.update() reattaches a detached entity without loading it: the
+// flush writes every column with the version check in the WHERE clause,
+// and JPA's @PostUpdate listeners still run.  The entity must not already
+// be in the persistence context, which holds with open-in-view off.
+//
+// removeOne is one native DELETE, with no SELECT first.  Hibernate clears
+// the region of every entity whose table is in a bulk statement's query
+// spaces (all of them when it has none), so the DELETE is synchronized on
+// a space no entity uses, and the id is taken out of the second-level
+// cache by hand instead.  It is soft-locked before the DELETE and released
+// after the transaction, which is what Hibernate's own delete does; a plain
+// evict would let a load that read the row before the DELETE put it back.
+// Like any bulk statement it skips JPA's @PostRemove callbacks.
+//
+// findVersion selects the version column alone, for conditional GETs that
+// only need to know whether the client's copy is still current.
+
+public class VersionedRepositoryImpl<T extends Versioned> implements VersionedRepository<T> {
+
+  static final String DELETE_QUERY_SPACE = "VersionedRepository.removeOne";
+
+  @PersistenceContext
+  EntityManager entityManager;
+
+  @Override
+  @Transactional
+  public T updateVersioned(T entity) {
+    entityManager.unwrap(Session.class).update(entity);
+    entityManager.flush();
+    return entity;
+  }
+
+  @Override
+  @Transactional
+  public int removeOne(Class<? extends T> type, Object id) {
+    SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+    AbstractEntityPersister persister = (AbstractEntityPersister) session.getFactory().getMetamodel()
+        .entityPersister(type);
+    EntityDataAccess cache = persister.canWriteToCache() ? persister.getCacheAccessStrategy() : null;
+    Object key = null;
+    SoftLock lock = null;
+    if (cache != null) {
+      key = cache.generateCacheKey(id, persister, session.getFactory(), session.getTenantIdentifier());
+      lock = cache.lockItem(session, key, null);
+    }
+    try {
+      return session.createNativeQuery("DELETE FROM %s WHERE %s = :id"
+          .formatted(persister.getTableName(), persister.getIdentifierColumnNames()[0]))
+          .addSynchronizedQuerySpace(DELETE_QUERY_SPACE)
+          .setParameter("id", id)
+          .executeUpdate();
+    } finally {
+      if (cache != null) {
+        Object lockedKey = key;
+        SoftLock lockedItem = lock;
+        session.getActionQueue().registerProcess(
+            (success, completed) -> cache.unlockItem(completed, lockedKey, lockedItem));
+      }
+    }
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Optional<Long> findVersion(Class<? extends T> type, Object id) {
+    return entityManager.createQuery("select x.version from %s x where x.id = :id"
+        .formatted(entityManager.getMetamodel().entity(type).getName()), Long.class)
+        .setParameter("id", id)
+        .getResultStream()
+        .findFirst();
+  }
+}
@@ -0,0 +1,75 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Answers "is this email an admin?" without touching the database on the
+// login path.  Admins come from two places: the app.admin.emails property
+// (fixed for the life of the process) and users whose admin column is set.
+// The latter are loaded once, updated in place when an
+// AdminStatusChangedEvent is published, and re-read every
+// app.admin.refreshMillis to pick up changes made directly in the database.
+
+@Slf4j
+@Service("adminMembership")
+public class AdminMembershipService {
+
+  @Autowired
+  UserRepository userRepository;
+
+  private final Set<String> configuredAdmins;
+
+  private volatile Set<String> databaseAdmins;
+
+  public AdminMembershipService(@Value("${app.admin.emails}") List<String> adminEmails) {
+    this.configuredAdmins = Set.copyOf(adminEmails);
+  }
+
+  public boolean isConfiguredAdmin(String email) {
+    return configuredAdmins.contains(email);
+  }
+
+  public boolean isAdmin(String email) {
+    return configuredAdmins.contains(email) || databaseAdmins().contains(email);
+  }
+
+  @Scheduled(fixedDelayString = "${app.admin.refreshMillis:300000}", initialDelayString = "${app.admin.refreshMillis:300000}")
+  public synchronized void refresh() {
+    databaseAdmins = userRepository.findAdminEmails().stream()
+        .filter(Objects::nonNull)
+        .collect(Collectors.toUnmodifiableSet());
+    log.debug("loaded {} database admins", databaseAdmins.size());
+  }
+
+  @EventListener
+  public synchronized void onAdminStatusChanged(AdminStatusChangedEvent event) {
+    Set<String> admins = new HashSet<>(databaseAdmins());
+    if (event.admin()) {
+      admins.add(event.email());
+    } else {
+      admins.remove(event.email());
+    }
+    databaseAdmins = Set.copyOf(admins);
+  }
+
+  private Set<String> databaseAdmins() {
+    Set<String> admins = databaseAdmins;
+    if (admins == null) {
+      refresh();
+      admins = databaseAdmins;
+    }
+    return admins;
+  }
+}
@@ -0,0 +1,8 @@
+package edu.ucsb.cs156.example.services;
+
+// Published whenever a User's admin flag is written, so that anything
+// caching admin membership (AdminMembershipService, the per-session User
+// cache in CurrentUserServiceImpl) can refresh itself.
+
+public record AdminStatusChangedEvent(String email, boolean admin) {
+}
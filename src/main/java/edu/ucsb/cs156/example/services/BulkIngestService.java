@@ -0,0 +1,123 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+// Reads either a JSON array or newline-delimited JSON from the request body
+// one row at a time and saves the rows in chunks, one transaction per chunk.
+// Together with sequence-generated ids and hibernate.jdbc.batch_size this
+// lets Hibernate send each chunk as a handful of batched INSERTs.
+//
+// Chunks that have already been committed stay committed if a later row
+// fails to parse or save; the returned count says how far we got.
+//
+// insert() is for tables with a natural key, where save() would merge: one
+// SELECT per row and a silent overwrite of any row with the same key.  It
+// persists every row as new, so a chunk is only INSERTs, and a key that
+// already exists fails its chunk with DuplicateKeyException.
+
+@Slf4j
+@Service("bulkIngest")
+public class BulkIngestService {
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @Autowired
+  PlatformTransactionManager transactionManager;
+
+  @PersistenceContext
+  EntityManager entityManager;
+
+  @Value("${app.bulk.chunkSize:1000}")
+  int chunkSize;
+
+  // SQLSTATE for a unique constraint violation, in both H2 and PostgreSQL
+  static final String UNIQUE_VIOLATION = "23505";
+
+  public <T> long ingest(InputStream body, Class<T> type, Consumer<T> prepare, CrudRepository<T, ?> repository)
+      throws IOException {
+    return ingest(body, type, prepare, repository::saveAll);
+  }
+
+  public <T> long insert(InputStream body, Class<T> type, Consumer<T> prepare) throws IOException {
+    return ingest(body, type, prepare, chunk -> persistAll(type, chunk));
+  }
+
+  private <T> long ingest(InputStream body, Class<T> type, Consumer<T> prepare, Consumer<List<T>> save)
+      throws IOException {
+    TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+    long count = 0;
+    List<T> chunk = new ArrayList<>(chunkSize);
+    try (MappingIterator<T> rows = mapper.readerFor(type).readValues(body)) {
+      while (rows.hasNextValue()) {
+        T row = rows.nextValue();
+        prepare.accept(row);
+        chunk.add(row);
+        if (chunk.size() == chunkSize) {
+          count += saveChunk(transaction, save, chunk, count);
+          chunk = new ArrayList<>(chunkSize);
+        }
+      }
+    }
+    if (!chunk.isEmpty()) {
+      count += saveChunk(transaction, save, chunk, count);
+    }
+    log.info("bulk ingested {} {} rows", count, type.getSimpleName());
+    return count;
+  }
+
+  private <T> int saveChunk(TransactionTemplate transaction, Consumer<List<T>> save, List<T> chunk, long saved) {
+    try {
+      transaction.executeWithoutResult(status -> save.accept(chunk));
+    } catch (DuplicateKeyException e) {
+      throw new DuplicateKeyException("%s in rows %d to %d; the %d rows before them were saved"
+          .formatted(e.getMessage(), saved + 1, saved + chunk.size(), saved));
+    }
+    return chunk.size();
+  }
+
+  private <T> void persistAll(Class<T> type, List<T> chunk) {
+    try {
+      chunk.forEach(entityManager::persist);
+      entityManager.flush();
+    } catch (EntityExistsException e) {
+      // the same key twice in one chunk
+      throw duplicate(type, e);
+    } catch (PersistenceException e) {
+      if (e.getCause() instanceof org.hibernate.exception.ConstraintViolationException violation
+          && UNIQUE_VIOLATION.equals(violation.getSQLState())) {
+        throw duplicate(type, e);
+      }
+      throw e;
+    }
+  }
+
+  // without the cause, which Spring would append to the message the client
+  // sees
+  private static DuplicateKeyException duplicate(Class<?> type, PersistenceException e) {
+    log.info("bulk insert of {} rows failed: {}", type.getSimpleName(), e.toString());
+    return new DuplicateKeyException("a %s with the same key already exists".formatted(type.getSimpleName()));
+  }
+}
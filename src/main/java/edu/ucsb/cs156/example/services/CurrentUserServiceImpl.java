@@ -5,13 +5,21 @@ import edu.ucsb.cs156.example.models.CurrentUser;
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
 import java.util.Collection;
-import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
@@ -19,30 +27,76 @@ import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
 import org.springframework.security.oauth2.core.user.OAuth2User;
 import org.springframework.stereotype.Service;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 
 @Slf4j
 @Service("currentUser")
 public class CurrentUserServiceImpl extends CurrentUserService {
+  // The resolved User is kept in the HTTP session so that /api/currentUser
+  // and friends only go to the database once per login.  A cached entry is
+  // stale once evictUser(email) has been called after it was stamped, which
+  // happens whenever an AdminStatusChangedEvent is published for that email.
+  //
+  // Cached entries are also re-read once they are older than the session
+  // timeout, so evictions older than that can never matter and are pruned;
+  // evictedAt holds at most one timeout's worth of evicted emails.
+  static final String SESSION_USER = CurrentUserServiceImpl.class.getName() + ".user";
+
+  // serializable, so sessions can be persisted and replicated
+  record CachedUser(String email, long stamp, long cachedAtMillis, User user) implements Serializable {
+  }
+
+  record Eviction(long stamp, long atMillis) {
+  }
+
+  private final AtomicLong clock = new AtomicLong();
+  private final ConcurrentHashMap<String, Eviction> evictedAt = new ConcurrentHashMap<>();
+
+  Clock wallClock = Clock.systemUTC();
+
+  Duration sessionTimeout = Duration.ofMinutes(30);
+
+  // parsed the way Boot parses it (a bare number is seconds); plain
+  // @Value has no String to Duration conversion outside a Boot context
+  @Value("${server.servlet.session.timeout:30m}")
+  void setSessionTimeout(String timeout) {
+    sessionTimeout = DurationStyle.detectAndParse(timeout, ChronoUnit.SECONDS);
+  }
+
   @Autowired
   private UserRepository userRepository;
 
   @Autowired
   GrantedAuthoritiesService grantedAuthoritiesService;
 
-  @Value("${app.admin.emails}")
-  final private List<String> adminEmails = new ArrayList<String>();
+  @Autowired
+  ApplicationEventPublisher eventPublisher;
+
+  @Autowired
+  AdminMembershipService adminMembership;
 
   public CurrentUser getCurrentUser() {
     CurrentUser cu = CurrentUser.builder()
       .user(this.getUser())
       .roles(this.getRoles())
       .build();
-    log.info("getCurrentUser returns {}",cu);
+    log.debug("getCurrentUser returns {}",cu);
     return cu;
   }
 
-  
+  public void evictUser(String email) {
+    long now = wallClock.millis();
+    evictedAt.put(email, new Eviction(clock.incrementAndGet(), now));
+    evictedAt.values().removeIf(eviction -> eviction.atMillis() < now - sessionTimeout.toMillis());
+  }
+
+  @EventListener
+  public void onAdminStatusChanged(AdminStatusChangedEvent event) {
+    evictUser(event.email());
+  }
+
   public User getOAuth2AuthenticatedUser(SecurityContext securityContext, Authentication authentication) {
     OAuth2User oAuthUser = ((OAuth2AuthenticationToken) authentication).getPrincipal();
     String email = oAuthUser.getAttribute("email");
@@ -56,14 +110,15 @@ public class CurrentUserServiceImpl extends CurrentUserService {
     String hostedDomain = oAuthUser.getAttribute("hd");
 
     java.util.Map<java.lang.String,java.lang.Object> attrs = oAuthUser.getAttributes();
-    log.info("attrs={}",attrs);
+    log.debug("attrs={}",attrs);
 
     Optional<User> ou = userRepository.findByEmail(email);
     if (ou.isPresent()) {
       User u = ou.get();
-      if (adminEmails.contains(email) && !u.getAdmin()) {
+      if (adminMembership.isConfiguredAdmin(email) && !u.getAdmin()) {
         u.setAdmin(true);
         userRepository.save(u);
+        eventPublisher.publishEvent(new AdminStatusChangedEvent(email, true));
       }
       return u;
     }
@@ -78,9 +133,15 @@ public class CurrentUserServiceImpl extends CurrentUserService {
         .emailVerified(emailVerified)
         .locale(locale)
         .hostedDomain(hostedDomain)
-        .admin(adminEmails.contains(email))
+        .admin(adminMembership.isConfiguredAdmin(email))
         .build();
-    userRepository.save(u);
+    try {
+      userRepository.save(u);
+    } catch (DataIntegrityViolationException e) {
+      // a concurrent first login with the same email inserted it first;
+      // users.email is unique (V6__Add_lookup_indexes.sql)
+      return userRepository.findByEmail(email).orElseThrow(() -> e);
+    }
     return u;
   }
 
@@ -89,7 +150,25 @@ public class CurrentUserServiceImpl extends CurrentUserService {
     Authentication authentication = securityContext.getAuthentication();
 
     if (authentication instanceof OAuth2AuthenticationToken) {
-      return getOAuth2AuthenticatedUser(securityContext, authentication);
+      RequestAttributes request = RequestContextHolder.getRequestAttributes();
+      if (request == null) {
+        return getOAuth2AuthenticatedUser(securityContext, authentication);
+      }
+      String email = ((OAuth2AuthenticationToken) authentication).getPrincipal().getAttribute("email");
+      Object cached = request.getAttribute(SESSION_USER, RequestAttributes.SCOPE_SESSION);
+      long now = wallClock.millis();
+      Eviction eviction = evictedAt.get(email);
+      if (cached instanceof CachedUser cu && cu.email().equals(email)
+          && cu.cachedAtMillis() >= now - sessionTimeout.toMillis()
+          && (eviction == null || cu.stamp() > eviction.stamp())) {
+        return cu.user();
+      }
+      // take the stamp before reading so that an eviction racing with
+      // this read still invalidates what we are about to cache
+      long stamp = clock.incrementAndGet();
+      User u = getOAuth2AuthenticatedUser(securityContext, authentication);
+      request.setAttribute(SESSION_USER, new CachedUser(email, stamp, now, u), RequestAttributes.SCOPE_SESSION);
+      return u;
     }
     return null;
   }
@@ -0,0 +1,202 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.models.NearbyDiningCommons;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// An immutable 3-d KD-tree over the dining commons that have coordinates.
+// Each latitude/longitude is mapped to a point on the unit sphere, so the
+// straight-line (chord) distance between two points increases with the
+// great-circle distance; nearest and radius searches can then prune on one
+// coordinate at a time with no special cases at the poles or the date line.
+//
+// The tree is stored implicitly: the points in [lo, hi) are partitioned so
+// that the median (lo + hi) >>> 1 splits them on axis depth % 3.  It is built
+// once per UCSBDiningCommonsSnapshotService.Snapshot and never changed.
+
+public final class DiningCommonsGeoIndex {
+  public static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+  private static final Comparator<Candidate> FARTHEST_FIRST =
+      Comparator.comparingDouble(Candidate::chord2).reversed();
+
+  private record Candidate(int node, double chord2) {
+  }
+
+  private final UCSBDiningCommons[] commons;
+  private final double[][] points;
+
+  private DiningCommonsGeoIndex(UCSBDiningCommons[] commons, double[][] points) {
+    this.commons = commons;
+    this.points = points;
+  }
+
+  public static DiningCommonsGeoIndex of(Collection<UCSBDiningCommons> all) {
+    List<UCSBDiningCommons> located = new ArrayList<>(all.size());
+    for (UCSBDiningCommons c : all) {
+      if (c.getLatitude() != null && c.getLongitude() != null) {
+        located.add(c);
+      }
+    }
+    UCSBDiningCommons[] commons = located.toArray(new UCSBDiningCommons[0]);
+    double[][] points = new double[commons.length][];
+    for (int i = 0; i < commons.length; i++) {
+      points[i] = toUnitVector(commons[i].getLatitude(), commons[i].getLongitude());
+    }
+    build(commons, points, 0, commons.length, 0);
+    return new DiningCommonsGeoIndex(commons, points);
+  }
+
+  public int size() {
+    return commons.length;
+  }
+
+  /** The k commons closest to (lat, lon), nearest first. */
+  public List<NearbyDiningCommons> nearest(double lat, double lon, int k) {
+    if (k <= 0 || commons.length == 0) {
+      return List.of();
+    }
+    double[] q = toUnitVector(lat, lon);
+    PriorityQueue<Candidate> best = new PriorityQueue<>(k + 1, FARTHEST_FIRST);
+    nearest(q, k, best, 0, commons.length, 0);
+    List<Candidate> sorted = new ArrayList<>(best);
+    sorted.sort(FARTHEST_FIRST.reversed());
+    return toResults(sorted);
+  }
+
+  /** Every commons within radiusMeters of (lat, lon), nearest first. */
+  public List<NearbyDiningCommons> within(double lat, double lon, double radiusMeters) {
+    if (radiusMeters < 0 || commons.length == 0) {
+      return List.of();
+    }
+    double[] q = toUnitVector(lat, lon);
+    double angle = Math.min(radiusMeters / EARTH_RADIUS_METERS, Math.PI);
+    double chord = 2 * Math.sin(angle / 2);
+    List<Candidate> found = new ArrayList<>();
+    within(q, chord * chord, found, 0, commons.length, 0);
+    found.sort(FARTHEST_FIRST.reversed());
+    return toResults(found);
+  }
+
+  private void nearest(double[] q, int k, PriorityQueue<Candidate> best, int lo, int hi, int depth) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    double d2 = chord2(q, points[mid]);
+    if (best.size() < k) {
+      best.add(new Candidate(mid, d2));
+    } else if (d2 < best.peek().chord2()) {
+      best.poll();
+      best.add(new Candidate(mid, d2));
+    }
+    int axis = depth % 3;
+    double diff = q[axis] - points[mid][axis];
+    if (diff < 0) {
+      nearest(q, k, best, lo, mid, depth + 1);
+      if (best.size() < k || diff * diff < best.peek().chord2()) {
+        nearest(q, k, best, mid + 1, hi, depth + 1);
+      }
+    } else {
+      nearest(q, k, best, mid + 1, hi, depth + 1);
+      if (best.size() < k || diff * diff < best.peek().chord2()) {
+        nearest(q, k, best, lo, mid, depth + 1);
+      }
+    }
+  }
+
+  private void within(double[] q, double max2, List<Candidate> found, int lo, int hi, int depth) {
+    if (lo >= hi) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    double d2 = chord2(q, points[mid]);
+    if (d2 <= max2) {
+      found.add(new Candidate(mid, d2));
+    }
+    int axis = depth % 3;
+    double diff = q[axis] - points[mid][axis];
+    if (diff <= 0 || diff * diff <= max2) {
+      within(q, max2, found, lo, mid, depth + 1);
+    }
+    if (diff >= 0 || diff * diff <= max2) {
+      within(q, max2, found, mid + 1, hi, depth + 1);
+    }
+  }
+
+  private List<NearbyDiningCommons> toResults(List<Candidate> candidates) {
+    List<NearbyDiningCommons> results = new ArrayList<>(candidates.size());
+    for (Candidate c : candidates) {
+      double angle = 2 * Math.asin(Math.min(1.0, Math.sqrt(c.chord2()) / 2));
+      results.add(new NearbyDiningCommons(commons[c.node()], angle * EARTH_RADIUS_METERS));
+    }
+    return results;
+  }
+
+  private static void build(UCSBDiningCommons[] commons, double[][] points, int lo, int hi, int depth) {
+    if (hi - lo <= 1) {
+      return;
+    }
+    int mid = (lo + hi) >>> 1;
+    select(commons, points, lo, hi - 1, mid, depth % 3);
+    build(commons, points, lo, mid, depth + 1);
+    build(commons, points, mid + 1, hi, depth + 1);
+  }
+
+  // Hoare-partition quickselect: afterwards points[k] holds the value that
+  // would be there if [left, right] were sorted on axis, with nothing larger
+  // before it and nothing smaller after it.
+  private static void select(UCSBDiningCommons[] commons, double[][] points, int left, int right, int k, int axis) {
+    while (left < right) {
+      double pivot = points[(left + right) >>> 1][axis];
+      int i = left;
+      int j = right;
+      while (i <= j) {
+        while (points[i][axis] < pivot) {
+          i++;
+        }
+        while (points[j][axis] > pivot) {
+          j--;
+        }
+        if (i <= j) {
+          swap(commons, points, i++, j--);
+        }
+      }
+      if (k <= j) {
+        right = j;
+      } else if (k >= i) {
+        left = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private static void swap(UCSBDiningCommons[] commons, double[][] points, int i, int j) {
+    UCSBDiningCommons c = commons[i];
+    commons[i] = commons[j];
+    commons[j] = c;
+    double[] p = points[i];
+    points[i] = points[j];
+    points[j] = p;
+  }
+
+  private static double[] toUnitVector(double lat, double lon) {
+    double phi = Math.toRadians(lat);
+    double lambda = Math.toRadians(lon);
+    double cosPhi = Math.cos(phi);
+    return new double[] { cosPhi * Math.cos(lambda), cosPhi * Math.sin(lambda), Math.sin(phi) };
+  }
+
+  private static double chord2(double[] a, double[] b) {
+    double dx = a[0] - b[0];
+    double dy = a[1] - b[1];
+    double dz = a[2] - b[2];
+    return dx * dx + dy * dy + dz * dz;
+  }
+}
@@ -0,0 +1,9 @@
+package edu.ucsb.cs156.example.services;
+
+// Published by the DELETE handlers (ApiController.deleted) after a row has
+// been deleted with a single DELETE statement.  Those statements skip JPA's
+// @PostRemove callbacks, so the in-memory views the callbacks keep up to
+// date listen for this instead, and hear about each delete exactly once.
+// entity is a stand-in of the deleted row's class with only its id set.
+public record EntityDeletedEvent(Object entity) {
+}
@@ -0,0 +1,142 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.ToLongFunction;
+
+// The highest-scoring rows of one table, kept up to date from individual
+// saves and deletes so that "top n" never sorts the table.
+//
+// At most capacity rows are held, ordered by score descending and then id
+// ascending.  The invariant is that every row that is not held ranks below
+// every row that is, so the held rows are always an exact prefix of the full
+// ranking.  A save inserts the row if it ranks above the last held row and
+// trims back to capacity; a delete, or a save that moves a held row below
+// the last one, just shrinks the prefix.  Only when a reader asks for more
+// rows than the prefix has is it refilled from the database, which the
+// (score desc, id) indexes make a short range scan.
+//
+// Rows whose score is null are never ranked.  Readers get an immutable
+// ranked list without locking; writers are serialized.
+
+public final class Leaderboard<T> {
+
+  private record Entry(Comparable<?> score, long id) {
+  }
+
+  // rows is the ranked prefix; complete means it is the whole table
+  private record View<T>(List<T> rows, boolean complete) {
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  private static final Comparator<Entry> RANKING = (a, b) -> {
+    int byScore = ((Comparable) b.score()).compareTo(a.score());
+    return byScore != 0 ? byScore : Long.compare(a.id(), b.id());
+  };
+
+  private final int capacity;
+  private final Function<T, ? extends Comparable<?>> score;
+  private final ToLongFunction<T> id;
+  private final IntFunction<List<T>> loader;
+
+  private final TreeMap<Entry, T> ranked = new TreeMap<>(RANKING);
+  private final Map<Long, Entry> entriesById = new HashMap<>();
+  private boolean complete;
+
+  private volatile View<T> view;
+
+  /**
+   * @param loader returns the first n rows with a non-null score, ordered by
+   *               score descending and then id ascending
+   */
+  public Leaderboard(int capacity, Function<T, ? extends Comparable<?>> score, ToLongFunction<T> id,
+      IntFunction<List<T>> loader) {
+    this.capacity = capacity;
+    this.score = score;
+    this.id = id;
+    this.loader = loader;
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public List<T> top(int n) {
+    int wanted = Math.max(0, Math.min(n, capacity));
+    View<T> v = view;
+    if (!covers(v, wanted)) {
+      v = refill(wanted);
+    }
+    return v.rows().subList(0, Math.min(wanted, v.rows().size()));
+  }
+
+  public synchronized void saved(T row) {
+    if (view == null) {
+      return; // the first read loads the committed row
+    }
+    long rowId = id.applyAsLong(row);
+    Entry old = entriesById.remove(rowId);
+    boolean changed = old != null && ranked.remove(old) != null;
+    Comparable<?> rowScore = score.apply(row);
+    if (rowScore != null) {
+      Entry entry = new Entry(rowScore, rowId);
+      if (complete || (!ranked.isEmpty() && RANKING.compare(entry, ranked.lastKey()) < 0)) {
+        ranked.put(entry, row);
+        entriesById.put(rowId, entry);
+        if (ranked.size() > capacity) {
+          entriesById.remove(ranked.pollLastEntry().getKey().id());
+          complete = false;
+        }
+        changed = true;
+      }
+    }
+    if (changed) {
+      publish();
+    }
+  }
+
+  public synchronized void removed(long rowId) {
+    Entry old = entriesById.remove(rowId);
+    if (old != null) {
+      ranked.remove(old);
+      publish();
+    }
+  }
+
+  public synchronized void reload() {
+    load();
+  }
+
+  private synchronized View<T> refill(int wanted) {
+    View<T> v = view;
+    return covers(v, wanted) ? v : load();
+  }
+
+  private static boolean covers(View<?> v, int wanted) {
+    return v != null && (v.rows().size() >= wanted || v.complete());
+  }
+
+  private View<T> load() {
+    ranked.clear();
+    entriesById.clear();
+    List<T> rows = loader.apply(capacity);
+    for (T row : rows) {
+      Entry entry = new Entry(score.apply(row), id.applyAsLong(row));
+      ranked.put(entry, row);
+      entriesById.put(entry.id(), entry);
+    }
+    complete = rows.size() < capacity;
+    return publish();
+  }
+
+  private View<T> publish() {
+    View<T> v = new View<>(List.copyOf(ranked.values()), complete);
+    view = v;
+    return v;
+  }
+}
@@ -0,0 +1,28 @@
+package edu.ucsb.cs156.example.services;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+// JPA listener for Movie and Music; see SearchIndexEntityListener, which
+// this mirrors.  Leaderboards only see committed rows.
+
+public class LeaderboardEntityListener {
+
+  @Autowired
+  ObjectProvider<LeaderboardService> leaderboardService;
+
+  @PostPersist
+  @PostUpdate
+  public void saved(Object entity) {
+    SearchIndexEntityListener.afterCommit(() -> leaderboardService.ifAvailable(boards -> boards.saved(entity)));
+  }
+
+  @PostRemove
+  public void removed(Object entity) {
+    SearchIndexEntityListener.afterCommit(() -> leaderboardService.ifAvailable(boards -> boards.removed(entity)));
+  }
+}
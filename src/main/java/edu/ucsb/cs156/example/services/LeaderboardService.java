@@ -0,0 +1,89 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.repositories.MovieRepository;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+
+// Top-n rankings for movies and musics, by rating and by views.  Each
+// ranking is a Leaderboard fed by LeaderboardEntityListener after every
+// committed save or delete.  Like the other in-memory views, it only sees
+// writes made through this JVM until reload() is called.
+
+@Service("leaderboards")
+public class LeaderboardService {
+  public static final int CAPACITY = 100;
+  public static final List<String> RANKINGS = List.of("rating", "views");
+
+  @Autowired
+  MovieRepository movieRepository;
+
+  @Autowired
+  MusicRepository musicRepository;
+
+  private final Map<String, Leaderboard<Movie>> movies = Map.of(
+      "rating", new Leaderboard<>(CAPACITY, Movie::getRating, Movie::getId,
+          n -> movieRepository.findByRatingNotNullOrderByRatingDescIdAsc(PageRequest.of(0, n))),
+      "views", new Leaderboard<>(CAPACITY, Movie::getViews, Movie::getId,
+          n -> movieRepository.findByViewsNotNullOrderByViewsDescIdAsc(PageRequest.of(0, n))));
+
+  private final Map<String, Leaderboard<Music>> musics = Map.of(
+      "rating", new Leaderboard<>(CAPACITY, Music::getRating, Music::getId,
+          n -> musicRepository.findAllByOrderByRatingDescIdAsc(PageRequest.of(0, n))),
+      "views", new Leaderboard<>(CAPACITY, Music::getViews, Music::getId,
+          n -> musicRepository.findAllByOrderByViewsDescIdAsc(PageRequest.of(0, n))));
+
+  /** by must be one of RANKINGS. */
+  public List<Movie> topMovies(String by, int n) {
+    return movies.get(by).top(n);
+  }
+
+  /** by must be one of RANKINGS. */
+  public List<Music> topMusics(String by, int n) {
+    return musics.get(by).top(n);
+  }
+
+  public void saved(Object entity) {
+    if (entity instanceof Movie movie) {
+      movies.values().forEach(board -> board.saved(movie));
+    } else if (entity instanceof Music music) {
+      musics.values().forEach(board -> board.saved(music));
+    }
+  }
+
+  public void removed(Object entity) {
+    if (entity instanceof Movie movie) {
+      movies.values().forEach(board -> board.removed(movie.getId()));
+    } else if (entity instanceof Music music) {
+      musics.values().forEach(board -> board.removed(music.getId()));
+    }
+  }
+
+  @EventListener
+  public void deleted(EntityDeletedEvent event) {
+    removed(event.entity());
+  }
+
+  // ViewCounterService updates views with plain SQL, which the entity
+  // listener never sees, so the views rankings are re-read after a flush
+  public void viewsChanged(Class<?> entity) {
+    if (entity == Movie.class) {
+      movies.get("views").reload();
+    } else if (entity == Music.class) {
+      musics.get("views").reload();
+    }
+  }
+
+  public void reload() {
+    movies.values().forEach(Leaderboard::reload);
+    musics.values().forEach(Leaderboard::reload);
+  }
+}
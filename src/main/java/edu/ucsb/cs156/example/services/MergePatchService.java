@@ -0,0 +1,72 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.ucsb.cs156.example.entities.Versioned;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.persistence.CacheRetrieveMode;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+// JSON Merge Patch (RFC 7396) for the flat entities: every member of the
+// patch replaces that field, null included, and absent fields are left
+// alone.  The patch is applied to the managed row, so Hibernate's dirty
+// check decides what to write; with @DynamicUpdate the UPDATE sets only
+// the columns whose values changed, and a patch that changes nothing
+// writes nothing (and keeps the version, so ETags stay valid).  The row
+// is read from the database, not the second-level cache, so the version
+// checked against If-Match is the current one.
+//
+// The id and version are not patchable and are ignored if present.
+
+@Service("mergePatch")
+public class MergePatchService {
+  public static final String APPLICATION_MERGE_PATCH_JSON_VALUE = "application/merge-patch+json";
+
+  static final Map<String, Object> FROM_DATABASE = Map.of(
+      "javax.persistence.cache.retrieveMode", CacheRetrieveMode.BYPASS);
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @PersistenceContext
+  EntityManager entityManager;
+
+  /**
+   * Returns the patched row, or empty if there is no row with that id.
+   * Throws ObjectOptimisticLockingFailureException when expectedVersion is
+   * given and is not the row's version.
+   */
+  @Transactional
+  public <T extends Versioned> Optional<T> patch(Class<T> type, Object id, ObjectNode patch, Long expectedVersion)
+      throws IOException {
+    T row = entityManager.find(type, id, FROM_DATABASE);
+    if (row == null) {
+      return Optional.empty();
+    }
+    if (expectedVersion != null && row.getVersion() != expectedVersion) {
+      throw new ObjectOptimisticLockingFailureException(type, id);
+    }
+    ObjectNode changes = patch.deepCopy();
+    for (SingularAttribute<? super T, ?> attribute : entityManager.getMetamodel().entity(type).getSingularAttributes()) {
+      if (attribute.isId() || attribute.isVersion()) {
+        changes.remove(attribute.getName());
+      }
+    }
+    mapper.readerForUpdating(row).readValue((JsonNode) changes);
+    entityManager.flush();
+    return Optional.of(row);
+  }
+}
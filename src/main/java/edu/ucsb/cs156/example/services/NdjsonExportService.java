@@ -0,0 +1,56 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+// Writes a repository Stream<T> to the response one row per line
+// (see http://ndjson.org/).  Rows are detached as soon as they are written
+// so the persistence context, and hence the heap, stays flat no matter
+// how large the table is.
+
+@Slf4j
+@Service("ndjsonExport")
+public class NdjsonExportService {
+  public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @PersistenceContext
+  EntityManager entityManager;
+
+  // The Stream must be consumed inside a transaction: Postgres only honours
+  // the JDBC fetch size (instead of buffering the whole result) when
+  // autocommit is off.
+  @Transactional(readOnly = true)
+  public <T> long export(Supplier<Stream<T>> rows, OutputStream out) throws IOException {
+    long count = 0;
+    try (Stream<T> stream = rows.get()) {
+      Iterator<T> it = stream.iterator();
+      while (it.hasNext()) {
+        T row = it.next();
+        out.write(mapper.writeValueAsBytes(row));
+        out.write('\n');
+        entityManager.detach(row);
+        count++;
+      }
+    }
+    out.flush();
+    log.info("exported {} rows as ndjson", count);
+    return count;
+  }
+}
@@ -0,0 +1,110 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+// Single flight for identical reads: while a read for a key is running,
+// other requests for the same key wait for it and get its result (or its
+// exception) instead of running their own.  The key is removed as soon as
+// the read finishes, so nothing is cached here; a request that arrives
+// later runs a new read.
+//
+// Callers put whatever the result depends on in the key, including the
+// table's ETag, so a request made after a committed write never joins a
+// read that started before it.
+//
+// coalescing.requests counts reads per endpoint, tagged result=executed
+// for the ones that ran and result=joined for the ones that waited.
+
+@Service("coalescing")
+public class RequestCoalescingService implements MeterBinder {
+
+  record Counts(LongAdder executed, LongAdder joined) {
+  }
+
+  private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+  private final Map<String, Counts> counts = new ConcurrentHashMap<>();
+
+  private final List<MeterRegistry> registries = new CopyOnWriteArrayList<>();
+
+  @SuppressWarnings("unchecked")
+  public <T> T coalesce(String endpoint, String key, Supplier<T> read) {
+    CompletableFuture<Object> mine = new CompletableFuture<>();
+    CompletableFuture<Object> running = inFlight.putIfAbsent(key, mine);
+    if (running != null) {
+      counts(endpoint).joined().increment();
+      try {
+        return (T) running.join();
+      } catch (CompletionException e) {
+        if (e.getCause() instanceof RuntimeException cause) {
+          throw cause;
+        }
+        if (e.getCause() instanceof Error cause) {
+          throw cause;
+        }
+        throw e;
+      }
+    }
+    counts(endpoint).executed().increment();
+    try {
+      T result = read.get();
+      mine.complete(result);
+      return result;
+    } catch (RuntimeException | Error e) {
+      mine.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(key, mine);
+    }
+  }
+
+  public long executed(String endpoint) {
+    return counts(endpoint).executed().sum();
+  }
+
+  public long joined(String endpoint) {
+    return counts(endpoint).joined().sum();
+  }
+
+  @Override
+  public void bindTo(MeterRegistry registry) {
+    registries.add(registry);
+    counts.forEach((endpoint, c) -> register(registry, endpoint, c));
+  }
+
+  private Counts counts(String endpoint) {
+    Counts c = counts.get(endpoint);
+    if (c != null) {
+      return c;
+    }
+    return counts.computeIfAbsent(endpoint, e -> {
+      Counts created = new Counts(new LongAdder(), new LongAdder());
+      registries.forEach(registry -> register(registry, e, created));
+      return created;
+    });
+  }
+
+  private static void register(MeterRegistry registry, String endpoint, Counts c) {
+    FunctionCounter.builder("coalescing.requests", c.executed(), LongAdder::sum)
+        .description("reads that ran, or joined an identical read already running")
+        .tag("endpoint", endpoint).tag("result", "executed")
+        .register(registry);
+    FunctionCounter.builder("coalescing.requests", c.joined(), LongAdder::sum)
+        .description("reads that ran, or joined an identical read already running")
+        .tag("endpoint", endpoint).tag("result", "joined")
+        .register(registry);
+  }
+}
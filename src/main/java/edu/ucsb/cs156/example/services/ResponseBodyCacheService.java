@@ -0,0 +1,75 @@
+package edu.ucsb.cs156.example.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// The serialized /all response for each table, as JSON and gzipped JSON,
+// kept for as long as the table's ETag stays the same.  The caller reads
+// the ETag before the rows (see ApiController.conditionalGet), so the
+// bytes kept under an ETag are never older than it; any committed write
+// changes the ETag and the next /all rebuilds the body.
+//
+// Only the latest body per table is kept, and bodies over maxBytes are
+// not kept at all, so the cache holds at most one copy of each table.
+
+@Service("responseBodies")
+public class ResponseBodyCacheService {
+
+  /** gzip is null when json was too large to keep. */
+  public record Body(String etag, byte[] json, byte[] gzip) {
+  }
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @Value("${app.responsecache.maxBytes:16777216}")
+  long maxBytes;
+
+  private final Map<Class<?>, Body> bodies = new ConcurrentHashMap<>();
+
+  public Body get(Class<?> entity, String etag, Supplier<?> rows) {
+    Body body = bodies.get(entity);
+    if (body != null && body.etag().equals(etag)) {
+      return body;
+    }
+    byte[] json;
+    try {
+      json = mapper.writeValueAsBytes(rows.get());
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+    if (json.length > maxBytes) {
+      bodies.remove(entity);
+      return new Body(etag, json, null);
+    }
+    body = new Body(etag, json, gzip(json));
+    bodies.put(entity, body);
+    return body;
+  }
+
+  public void clear() {
+    bodies.clear();
+  }
+
+  static byte[] gzip(byte[] json) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(json);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,46 @@
+package edu.ucsb.cs156.example.services;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+// JPA listener for the searchable entities.  Hibernate obtains it from
+// Spring, so it can be autowired.  Index changes are deferred until the
+// surrounding transaction commits, so a rollback never reaches the index.
+// The index is optional so that JPA-only contexts without a
+// SearchIndexService still start.
+
+public class SearchIndexEntityListener {
+
+  @Autowired
+  ObjectProvider<SearchIndexService> searchIndexService;
+
+  @PostPersist
+  @PostUpdate
+  public void saved(Object entity) {
+    afterCommit(() -> searchIndexService.ifAvailable(index -> index.index(entity)));
+  }
+
+  @PostRemove
+  public void removed(Object entity) {
+    afterCommit(() -> searchIndexService.ifAvailable(index -> index.remove(entity)));
+  }
+
+  static void afterCommit(Runnable action) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      action.run();
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+      @Override
+      public void afterCommit() {
+        action.run();
+      }
+    });
+  }
+}
@@ -0,0 +1,293 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Animal;
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Park;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.AnimalRepository;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.ParkRepository;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+
+import org.apache.lucene.analysis.en.EnglishAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.queryparser.simple.SimpleQueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.SearcherManager;
+import org.apache.lucene.search.TermInSetQuery;
+import org.apache.lucene.store.ByteBuffersDirectory;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+// Lucene full-text index over animals, books, parks and restaurants, ranked
+// with BM25 (Lucene's default similarity); English stemming lets "taco"
+// match "tacos".  SearchIndexEntityListener keeps
+// it in step with the database after each commit; rows written behind
+// JPA's back (e.g. by the dataset seeder) are picked up by reindex().
+//
+// An on-disk index outlives the app, and the database can change while the
+// app is down.  Every commit therefore records, in the Lucene commit data,
+// the state of the database it matches: row count, highest id and sum of
+// @Version for each searched table.  At startup the index is rebuilt when it
+// is empty or that state no longer matches.  An UPDATE in plain SQL that
+// leaves both the row count and the version alone is not detected; call
+// reindex() after one.
+//
+// Writes only mark the index dirty; the next search reopens the searcher,
+// and changes are committed to disk every app.search.commitMillis.
+
+@Slf4j
+@Service("searchIndex")
+public class SearchIndexService {
+  public static final List<String> TYPES = List.of("animals", "books", "parks", "restaurants");
+
+  static final String DATABASE_STATE = "databaseState";
+
+  private static final Map<String, Float> FIELDS = Map.of(
+      "name", 2.0f, "title", 2.0f,
+      "author", 1.0f, "genre", 1.0f, "genus", 1.0f, "species", 1.0f,
+      "address", 1.0f, "description", 1.0f);
+
+  @Autowired
+  AnimalRepository animalRepository;
+
+  @Autowired
+  BookRepository bookRepository;
+
+  @Autowired
+  ParkRepository parkRepository;
+
+  @Autowired
+  RestaurantRepository restaurantRepository;
+
+  @PersistenceContext
+  EntityManager entityManager;
+
+  private final EnglishAnalyzer analyzer = new EnglishAnalyzer();
+  private final IndexWriter writer;
+  private final SearcherManager searchers;
+  private final AtomicBoolean dirty = new AtomicBoolean();
+
+  // An empty indexDir keeps the index in memory.
+  public SearchIndexService(@Value("${app.search.indexDir:}") String indexDir) throws IOException {
+    Directory directory = indexDir.isBlank() ? new ByteBuffersDirectory() : FSDirectory.open(Path.of(indexDir));
+    writer = new IndexWriter(directory, new IndexWriterConfig(analyzer));
+    searchers = new SearcherManager(writer, null);
+  }
+
+  public void index(Object entity) {
+    Document doc = toDocument(entity);
+    if (doc != null) {
+      update(() -> writer.updateDocument(new Term("key", doc.get("key")), doc));
+    }
+  }
+
+  public void remove(Object entity) {
+    Document doc = toDocument(entity);
+    if (doc != null) {
+      update(() -> writer.deleteDocuments(new Term("key", doc.get("key"))));
+    }
+  }
+
+  @EventListener
+  public void deleted(EntityDeletedEvent event) {
+    remove(event.entity());
+  }
+
+  public List<SearchHit> search(String q, Collection<String> types, int limit) throws IOException {
+    BooleanQuery.Builder query = new BooleanQuery.Builder()
+        .add(new SimpleQueryParser(analyzer, FIELDS).parse(q), BooleanClause.Occur.MUST);
+    if (types != null && !types.isEmpty()) {
+      List<BytesRef> terms = types.stream().map(BytesRef::new).collect(Collectors.toList());
+      query.add(new TermInSetQuery("type", terms), BooleanClause.Occur.FILTER);
+    }
+    return search(query.build(), limit);
+  }
+
+  private List<SearchHit> search(Query query, int limit) throws IOException {
+    if (dirty.getAndSet(false)) {
+      searchers.maybeRefreshBlocking();
+    }
+    IndexSearcher searcher = searchers.acquire();
+    try {
+      List<SearchHit> hits = new ArrayList<>();
+      for (ScoreDoc scoreDoc : searcher.search(query, limit).scoreDocs) {
+        Document doc = searcher.doc(scoreDoc.doc);
+        hits.add(new SearchHit(doc.get("type"), doc.get("id"), doc.get("label"), scoreDoc.score));
+      }
+      return hits;
+    } finally {
+      searchers.release(searcher);
+    }
+  }
+
+  @Transactional(readOnly = true)
+  public long reindex() throws IOException {
+    // read first: rows written during the rebuild make it look stale, never current
+    String state = databaseState();
+    update(writer::deleteAll);
+    long count = reindex(animalRepository::streamAll)
+        + reindex(bookRepository::streamAll)
+        + reindex(parkRepository::streamAll)
+        + reindex(restaurantRepository::streamAll);
+    commit(state);
+    log.info("search index rebuilt with {} documents", count);
+    return count;
+  }
+
+  @EventListener(ApplicationReadyEvent.class)
+  @Transactional(readOnly = true)
+  public void reindexIfStale() throws IOException {
+    String recorded = recordedState();
+    if (writer.getDocStats().numDocs == 0 || !databaseState().equals(recorded)) {
+      log.info("search index was built from {}, rebuilding", recorded);
+      reindex();
+    }
+  }
+
+  String databaseState() {
+    List<String> tables = new ArrayList<>();
+    // the types are also the entity names
+    for (String type : TYPES) {
+      Object[] row = entityManager.createQuery("select count(e), coalesce(max(e.id), 0), coalesce(sum(e.version), 0)"
+          + " from " + type + " e", Object[].class).getSingleResult();
+      tables.add("%s=%s/%s/%s".formatted(type, row[0], row[1], row[2]));
+    }
+    return String.join(",", tables);
+  }
+
+  String recordedState() {
+    for (Map.Entry<String, String> entry : writer.getLiveCommitData()) {
+      if (DATABASE_STATE.equals(entry.getKey())) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  private <T> long reindex(Supplier<Stream<T>> rows) {
+    long count = 0;
+    try (Stream<T> stream = rows.get()) {
+      Iterator<T> it = stream.iterator();
+      while (it.hasNext()) {
+        T row = it.next();
+        index(row);
+        entityManager.detach(row);
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Scheduled(fixedDelayString = "${app.search.commitMillis:30000}")
+  public void commit() throws IOException {
+    if (writer.hasUncommittedChanges()) {
+      commit(databaseState());
+    }
+  }
+
+  private void commit(String databaseState) throws IOException {
+    writer.setLiveCommitData(Map.of(DATABASE_STATE, databaseState).entrySet());
+    writer.commit();
+  }
+
+  @PreDestroy
+  public void close() throws IOException {
+    commit();
+    searchers.close();
+    writer.close();
+  }
+
+  private interface IndexUpdate {
+    void apply() throws IOException;
+  }
+
+  private void update(IndexUpdate update) {
+    try {
+      update.apply();
+      dirty.set(true);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  static Document toDocument(Object entity) {
+    if (entity instanceof Animal a) {
+      return document("animals", a.getId(), a.getName(), text(
+          "name", a.getName(), "genus", a.getGenus(), "species", a.getSpecies()));
+    } else if (entity instanceof Book b) {
+      return document("books", b.getId(), b.getTitle(), text(
+          "title", b.getTitle(), "author", b.getAuthor(), "genre", b.getGenre()));
+    } else if (entity instanceof Park p) {
+      return document("parks", p.getId(), p.getName(), text(
+          "name", p.getName(), "address", p.getAddress()));
+    } else if (entity instanceof Restaurant r) {
+      return document("restaurants", r.getId(), r.getName(), text(
+          "name", r.getName(), "description", r.getDescription()));
+    }
+    return null;
+  }
+
+  private static Map<String, String> text(String... namesAndValues) {
+    Map<String, String> text = new LinkedHashMap<>();
+    for (int i = 0; i < namesAndValues.length; i += 2) {
+      text.put(namesAndValues[i], namesAndValues[i + 1]);
+    }
+    return text;
+  }
+
+  private static Document document(String type, long id, String label, Map<String, String> text) {
+    Document doc = new Document();
+    doc.add(new StringField("key", type + ":" + id, Field.Store.YES));
+    doc.add(new StringField("type", type, Field.Store.YES));
+    doc.add(new StoredField("id", Long.toString(id)));
+    if (label != null) {
+      doc.add(new StoredField("label", label));
+    }
+    text.forEach((name, value) -> {
+      if (value != null) {
+        doc.add(new TextField(name, value, Field.Store.NO));
+      }
+    });
+    return doc;
+  }
+}
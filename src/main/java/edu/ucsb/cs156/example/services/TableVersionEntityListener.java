@@ -0,0 +1,25 @@
+package edu.ucsb.cs156.example.services;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+
+// JPA listener that bumps TableVersionService after commit; see
+// SearchIndexEntityListener, which this mirrors.
+
+public class TableVersionEntityListener {
+
+  @Autowired
+  ObjectProvider<TableVersionService> tableVersionService;
+
+  @PostPersist
+  @PostUpdate
+  @PostRemove
+  public void changed(Object entity) {
+    SearchIndexEntityListener.afterCommit(
+        () -> tableVersionService.ifAvailable(versions -> versions.changed(entity.getClass())));
+  }
+}
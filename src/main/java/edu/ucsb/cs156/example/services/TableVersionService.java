@@ -0,0 +1,52 @@
+package edu.ucsb.cs156.example.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.Entity;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+// A change counter per table, used as the validator for conditional GETs.
+// TableVersionEntityListener bumps it after every committed insert, update
+// or delete through JPA, and on EntityDeletedEvent; code that writes with
+// plain SQL must call changed() itself.  Because the version is read before the data, a
+// response can only ever carry a version that is the same as or older than
+// its data, so a stale ETag can cost a refetch but never a wrong 304.
+//
+// Versions are local to this JVM and restart from zero, so every ETag also
+// carries the time this service started; ETags from another instance or an
+// earlier run never match.  Writes made directly to the database are not
+// seen here.
+
+@Service("tableVersions")
+public class TableVersionService {
+
+  private final long epoch = System.currentTimeMillis();
+
+  private final Map<Class<?>, AtomicLong> versions = new ConcurrentHashMap<>();
+
+  public long version(Class<?> entity) {
+    return counter(entity).get();
+  }
+
+  public void changed(Class<?> entity) {
+    counter(entity).incrementAndGet();
+  }
+
+  @EventListener
+  public void deleted(EntityDeletedEvent event) {
+    changed(event.entity().getClass());
+  }
+
+  /** A strong ETag for the current contents of entity's table. */
+  public String etag(Class<?> entity) {
+    return "\"%s-%d-%d\"".formatted(entity.getAnnotation(Entity.class).name(), epoch, version(entity));
+  }
+
+  private AtomicLong counter(Class<?> entity) {
+    return versions.computeIfAbsent(entity, k -> new AtomicLong());
+  }
+}
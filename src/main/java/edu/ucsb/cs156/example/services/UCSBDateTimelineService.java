@@ -0,0 +1,188 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Keeps the next UCSBDates that have not happened yet in a skip list ordered
+// by (localDateTime, id), so "the next N events" is a walk from the head of
+// the map instead of a query.  Readers never lock; writers (the admin
+// endpoints, after their repository call has committed) are serialized so
+// that an update can move a date to its new position atomically.
+//
+// Only a window of app.ucsbdates.window dates is loaded: enough for the
+// largest /upcoming limit plus a margin for the dates that pass or are
+// deleted before the next load.  The window holds every upcoming date up to
+// its horizon, the last one loaded; puts beyond the horizon are left for a
+// later load, and a read that runs off the end of the window loads it again.
+//
+// Dates drop out once they are in the past, on read and every
+// app.ucsbdates.pruneMillis.  Like the dining commons snapshot this is local
+// to the JVM: writes through another instance show up after reload().
+
+@Slf4j
+@Service("ucsbDateTimeline")
+public class UCSBDateTimelineService {
+
+  record Key(LocalDateTime localDateTime, long id) {
+    static final Comparator<Key> ORDER =
+        Comparator.comparing(Key::localDateTime).thenComparingLong(Key::id);
+  }
+
+  // Every upcoming date up to and including horizon, or all of them when
+  // horizon is null.
+  private record Window(ConcurrentSkipListMap<Key, UCSBDate> dates, Key horizon) {
+    boolean covers(Key key) {
+      return horizon == null || Key.ORDER.compare(key, horizon) <= 0;
+    }
+  }
+
+  @Autowired
+  UCSBDateRepository ucsbDateRepository;
+
+  @Value("${app.ucsbdates.window:1100}")
+  int windowSize = 1100;
+
+  Clock clock = Clock.systemDefaultZone();
+
+  // null until first use; replaced wholesale by reload() so readers never
+  // see a half-loaded map
+  private volatile Window window;
+
+  private Map<Long, Key> keysById = new HashMap<>();
+
+  public List<UCSBDate> upcoming(int limit) {
+    Key now = new Key(LocalDateTime.now(clock), Long.MIN_VALUE);
+    Window read = window();
+    List<UCSBDate> next = walk(read, now, limit);
+    if (next.size() < limit && read.horizon() != null) {
+      next = walk(refill(read, limit), now, limit);
+    }
+    return next;
+  }
+
+  private static List<UCSBDate> walk(Window read, Key from, int limit) {
+    List<UCSBDate> next = new ArrayList<>(Math.min(limit, 64));
+    for (UCSBDate date : read.dates().tailMap(from).values()) {
+      if (next.size() == limit) {
+        break;
+      }
+      next.add(date);
+    }
+    return next;
+  }
+
+  // the reader ran off the end of the window it read; load a new one unless
+  // another reader or reload() already has
+  private synchronized Window refill(Window read, int limit) {
+    if (window == read) {
+      load(Math.max(windowSize, limit));
+    }
+    return window;
+  }
+
+  public synchronized void put(UCSBDate date) {
+    if (window == null) {
+      return; // the first read loads the committed row
+    }
+    remove(date.getId());
+    LocalDateTime at = date.getLocalDateTime();
+    if (at != null && !at.isBefore(LocalDateTime.now(clock))) {
+      Key key = new Key(at, date.getId());
+      if (window.covers(key)) {
+        window.dates().put(key, date);
+        keysById.put(date.getId(), key);
+        trim();
+      }
+    }
+  }
+
+  public synchronized void remove(long id) {
+    Key key = keysById.remove(id);
+    if (key != null && window != null) {
+      window.dates().remove(key);
+    }
+  }
+
+  public synchronized void reload() {
+    load(windowSize);
+  }
+
+  private void load(int size) {
+    ConcurrentSkipListMap<Key, UCSBDate> byTime = new ConcurrentSkipListMap<>(Key.ORDER);
+    Map<Long, Key> byId = new HashMap<>();
+    List<UCSBDate> dates = ucsbDateRepository.findAllFrom(LocalDateTime.now(clock), PageRequest.of(0, size));
+    for (UCSBDate date : dates) {
+      Key key = new Key(date.getLocalDateTime(), date.getId());
+      byTime.put(key, date);
+      byId.put(date.getId(), key);
+    }
+    keysById = byId;
+    window = new Window(byTime, dates.size() < size ? null : byTime.lastKey());
+    log.info("loaded {} upcoming ucsb dates", dates.size());
+  }
+
+  // Puts inside the window can grow it without bound; past twice its size,
+  // keep the first windowSize dates.  Readers of the old window keep a map
+  // that still matches its horizon.
+  private void trim() {
+    ConcurrentSkipListMap<Key, UCSBDate> dates = window.dates();
+    if (dates.size() <= 2 * windowSize) {
+      return;
+    }
+    ConcurrentSkipListMap<Key, UCSBDate> kept = new ConcurrentSkipListMap<>(Key.ORDER);
+    for (Map.Entry<Key, UCSBDate> entry : dates.entrySet()) {
+      if (kept.size() < windowSize) {
+        kept.put(entry.getKey(), entry.getValue());
+      } else {
+        keysById.remove(entry.getKey().id());
+      }
+    }
+    window = new Window(kept, kept.lastKey());
+  }
+
+  @Scheduled(fixedDelayString = "${app.ucsbdates.pruneMillis:60000}")
+  public synchronized void prune() {
+    if (window == null) {
+      return;
+    }
+    Key now = new Key(LocalDateTime.now(clock), Long.MIN_VALUE);
+    Map<Key, UCSBDate> past = window.dates().headMap(now);
+    for (Key key : past.keySet()) {
+      keysById.remove(key.id());
+    }
+    past.clear();
+  }
+
+  int size() {
+    return window().dates().size();
+  }
+
+  private Window window() {
+    Window read = window;
+    if (read == null) {
+      synchronized (this) {
+        if (window == null) {
+          reload();
+        }
+        read = window;
+      }
+    }
+    return read;
+  }
+}
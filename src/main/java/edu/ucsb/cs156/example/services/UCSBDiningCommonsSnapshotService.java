@@ -0,0 +1,172 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.models.NearbyDiningCommons;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// UCSBDiningCommons is a tiny, read-mostly table, so we keep all of it in
+// memory.  Readers get the current immutable Snapshot without locking;
+// writers (the admin endpoints, after their repository call has committed)
+// build a modified copy and swap it in.  Each snapshot also carries a
+// DiningCommonsGeoIndex over the same rows, rebuilt with every swap, for the
+// nearest and radius lookups.
+//
+// The snapshot is local to this JVM: a write made through another instance
+// is not seen here until the next reload(), which runs every
+// app.diningcommons.reloadMillis and only swaps in a new snapshot when the
+// table has changed.
+//
+// put() and remove() run after the writer's transaction has committed, so
+// writes to the same commons can reach them in any order: a PUT that
+// committed before a DELETE can call put() after the DELETE's remove(), or
+// a commons deleted and created again can see the remove() last.  Neither
+// trusts the row or the order it was given; each rereads the commons, under
+// the same lock, and publishes whatever the table holds.  Every write calls
+// one of them after it commits, so the last call always sees the last
+// write.  The entities are mutable, so the snapshot keeps its own copies
+// and hands out copies of those.
+
+@Slf4j
+@Service("ucsbDiningCommonsSnapshot")
+public class UCSBDiningCommonsSnapshotService {
+  public static final String SNAPSHOT_VERSION_HEADER = "X-Snapshot-Version";
+
+  public record Snapshot(long version, NavigableMap<String, UCSBDiningCommons> byCode, DiningCommonsGeoIndex geo) {
+    public Snapshot(long version, NavigableMap<String, UCSBDiningCommons> byCode) {
+      this(version, byCode, DiningCommonsGeoIndex.of(byCode.values()));
+    }
+
+    public Collection<UCSBDiningCommons> all() {
+      List<UCSBDiningCommons> all = new ArrayList<>(byCode.size());
+      byCode.values().forEach(commons -> all.add(copy(commons)));
+      return all;
+    }
+
+    public Optional<UCSBDiningCommons> get(String code) {
+      return Optional.ofNullable(byCode.get(code)).map(UCSBDiningCommonsSnapshotService::copy);
+    }
+
+    public List<UCSBDiningCommons> after(String code, int limit) {
+      List<UCSBDiningCommons> page = new ArrayList<>(Math.min(limit, byCode.size()));
+      for (UCSBDiningCommons commons : byCode.tailMap(code, false).values()) {
+        if (page.size() == limit) {
+          break;
+        }
+        page.add(copy(commons));
+      }
+      return page;
+    }
+
+    public List<NearbyDiningCommons> nearest(double lat, double lon, int k) {
+      return copies(geo.nearest(lat, lon, k));
+    }
+
+    public List<NearbyDiningCommons> within(double lat, double lon, double radiusMeters) {
+      return copies(geo.within(lat, lon, radiusMeters));
+    }
+
+    private static List<NearbyDiningCommons> copies(List<NearbyDiningCommons> nearby) {
+      nearby.forEach(n -> n.setCommons(copy(n.getCommons())));
+      return nearby;
+    }
+  }
+
+  @Autowired
+  UCSBDiningCommonsRepository ucsbDiningCommonsRepository;
+
+  private final AtomicReference<Snapshot> current = new AtomicReference<>();
+
+  public Snapshot current() {
+    Snapshot snapshot = current.get();
+    if (snapshot == null) {
+      synchronized (this) {
+        snapshot = current.get();
+        if (snapshot == null) {
+          snapshot = load(System.currentTimeMillis());
+          current.set(snapshot);
+        }
+      }
+    }
+    return snapshot;
+  }
+
+  /** Publishes the current row of a commons the caller has just written. */
+  public void put(UCSBDiningCommons written) {
+    refresh(written.getCode());
+  }
+
+  /** Publishes the removal of a commons the caller has just deleted. */
+  public void remove(String code) {
+    refresh(code);
+  }
+
+  private synchronized void refresh(String code) {
+    Snapshot old = current();
+    UCSBDiningCommons row = ucsbDiningCommonsRepository.findById(code).orElse(null);
+    UCSBDiningCommons existing = old.byCode().get(code);
+    if (Objects.equals(row, existing)) {
+      log.debug("dining commons {} is unchanged in snapshot version {}", code, old.version());
+      return;
+    }
+    TreeMap<String, UCSBDiningCommons> byCode = new TreeMap<>(old.byCode());
+    if (row == null) {
+      byCode.remove(code);
+    } else {
+      byCode.put(code, copy(row));
+    }
+    current.set(new Snapshot(old.version() + 1, Collections.unmodifiableNavigableMap(byCode)));
+  }
+
+  @Scheduled(fixedDelayString = "${app.diningcommons.reloadMillis:60000}", initialDelayString = "${app.diningcommons.reloadMillis:60000}")
+  public synchronized void reload() {
+    Snapshot old = current.get();
+    NavigableMap<String, UCSBDiningCommons> byCode = rows();
+    if (old != null && byCode.equals(old.byCode())) {
+      return;
+    }
+    current.set(snapshot(old == null ? System.currentTimeMillis() : old.version() + 1, byCode));
+  }
+
+  private Snapshot load(long version) {
+    return snapshot(version, rows());
+  }
+
+  private Snapshot snapshot(long version, NavigableMap<String, UCSBDiningCommons> byCode) {
+    log.info("loaded {} dining commons, snapshot version {}", byCode.size(), version);
+    return new Snapshot(version, byCode);
+  }
+
+  private NavigableMap<String, UCSBDiningCommons> rows() {
+    TreeMap<String, UCSBDiningCommons> byCode = new TreeMap<>();
+    ucsbDiningCommonsRepository.findAll().forEach(commons -> byCode.put(commons.getCode(), commons));
+    return Collections.unmodifiableNavigableMap(byCode);
+  }
+
+  static UCSBDiningCommons copy(UCSBDiningCommons commons) {
+    return UCSBDiningCommons.builder()
+        .code(commons.getCode())
+        .name(commons.getName())
+        .hasSackMeal(commons.getHasSackMeal())
+        .hasTakeOutMeal(commons.getHasTakeOutMeal())
+        .hasDiningCam(commons.getHasDiningCam())
+        .latitude(commons.getLatitude())
+        .longitude(commons.getLongitude())
+        .version(commons.getVersion())
+        .build();
+  }
+}
@@ -0,0 +1,24 @@
+package edu.ucsb.cs156.example.services;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import lombok.Data;
+
+// app.views.* settings for ViewCounterService.
+//
+// durability BATCHED (the default) acknowledges a view as soon as it is
+// counted in memory and writes counts every flushIntervalMillis; views
+// counted since the last flush are lost if the process dies without a
+// clean shutdown.  IMMEDIATE writes each view before responding, so an
+// acknowledged view is always in the database.
+
+@Data
+@Component
+@ConfigurationProperties(prefix = "app.views")
+public class ViewCounterProperties {
+  public enum Durability { BATCHED, IMMEDIATE }
+
+  private Durability durability = Durability.BATCHED;
+  private long flushIntervalMillis = 1000;
+}
@@ -0,0 +1,183 @@
+package edu.ucsb.cs156.example.services;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.services.ViewCounterProperties.Durability;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PreDestroy;
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Counts plays of movies and musics without a read-modify-write per play.
+// Each view bumps a LongAdder for its row, so concurrent views of the same
+// row do not contend; flush() drains every adder and applies the totals as
+// one JDBC batch of "views = views + ?" per table.
+//
+// An adder that counted nothing since the last flush is dropped from its
+// map.  A view that raced with that removal notices the adder is no longer
+// mapped, drains it itself and counts again on a fresh adder; draining is
+// per-cell getAndSet, so each view ends up in exactly one flush.
+//
+// Counts go straight to the table, bypassing JPA, so each flush that wrote
+// anything (in either mode) also has the leaderboards re-read views and
+// bumps the table's version.  Each write bumps the row's version too: PUT
+// replaces views, so an If-Match taken before a view must not match after.
+//
+// For the same reason the written rows are evicted from the second-level
+// cache, both before and after the UPDATE.  That still leaves a race: a
+// findById that missed the cache and read the row before the UPDATE can
+// put its stale copy back after the second eviction.  The movies and
+// musics regions therefore have a short expire-after-write (see
+// application.properties), which bounds how long that copy can be served.
+// Writing the counts through Hibernate instead would need a bulk UPDATE,
+// which clears the whole region, or a load and save per row, which is the
+// read-modify-write this class exists to avoid.  See ViewCounterProperties
+// for durability.
+
+@Slf4j
+@Service("viewCounters")
+public class ViewCounterService {
+
+  public enum Table {
+    MOVIES("movies", Movie.class),
+    MUSICS("musics", Music.class);
+
+    final String sql;
+    final Class<?> entity;
+
+    Table(String table, Class<?> entity) {
+      this.sql = "UPDATE " + table + " SET views = COALESCE(views, 0) + ?, version = version + 1 WHERE id = ?";
+      this.entity = entity;
+    }
+  }
+
+  @Autowired
+  JdbcTemplate jdbcTemplate;
+
+  @Autowired
+  LeaderboardService leaderboards;
+
+  @Autowired
+  ViewCounterProperties properties;
+
+  @Autowired
+  TableVersionService tableVersions;
+
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+
+  private final Map<Table, ConcurrentHashMap<Long, LongAdder>> pending = Map.of(
+      Table.MOVIES, new ConcurrentHashMap<>(),
+      Table.MUSICS, new ConcurrentHashMap<>());
+
+  // tables with IMMEDIATE writes since the last flush
+  private final Set<Table> written = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Counts one view.  Returns false only in IMMEDIATE mode, when there is
+   * no row with that id.
+   */
+  public boolean view(Table table, long id) {
+    if (properties.getDurability() == Durability.IMMEDIATE) {
+      entityManagerFactory.getCache().evict(table.entity, id);
+      boolean found = jdbcTemplate.update(table.sql, 1L, id) > 0;
+      if (found) {
+        entityManagerFactory.getCache().evict(table.entity, id);
+        written.add(table);
+        tableVersions.changed(table.entity);
+      }
+      return found;
+    }
+    add(table, id, 1L);
+    return true;
+  }
+
+  private void add(Table table, long id, long delta) {
+    ConcurrentHashMap<Long, LongAdder> counts = pending.get(table);
+    while (delta > 0) {
+      LongAdder adder = counts.computeIfAbsent(id, k -> new LongAdder());
+      adder.add(delta);
+      if (counts.get(id) == adder) {
+        return;
+      }
+      // flush() removed this adder after we looked it up; whatever it has
+      // not drained yet is ours to count again
+      delta = adder.sumThenReset();
+    }
+  }
+
+  @Scheduled(fixedDelayString = "${app.views.flush-interval-millis:1000}")
+  public synchronized void flush() {
+    for (Table table : Table.values()) {
+      flush(table);
+    }
+  }
+
+  private void flush(Table table) {
+    ConcurrentHashMap<Long, LongAdder> counts = pending.get(table);
+    List<Object[]> batch = new ArrayList<>();
+    for (Map.Entry<Long, LongAdder> entry : counts.entrySet()) {
+      long delta = entry.getValue().sumThenReset();
+      if (delta > 0) {
+        batch.add(new Object[] { delta, entry.getKey() });
+      } else if (counts.remove(entry.getKey(), entry.getValue())) {
+        long late = entry.getValue().sumThenReset();
+        if (late > 0) {
+          batch.add(new Object[] { late, entry.getKey() });
+        }
+      }
+    }
+    boolean changed = written.remove(table);
+    if (batch.isEmpty()) {
+      if (changed) {
+        leaderboards.viewsChanged(table.entity);
+      }
+      return;
+    }
+    evict(table, batch);
+    try {
+      jdbcTemplate.batchUpdate(table.sql, batch);
+    } catch (RuntimeException e) {
+      log.warn("could not flush {} view counts for {}; will retry", batch.size(), table, e);
+      for (Object[] row : batch) {
+        add(table, (Long) row[1], (Long) row[0]);
+      }
+      if (changed) {
+        written.add(table);
+      }
+      return;
+    }
+    log.debug("flushed {} view counts for {}", batch.size(), table);
+    evict(table, batch);
+    tableVersions.changed(table.entity);
+    leaderboards.viewsChanged(table.entity);
+  }
+
+  private void evict(Table table, List<Object[]> batch) {
+    for (Object[] row : batch) {
+      entityManagerFactory.getCache().evict(table.entity, row[1]);
+    }
+  }
+
+  long pending(Table table, long id) {
+    LongAdder adder = pending.get(table).get(id);
+    return adder == null ? 0 : adder.sum();
+  }
+
+  @PreDestroy
+  public void close() {
+    flush();
+  }
+}
@@ -0,0 +1,10 @@
+-- Optimistic locking: every row carries a version that JPA bumps on each
+-- update, and PUT with If-Match updates only "WHERE id = ? AND version = ?".
+ALTER TABLE animals ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE books ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE movies ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE musics ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE parks ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE restaurants ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE ucsbdates ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
+ALTER TABLE ucsbdiningcommons ADD COLUMN version BIGINT DEFAULT 0 NOT NULL;
@@ -0,0 +1,5 @@
+-- State-only lookups cannot use restaurants_state_city_idx for their order:
+-- within one state it is sorted by city first, so every page would sort all
+-- of the state's rows by id.  This index matches WHERE state = ? AND id > ?
+-- ORDER BY id exactly.
+CREATE INDEX IF NOT EXISTS restaurants_state_idx ON restaurants (state, id);
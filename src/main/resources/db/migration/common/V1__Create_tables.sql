@@ -0,0 +1,78 @@
+-- Tables as Hibernate used to create them with ddl-auto=update.
+-- IF NOT EXISTS lets this run against a database that was created that way.
+
+CREATE TABLE IF NOT EXISTS users (
+  id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
+  email VARCHAR(255),
+  google_sub VARCHAR(255),
+  picture_url VARCHAR(255),
+  full_name VARCHAR(255),
+  given_name VARCHAR(255),
+  family_name VARCHAR(255),
+  email_verified BOOLEAN NOT NULL,
+  locale VARCHAR(255),
+  hosted_domain VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS animals (
+  id BIGINT PRIMARY KEY,
+  name VARCHAR(255),
+  genus VARCHAR(255),
+  species VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS books (
+  id BIGINT PRIMARY KEY,
+  title VARCHAR(255),
+  author VARCHAR(255),
+  genre VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS movies (
+  id BIGINT PRIMARY KEY,
+  title VARCHAR(255),
+  rating DOUBLE PRECISION,
+  views INTEGER
+);
+
+CREATE TABLE IF NOT EXISTS musics (
+  id BIGINT PRIMARY KEY,
+  title VARCHAR(255),
+  author VARCHAR(255),
+  rating FLOAT4 NOT NULL,
+  views INTEGER NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS parks (
+  id BIGINT PRIMARY KEY,
+  name VARCHAR(255),
+  address VARCHAR(255),
+  rating VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS restaurants (
+  id BIGINT PRIMARY KEY,
+  name VARCHAR(255),
+  address VARCHAR(255),
+  city VARCHAR(255),
+  state VARCHAR(255),
+  zip VARCHAR(255),
+  description VARCHAR(255)
+);
+
+CREATE TABLE IF NOT EXISTS ucsbdates (
+  id BIGINT PRIMARY KEY,
+  quarteryyyyq VARCHAR(255),
+  name VARCHAR(255),
+  local_date_time TIMESTAMP
+);
+
+CREATE TABLE IF NOT EXISTS ucsbdiningcommons (
+  code VARCHAR(255) PRIMARY KEY,
+  name VARCHAR(255),
+  has_sack_meal BOOLEAN NOT NULL,
+  has_take_out_meal BOOLEAN NOT NULL,
+  has_dining_cam BOOLEAN NOT NULL,
+  latitude DOUBLE PRECISION,
+  longitude DOUBLE PRECISION
+);
@@ -0,0 +1,16 @@
+-- users.email is looked up on every login and every /api/currentUser call.
+-- Before this index two concurrent first logins could both insert the same
+-- email, so merge any such duplicates into the oldest row first: it keeps
+-- admin if any of them had it, and the later rows are deleted.  Nothing
+-- references users.id.
+UPDATE users u SET admin = TRUE
+  WHERE u.admin IS NOT TRUE
+  AND EXISTS (SELECT 1 FROM users o WHERE o.email = u.email AND o.admin);
+
+DELETE FROM users u
+  WHERE EXISTS (SELECT 1 FROM users o WHERE o.email = u.email AND o.id < u.id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS users_email_idx ON users (email);
+
+-- UCSBDateRepository.findAllByQuarterYYYYQ
+CREATE INDEX IF NOT EXISTS ucsbdates_quarteryyyyq_idx ON ucsbdates (quarteryyyyq);
@@ -0,0 +1,5 @@
+-- RestaurantRepository location lookups, all keyset-paged by id, so id is
+-- the last column of each index and no sort is needed.
+CREATE INDEX IF NOT EXISTS restaurants_state_city_idx ON restaurants (state, city, id);
+CREATE INDEX IF NOT EXISTS restaurants_city_idx ON restaurants (city, id);
+CREATE INDEX IF NOT EXISTS restaurants_zip_idx ON restaurants (zip, id);
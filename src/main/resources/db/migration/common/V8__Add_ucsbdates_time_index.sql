@@ -0,0 +1,3 @@
+-- UCSBDateRepository time-range lookups and the upcoming-events timeline
+-- load, both ordered by (local_date_time, id).
+CREATE INDEX IF NOT EXISTS ucsbdates_local_date_time_idx ON ucsbdates (local_date_time, id);
@@ -0,0 +1,6 @@
+-- Leaderboard loads for /api/movies/top and /api/musics/top read the first
+-- rows in (score desc, id) order, so each index matches that order exactly.
+CREATE INDEX IF NOT EXISTS movies_rating_idx ON movies (rating DESC, id);
+CREATE INDEX IF NOT EXISTS movies_views_idx ON movies (views DESC, id);
+CREATE INDEX IF NOT EXISTS musics_rating_idx ON musics (rating DESC, id);
+CREATE INDEX IF NOT EXISTS musics_views_idx ON musics (views DESC, id);
@@ -0,0 +1,20 @@
+-- Entity ids moved from IDENTITY columns to pooled sequences (allocationSize 50)
+-- so inserts can be batched.  A development database under target/ may
+-- already have rows, and Hibernate's pooled optimizer treats each value it
+-- reads as the top of a block of 50, so, as on Postgres, restart each
+-- sequence 50 past the largest id already in use.
+CREATE SEQUENCE IF NOT EXISTS animals_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS books_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS movies_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS musics_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS parks_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS restaurants_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS ucsbdates_seq INCREMENT BY 50;
+
+ALTER SEQUENCE animals_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM animals);
+ALTER SEQUENCE books_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM books);
+ALTER SEQUENCE movies_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM movies);
+ALTER SEQUENCE musics_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM musics);
+ALTER SEQUENCE parks_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM parks);
+ALTER SEQUENCE restaurants_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM restaurants);
+ALTER SEQUENCE ucsbdates_seq RESTART WITH (SELECT COALESCE(MAX(id), 0) + 50 FROM ucsbdates);
@@ -0,0 +1,19 @@
+-- Entity ids moved from IDENTITY columns to pooled sequences (allocationSize 50)
+-- so inserts can be batched.  Hibernate's pooled optimizer treats each value
+-- it reads as the top of a block of 50, so start each sequence 50 past the
+-- largest id already in use.
+CREATE SEQUENCE IF NOT EXISTS animals_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS books_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS movies_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS musics_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS parks_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS restaurants_seq INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS ucsbdates_seq INCREMENT BY 50;
+
+SELECT setval('animals_seq', COALESCE(MAX(id), 0) + 50, false) FROM animals;
+SELECT setval('books_seq', COALESCE(MAX(id), 0) + 50, false) FROM books;
+SELECT setval('movies_seq', COALESCE(MAX(id), 0) + 50, false) FROM movies;
+SELECT setval('musics_seq', COALESCE(MAX(id), 0) + 50, false) FROM musics;
+SELECT setval('parks_seq', COALESCE(MAX(id), 0) + 50, false) FROM parks;
+SELECT setval('restaurants_seq', COALESCE(MAX(id), 0) + 50, false) FROM restaurants;
+SELECT setval('ucsbdates_seq', COALESCE(MAX(id), 0) + 50, false) FROM ucsbdates;
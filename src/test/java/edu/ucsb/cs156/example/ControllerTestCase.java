@@ -3,6 +3,7 @@ package edu.ucsb.cs156.example;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import org.junit.jupiter.api.AfterEach;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.ActiveProfiles;
@@ -10,6 +11,8 @@ import org.springframework.test.web.servlet.MockMvc;
 
 import edu.ucsb.cs156.example.services.CurrentUserService;
 import edu.ucsb.cs156.example.services.GrantedAuthoritiesService;
+import edu.ucsb.cs156.example.services.RequestCoalescingService;
+import edu.ucsb.cs156.example.services.ResponseBodyCacheService;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -17,7 +20,7 @@ import java.io.UnsupportedEncodingException;
 import java.util.Map;
 
 @ActiveProfiles("test")
-@Import(TestConfig.class)
+@Import({ TestConfig.class, ResponseBodyCacheService.class, RequestCoalescingService.class })
 public abstract class ControllerTestCase {
   @Autowired
   public CurrentUserService currentUserService;
@@ -31,6 +34,18 @@ public abstract class ControllerTestCase {
   @Autowired
   public ObjectMapper mapper;
 
+  @Autowired
+  public ResponseBodyCacheService responseBodies;
+
+  // the repositories are mocks, so the table versions that key the cached
+  // /all bodies do not change between tests
+  @AfterEach
+  public void clearResponseBodies() {
+    if (responseBodies != null) {
+      responseBodies.clear();
+    }
+  }
+
   protected Map<String, Object> responseToJson(MvcResult result) throws UnsupportedEncodingException, JsonProcessingException {
     String responseString = result.getResponse().getContentAsString();
     return mapper.readValue(responseString, Map.class);
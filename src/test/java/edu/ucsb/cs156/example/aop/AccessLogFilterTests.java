@@ -0,0 +1,152 @@
+package edu.ucsb.cs156.example.aop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.FilterChain;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+class AccessLogFilterTests {
+
+  static class PingController {
+    @GetMapping("/api/ping")
+    public String ping() {
+      return "pong";
+    }
+
+    @PutMapping("/api/ping")
+    public void update() {
+    }
+
+    public String notAHandler() {
+      return "";
+    }
+  }
+
+  static class FrontendProxyController {
+    @GetMapping("/")
+    public String proxy() {
+      return "";
+    }
+  }
+
+  AccessLogFilter filter;
+  AccessLogProperties properties = new AccessLogProperties();
+  MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/ping");
+  MockHttpServletResponse response = new MockHttpServletResponse();
+
+  @BeforeEach
+  void setup() {
+    filter = new AccessLogFilter();
+    filter.properties = properties;
+    filter.ring = new AccessLogRingBuffer(16);
+  }
+
+  // the handler DispatcherServlet would have picked, as it leaves it on the request
+  FilterChain dispatchedTo(Object controller, String method, int status) throws NoSuchMethodException {
+    HandlerMethod handler = new HandlerMethod(controller, method);
+    return (req, res) -> {
+      req.setAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE, handler);
+      ((MockHttpServletResponse) res).setStatus(status);
+    };
+  }
+
+  List<String> logged() {
+    List<String> lines = new ArrayList<>();
+    filter.ring.drain(record -> lines.add("%s %s %s %d".formatted(
+        record.getMethod(), record.getUri(), record.getHandler(), record.getStatus())));
+    return lines;
+  }
+
+  @Test
+  void test_logs_the_status_the_client_got() throws Exception {
+    filter.doFilter(request, response, dispatchedTo(new PingController(), "ping", 200));
+    filter.doFilter(request, response, dispatchedTo(new PingController(), "update", 412));
+    filter.doFilter(request, response, dispatchedTo(new PingController(), "update", 409));
+
+    assertEquals(List.of(
+        "GET /api/ping PingController.ping 200",
+        "GET /api/ping PingController.update 412",
+        "GET /api/ping PingController.update 409"), logged());
+  }
+
+  @Test
+  void test_access_denied_is_logged_as_the_403_security_sent() throws Exception {
+    FilterChain dispatched = dispatchedTo(new PingController(), "update", 200);
+    FilterChain denied = (req, res) -> {
+      dispatched.doFilter(req, res);
+      // what ExceptionTranslationFilter does with an AccessDeniedException
+      ((MockHttpServletResponse) res).sendError(HttpStatus.FORBIDDEN.value());
+    };
+
+    filter.doFilter(request, response, denied);
+
+    assertEquals(List.of("GET /api/ping PingController.update 403"), logged());
+  }
+
+  @Test
+  void test_an_exception_nothing_handled_is_logged_as_500() throws Exception {
+    FilterChain dispatched = dispatchedTo(new PingController(), "ping", 200);
+    FilterChain failing = (req, res) -> {
+      dispatched.doFilter(req, res);
+      throw new IllegalStateException("boom");
+    };
+
+    assertThrows(IllegalStateException.class, () -> filter.doFilter(request, response, failing));
+
+    assertEquals(List.of("GET /api/ping PingController.ping 500"), logged());
+  }
+
+  @Test
+  void test_async_requests_are_logged_when_they_complete() throws Exception {
+    FilterChain dispatched = dispatchedTo(new PingController(), "ping", 200);
+    FilterChain async = (req, res) -> {
+      dispatched.doFilter(req, res);
+      req.startAsync();
+    };
+    request.setAsyncSupported(true);
+
+    filter.doFilter(request, response, async);
+    assertEquals(List.of(), logged());
+
+    response.setStatus(500);
+    ((MockAsyncContext) request.getAsyncContext()).complete();
+    assertEquals(List.of("GET /api/ping PingController.ping 500"), logged());
+  }
+
+  @Test
+  void test_requests_without_a_mapped_handler_are_not_logged() throws Exception {
+    filter.doFilter(request, response, (req, res) -> { });
+    filter.doFilter(request, response, dispatchedTo(new PingController(), "notAHandler", 200));
+    filter.doFilter(request, response, dispatchedTo(new FrontendProxyController(), "proxy", 200));
+
+    assertEquals(List.of(), logged());
+  }
+
+  @Test
+  void test_sample_rate_zero_logs_nothing() throws Exception {
+    properties.setSampleRates(Map.of("PingController.ping", 0.0));
+
+    filter.doFilter(request, response, dispatchedTo(new PingController(), "ping", 200));
+    filter.doFilter(request, response, dispatchedTo(new PingController(), "update", 200));
+
+    List<String> lines = logged();
+    assertEquals(1, lines.size());
+    assertTrue(lines.get(0).contains("PingController.update"));
+  }
+}
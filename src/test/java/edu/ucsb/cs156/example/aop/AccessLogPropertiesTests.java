@@ -0,0 +1,23 @@
+package edu.ucsb.cs156.example.aop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class AccessLogPropertiesTests {
+
+  @Test
+  void test_handler_rate_overrides_controller_rate_overrides_default() {
+    AccessLogProperties properties = new AccessLogProperties();
+    properties.setDefaultSampleRate(0.5);
+    properties.setSampleRates(Map.of(
+        "UCSBDatesController", 0.25,
+        "UCSBDatesController.allUCSBDates", 0.0));
+
+    assertEquals(0.0, properties.sampleRateFor("UCSBDatesController", "allUCSBDates"));
+    assertEquals(0.25, properties.sampleRateFor("UCSBDatesController", "getById"));
+    assertEquals(0.5, properties.sampleRateFor("ParksController", "allParks"));
+  }
+}
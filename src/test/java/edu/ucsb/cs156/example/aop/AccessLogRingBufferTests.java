@@ -0,0 +1,77 @@
+package edu.ucsb.cs156.example.aop;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+class AccessLogRingBufferTests {
+
+  private static List<String> drainUris(AccessLogRingBuffer ring) {
+    List<String> uris = new ArrayList<>();
+    ring.drain(record -> uris.add(record.getUri()));
+    return uris;
+  }
+
+  @Test
+  void test_capacity_must_be_a_power_of_two() {
+    assertThrows(IllegalArgumentException.class, () -> new AccessLogRingBuffer(1000));
+    assertEquals(1024, new AccessLogRingBuffer(1024).capacity());
+  }
+
+  @Test
+  void test_records_are_drained_in_order() {
+    AccessLogRingBuffer ring = new AccessLogRingBuffer(4);
+    ring.offer(1L, "GET", "/api/a", "A.all", 200, 1_500_000L);
+    ring.offer(2L, "POST", "/api/b", "B.post", 403, 2_000_000L);
+
+    List<AccessLogRecord> seen = new ArrayList<>();
+    assertEquals(2, ring.drain(seen::add));
+    assertEquals("method=POST uri=/api/b handler=B.post status=403 durationMs=2.000 ts=2",
+        seen.get(1).format());
+    assertEquals(0, ring.drain(record -> { }));
+  }
+
+  @Test
+  void test_full_ring_drops_instead_of_blocking() {
+    AccessLogRingBuffer ring = new AccessLogRingBuffer(2);
+    assertTrue(ring.offer(1L, "GET", "/1", "h", 200, 1L));
+    assertTrue(ring.offer(2L, "GET", "/2", "h", 200, 1L));
+    assertFalse(ring.offer(3L, "GET", "/3", "h", 200, 1L));
+    assertEquals(1, ring.dropped());
+
+    assertEquals(List.of("/1", "/2"), drainUris(ring));
+    assertTrue(ring.offer(4L, "GET", "/4", "h", 200, 1L));
+    assertEquals(List.of("/4"), drainUris(ring));
+  }
+
+  @Test
+  void test_concurrent_producers_lose_nothing_that_was_accepted() throws Exception {
+    AccessLogRingBuffer ring = new AccessLogRingBuffer(1 << 16);
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    for (int t = 0; t < 4; t++) {
+      int thread = t;
+      pool.submit(() -> {
+        for (int i = 0; i < 5000; i++) {
+          ring.offer(i, "GET", thread + "/" + i, "h", 200, 1L);
+        }
+      });
+    }
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    Set<String> uris = new HashSet<>(drainUris(ring));
+    assertEquals(20000, uris.size());
+    assertEquals(0, ring.dropped());
+  }
+}
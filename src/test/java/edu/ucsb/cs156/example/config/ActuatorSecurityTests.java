@@ -0,0 +1,74 @@
+package edu.ucsb.cs156.example.config;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.flyway.FlywayAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.testconfig.TestConfig;
+
+@SpringBootTest(classes = ActuatorSecurityTests.Actuator.class)
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+public class ActuatorSecurityTests {
+
+  // the actuator and SecurityConfig without the database or the app's own beans
+  @Configuration
+  @EnableAutoConfiguration(exclude = { DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+      FlywayAutoConfiguration.class })
+  @Import({ SecurityConfig.class, SpringFoxConfig.class, TestConfig.class })
+  static class Actuator {
+  }
+
+  @MockBean
+  UserRepository userRepository;
+
+  @Autowired
+  MockMvc mockMvc;
+
+  @Test
+  public void logged_out_users_cannot_scrape_or_read_metrics() throws Exception {
+    mockMvc.perform(get("/actuator/prometheus")).andExpect(status().is(403));
+    mockMvc.perform(get("/actuator/metrics")).andExpect(status().is(403));
+    mockMvc.perform(get("/actuator/metrics/jvm.memory.used")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = { "USER" })
+  @Test
+  public void users_cannot_scrape_or_read_metrics() throws Exception {
+    mockMvc.perform(get("/actuator/prometheus")).andExpect(status().is(403));
+    mockMvc.perform(get("/actuator/metrics")).andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = { "ADMIN", "USER" })
+  @Test
+  public void admins_get_a_prometheus_scrape() throws Exception {
+    MvcResult response = mockMvc.perform(get("/actuator/prometheus")).andExpect(status().isOk()).andReturn();
+
+    String scrape = response.getResponse().getContentAsString();
+    assertTrue(scrape.contains("# TYPE jvm_memory_used_bytes gauge"), scrape);
+    assertTrue(scrape.contains("application=\"team02\""), scrape);
+    mockMvc.perform(get("/actuator/metrics/jvm.memory.used")).andExpect(status().isOk());
+  }
+
+  @Test
+  public void health_stays_public() throws Exception {
+    mockMvc.perform(get("/actuator/health")).andExpect(status().isOk());
+  }
+}
@@ -0,0 +1,142 @@
+package edu.ucsb.cs156.example.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.persistence.SharedCacheMode;
+
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.core.io.support.ResourcePropertySource;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class SecondLevelCacheConfigTests {
+
+  SecondLevelCacheConfig config = new SecondLevelCacheConfig();
+  SecondLevelCacheProperties properties = new SecondLevelCacheProperties();
+  CacheManager manager;
+
+  @AfterEach
+  void close() {
+    if (manager != null) {
+      manager.close();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  CaffeineConfiguration<Object, Object> configuration(String region) {
+    return manager.getCache(region).getConfiguration(CaffeineConfiguration.class);
+  }
+
+  @Test
+  void test_every_cached_entity_gets_a_bounded_region() {
+    manager = config.secondLevelCacheManager(properties);
+
+    for (Class<?> entity : SecondLevelCacheConfig.CACHED_ENTITIES) {
+      String region = SecondLevelCacheConfig.region(entity);
+      assertNotNull(manager.getCache(region), region);
+      assertEquals(OptionalLong.of(10_000), configuration(region).getMaximumSize());
+      assertEquals(OptionalLong.of(Duration.ofMinutes(10).toNanos()), configuration(region).getExpireAfterWrite());
+      assertFalse(configuration(region).isStoreByValue());
+      assertTrue(configuration(region).isStatisticsEnabled());
+    }
+    assertEquals("movies", SecondLevelCacheConfig.region(Movie.class));
+    assertFalse(SecondLevelCacheConfig.CACHED_ENTITIES.contains(UCSBDiningCommons.class));
+  }
+
+  @Test
+  void test_a_region_can_override_the_defaults() {
+    SecondLevelCacheProperties.Region movies = new SecondLevelCacheProperties.Region();
+    movies.setExpireAfterWrite(Duration.ofMinutes(1));
+    properties.getRegions().put("movies", movies);
+    properties.setMaximumSize(500);
+
+    manager = config.secondLevelCacheManager(properties);
+
+    assertEquals(OptionalLong.of(500), configuration("movies").getMaximumSize());
+    assertEquals(OptionalLong.of(Duration.ofMinutes(1).toNanos()), configuration("movies").getExpireAfterWrite());
+    assertEquals(OptionalLong.of(Duration.ofMinutes(10).toNanos()), configuration("books").getExpireAfterWrite());
+  }
+
+  @Test
+  void test_the_regions_view_counts_bypass_expire_quickly() throws Exception {
+    StandardEnvironment environment = new StandardEnvironment();
+    environment.getPropertySources().addFirst(new ResourcePropertySource("classpath:application.properties"));
+
+    SecondLevelCacheProperties shipped = Binder.get(environment)
+        .bind("app.cache", SecondLevelCacheProperties.class).get();
+
+    for (String region : List.of("movies", "musics")) {
+      assertTrue(shipped.expireAfterWriteFor(region).compareTo(Duration.ofMinutes(1)) <= 0, region);
+    }
+    assertEquals(Duration.ofMinutes(10), shipped.expireAfterWriteFor("books"));
+  }
+
+  @Test
+  void test_each_context_gets_its_own_cache_manager() {
+    manager = config.secondLevelCacheManager(properties);
+    CacheManager other = config.secondLevelCacheManager(properties);
+    try {
+      assertNotEquals(manager.getURI(), other.getURI());
+    } finally {
+      other.close();
+    }
+  }
+
+  @Test
+  void test_hibernate_is_pointed_at_the_cache_manager() {
+    manager = config.secondLevelCacheManager(properties);
+    Map<String, Object> hibernate = new HashMap<>();
+
+    config.secondLevelCache(manager).customize(hibernate);
+
+    assertEquals(manager, hibernate.get(ConfigSettings.CACHE_MANAGER));
+    assertEquals("fail", hibernate.get(ConfigSettings.MISSING_CACHE_STRATEGY));
+  }
+
+  @Test
+  void test_hibernate_is_told_not_to_cache_when_disabled() {
+    Map<String, Object> hibernate = new HashMap<>();
+
+    config.noSecondLevelCache().customize(hibernate);
+
+    assertEquals(false, hibernate.get(AvailableSettings.USE_SECOND_LEVEL_CACHE));
+    assertEquals(SharedCacheMode.NONE, hibernate.get(AvailableSettings.JPA_SHARED_CACHE_MODE));
+    assertFalse(hibernate.containsKey(AvailableSettings.CACHE_REGION_FACTORY));
+  }
+
+  @Test
+  void test_hits_and_misses_are_metered_per_region() {
+    manager = config.secondLevelCacheManager(properties);
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    config.secondLevelCacheMetrics(manager).bindTo(registry);
+
+    Cache<Object, Object> books = manager.getCache("books");
+    books.put(1L, "row");
+    books.get(1L);
+    books.get(2L);
+
+    assertEquals(1.0, registry.get("cache.gets").tag("cache", "books").tag("result", "hit").functionCounter().count());
+    assertEquals(1.0, registry.get("cache.gets").tag("cache", "books").tag("result", "miss").functionCounter().count());
+  }
+}
@@ -0,0 +1,45 @@
+package edu.ucsb.cs156.example.config;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import javax.cache.CacheManager;
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.cache.internal.NoCachingRegionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Import;
+
+/**
+ * With app.cache.enabled=false Hibernate must not cache at all. hibernate-jcache
+ * is on the classpath either way, and left to itself Hibernate would pick it up
+ * and give every @Cache entity an unbounded region.
+ */
+@DataJpaTest(properties = "app.cache.enabled=false")
+@Import(SecondLevelCacheConfig.class)
+public class SecondLevelCacheDisabledTests {
+
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  ApplicationContext context;
+
+  @Test
+  public void no_regions_exist_when_the_cache_is_disabled() {
+    SessionFactoryImplementor sessionFactory = entityManagerFactory.unwrap(SessionFactoryImplementor.class);
+
+    assertFalse(sessionFactory.getSessionFactoryOptions().isSecondLevelCacheEnabled());
+    assertInstanceOf(NoCachingRegionFactory.class, sessionFactory.getCache().getRegionFactory());
+    for (Class<?> entity : SecondLevelCacheConfig.CACHED_ENTITIES) {
+      assertNull(sessionFactory.getCache().getRegion(SecondLevelCacheConfig.region(entity)), entity.getName());
+    }
+    assertEquals(0, context.getBeanNamesForType(CacheManager.class).length);
+  }
+}
@@ -1,10 +1,15 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Animal;
 import edu.ucsb.cs156.example.repositories.AnimalRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,8 +17,11 @@ import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -28,6 +36,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +51,15 @@ public class AnimalControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
         // Authorization tests for /api/animals/admin/all
 
         @Test
@@ -127,6 +145,27 @@ public class AnimalControllerTests extends ControllerTestCase {
                 assertEquals("Animal with id 7 not found", json.get("message"));
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_current_if_none_match_does_not_read_the_row() throws Exception {
+
+                // arrange
+
+                when(animalRepository.findVersion(Animal.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/animals?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andReturn();
+
+                // assert
+
+                verify(animalRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_user_can_get_all_animals() throws Exception {
@@ -200,7 +239,7 @@ public class AnimalControllerTests extends ControllerTestCase {
                         .species("canis lupis")
                         .build();
 
-                when(animalRepository.findById(eq(15L))).thenReturn(Optional.of(animal1));
+                when(animalRepository.deleteOne(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -209,8 +248,8 @@ public class AnimalControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(animalRepository, times(1)).findById(15L);
-                verify(animalRepository, times(1)).delete(any());
+                verify(animalRepository, times(1)).deleteOne(15L);
+                verify(animalRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Animal with id 15 deleted", json.get("message"));
@@ -222,7 +261,7 @@ public class AnimalControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(animalRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(animalRepository.deleteOne(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -231,7 +270,7 @@ public class AnimalControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(animalRepository, times(1)).findById(15L);
+                verify(animalRepository, times(1)).deleteOne(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Animal with id 15 not found", json.get("message"));
         }
@@ -242,12 +281,15 @@ public class AnimalControllerTests extends ControllerTestCase {
                 // arrange
 
                 Animal animalOrig = Animal.builder()
+                        .version(3L)
                         .name("wolf")
                         .genus("canis")
                         .species("canis lupis")
                         .build();
 
                 Animal animalEdited = Animal.builder()
+                        .id(67L)
+                        .version(3L)
                         .name("new wolf")
                         .genus("new canis")
                         .species("new canis lupis")
@@ -256,6 +298,7 @@ public class AnimalControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(animalEdited);
 
                 when(animalRepository.findById(eq(67L))).thenReturn(Optional.of(animalOrig));
+                when(animalRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -264,11 +307,13 @@ public class AnimalControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(animalRepository, times(1)).findById(67L);
-                verify(animalRepository, times(1)).save(animalEdited); // should be saved with correct user
+                verify(animalRepository, times(1)).updateVersioned(animalEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -303,4 +348,366 @@ public class AnimalControllerTests extends ControllerTestCase {
                 assertEquals("Animal with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                Animal edited = Animal.builder()
+                        .name("new wolf")
+                        .genus("new canis")
+                        .species("new canis lupis")
+                        .build();
+                when(animalRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        Animal row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/animals?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(animalRepository, times(0)).findById(any());
+                verify(animalRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                Animal edited = Animal.builder()
+                        .name("new wolf")
+                        .genus("new canis")
+                        .species("new canis lupis")
+                        .build();
+                when(animalRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Animal.class, 67L));
+                when(animalRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/animals?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/animals?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(animalRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                Animal edited = Animal.builder()
+                        .name("new wolf")
+                        .genus("new canis")
+                        .species("new canis lupis")
+                        .build();
+                when(animalRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Animal.class, 67L));
+                when(animalRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/animals?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Animal with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                Animal edited = Animal.builder()
+                        .name("new wolf")
+                        .genus("new canis")
+                        .species("new canis lupis")
+                        .build();
+                when(animalRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(Animal.builder().version(1L).build()))
+                                .thenReturn(Optional.of(Animal.builder().version(2L).build()));
+                when(animalRepository.existsById(eq(67L))).thenReturn(true);
+                when(animalRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Animal.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/animals?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(animalRepository, times(2)).findById(67L);
+        }
+
+        // Authorization tests for /api/animals PATCH
+
+        @Test
+        public void logged_out_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/animals?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"species\":\"canis familiaris\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/animals?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"species\":\"canis familiaris\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_Animal() throws Exception {
+                // arrange
+
+                Animal patched = Animal.builder()
+                        .id(67L)
+                        .name("wolf")
+                        .genus("canis")
+                        .species("canis familiaris")
+                        .version(6L)
+                        .build();
+                when(mergePatchService.patch(eq(Animal.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/animals?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"species\":\"canis familiaris\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(Animal.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"species\":\"canis familiaris\"}")), eq(5L));
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Animal.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Animal.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/animals?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"species\":\"canis familiaris\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_Animal_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Animal.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/animals?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"species\":\"canis familiaris\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Animal with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/animals?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[1]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                Animal first = Animal.builder()
+                                .id(6L)
+                                .name("wolf 6")
+                                .genus("canis")
+                                .species("canis lupus")
+                                .build();
+
+                Animal second = Animal.builder()
+                                .id(7L)
+                                .name("wolf 7")
+                                .genus("canis")
+                                .species("canis lupus")
+                                .build();
+
+                ArrayList<Animal> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(animalRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/animals/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(animalRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(animalRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                Animal last = Animal.builder()
+                                .id(8L)
+                                .name("wolf 8")
+                                .genus("canis")
+                                .species("canis lupus")
+                                .build();
+
+                ArrayList<Animal> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(animalRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/animals/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/animals/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/animals/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(animalRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/animals/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(Animal.class), any(), eq(animalRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/animals/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(Animal.class), any(), eq(animalRepository));
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 Animal rows saved", json.get("message"));
+        }
 }
@@ -5,15 +5,29 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Book;
 import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.TableVersionService;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -26,6 +40,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -40,6 +55,18 @@ public class BookControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
+        @Autowired
+        TableVersionService tableVersionService;
+
         // Authorization tests for /api/Book/admin/all
 
         @Test
@@ -105,6 +132,90 @@ public class BookControllerTests extends ControllerTestCase {
                 assertEquals(expectedJson, responseString);
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_is_validated_by_the_row_version() throws Exception {
+
+                // arrange
+
+                when(BookRepository.findVersion(Book.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/Book?id=7").header("If-None-Match", "\"other\", W/\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andExpect(header().string("Cache-Control", "no-cache, private"))
+                                .andReturn();
+
+                // assert
+
+                verify(BookRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_stale_if_none_match_reads_the_row() throws Exception {
+
+                // arrange
+
+                Book book = Book.builder().id(7L).title("IT").author("Stephen King").genre("Horror").version(5L).build();
+                when(BookRepository.findVersion(Book.class, 7L)).thenReturn(Optional.of(5L));
+                when(BookRepository.findById(eq(7L))).thenReturn(Optional.of(book));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/Book?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"5\""))
+                                .andReturn();
+
+                // assert
+
+                assertEquals(mapper.writeValueAsString(book), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_if_none_match_of_a_missing_row_is_404() throws Exception {
+
+                // arrange
+
+                when(BookRepository.findVersion(Book.class, 7L)).thenReturn(Optional.empty());
+
+                // act
+
+                mockMvc.perform(get("/api/Book?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotFound());
+
+                // assert
+
+                verify(BookRepository, never()).findById(any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_etag_changes_when_the_table_does() throws Exception {
+
+                // arrange
+
+                when(BookRepository.findAll()).thenReturn(new ArrayList<>());
+                String etag = mockMvc.perform(get("/api/Book/all"))
+                                .andReturn().getResponse().getHeader("ETag");
+
+                // act
+
+                tableVersionService.changed(Book.class);
+
+                // assert
+
+                mockMvc.perform(get("/api/Book/all").header("If-None-Match", etag))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", tableVersionService.etag(Book.class)));
+                verify(BookRepository, times(2)).findAll();
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void test_that_logged_in_user_can_get_by_id_when_the_id_does_not_exist() throws Exception {
@@ -161,6 +272,92 @@ public class BookControllerTests extends ControllerTestCase {
                 assertEquals(expectedJson, responseString);
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_all_is_served_from_the_cached_body_until_the_table_changes() throws Exception {
+
+                // arrange
+
+                Book it = Book.builder().id(1L).title("IT").author("Stephen King").genre("Horror").build();
+                Book dune = Book.builder().id(2L).title("Dune").author("Frank Herbert").genre("Science Fiction").build();
+                when(BookRepository.findAll()).thenReturn(List.of(it));
+
+                // act
+
+                mockMvc.perform(get("/api/Book/all")).andExpect(status().isOk());
+                MvcResult cached = mockMvc.perform(get("/api/Book/all")).andExpect(status().isOk()).andReturn();
+                when(BookRepository.findAll()).thenReturn(List.of(it, dune));
+                tableVersionService.changed(Book.class);
+                MvcResult rebuilt = mockMvc.perform(get("/api/Book/all")).andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(BookRepository, times(2)).findAll();
+                assertEquals(mapper.writeValueAsString(List.of(it)), cached.getResponse().getContentAsString());
+                assertEquals(mapper.writeValueAsString(List.of(it, dune)), rebuilt.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_all_is_gzipped_for_clients_that_accept_it() throws Exception {
+
+                // arrange
+
+                Book it = Book.builder().id(1L).title("IT").author("Stephen King").genre("Horror").build();
+                when(BookRepository.findAll()).thenReturn(List.of(it));
+
+                // act
+
+                String etag = tableVersionService.etag(Book.class);
+                MvcResult gzipped = mockMvc.perform(get("/api/Book/all").header("Accept-Encoding", "br, gzip;q=0.8"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("Content-Encoding", "gzip"))
+                                .andExpect(header().string("Vary", "Accept-Encoding"))
+                                .andExpect(header().string("ETag", etag.replaceAll("\"$", "-gzip\"")))
+                                .andExpect(content().contentType(MediaType.APPLICATION_JSON))
+                                .andReturn();
+                mockMvc.perform(get("/api/Book/all").header("Accept-Encoding", "gzip;q=0"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist("Content-Encoding"))
+                                .andExpect(header().string("ETag", etag))
+                                .andExpect(content().json(mapper.writeValueAsString(List.of(it))));
+
+                // assert
+
+                try (GZIPInputStream in = new GZIPInputStream(
+                                new ByteArrayInputStream(gzipped.getResponse().getContentAsByteArray()))) {
+                        assertEquals(mapper.writeValueAsString(List.of(it)), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                verify(BookRepository, times(1)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_all_is_not_modified_for_either_encoding_of_the_current_table() throws Exception {
+
+                // arrange
+
+                String etag = tableVersionService.etag(Book.class);
+                String gzipEtag = etag.replaceAll("\"$", "-gzip\"");
+
+                // act and assert
+
+                mockMvc.perform(get("/api/Book/all").header("Accept-Encoding", "gzip").header("If-None-Match", gzipEtag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", gzipEtag))
+                                .andExpect(header().string("Vary", "Accept-Encoding"))
+                                .andExpect(header().string("Cache-Control", "no-cache, private"));
+                mockMvc.perform(get("/api/Book/all").header("If-None-Match", etag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", etag))
+                                .andExpect(header().string("Vary", "Accept-Encoding"));
+                // a client whose cached copy is gzipped but that now asks for identity
+                mockMvc.perform(get("/api/Book/all").header("If-None-Match", "\"other\", " + gzipEtag))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", gzipEtag));
+                verify(BookRepository, times(0)).findAll();
+        }
+
         @WithMockUser(roles = { "ADMIN", "USER" })
         @Test
         public void an_admin_user_can_post_a_new_Book() throws Exception {
@@ -200,7 +397,8 @@ public class BookControllerTests extends ControllerTestCase {
                                 .genre("Horror")
                                 .build();
 
-                when(BookRepository.findById(eq(15L))).thenReturn(Optional.of(Book1));
+                when(BookRepository.deleteOne(eq(15L))).thenReturn(1);
+                long version = tableVersionService.version(Book.class);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -209,8 +407,9 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(BookRepository, times(1)).findById(15L);
-                verify(BookRepository, times(1)).delete(any());
+                verify(BookRepository, times(1)).deleteOne(15L);
+                verify(BookRepository, times(0)).findById(any());
+                assertEquals(version + 1, tableVersionService.version(Book.class));
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 15 deleted", json.get("message"));
@@ -222,7 +421,7 @@ public class BookControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(BookRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(BookRepository.deleteOne(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -231,7 +430,7 @@ public class BookControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(BookRepository, times(1)).findById(15L);
+                verify(BookRepository, times(1)).deleteOne(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Book with id 15 not found", json.get("message"));
         }
@@ -243,12 +442,15 @@ public class BookControllerTests extends ControllerTestCase {
 
 
                 Book BookOrig = Book.builder()
+                                .version(3L)
                                 .title("IT")
                                 .author("Stephen King")
                                 .genre("Horror")
                                 .build();
 
                 Book BookEdited = Book.builder()
+                                .id(67L)
+                                .version(3L)
                                 .title("IT2")
                                 .author("Stephen King2")
                                 .genre("Horror2")
@@ -257,6 +459,7 @@ public class BookControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(BookEdited);
 
                 when(BookRepository.findById(eq(67L))).thenReturn(Optional.of(BookOrig));
+                when(BookRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -265,15 +468,218 @@ public class BookControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(BookRepository, times(1)).findById(67L);
-                verify(BookRepository, times(1)).save(BookEdited); // should be saved with correct user
+                verify(BookRepository, times(1)).updateVersioned(BookEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
 
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                Book edited = Book.builder().id(67L).title("IT2").author("Stephen King2").genre("Horror2").build();
+                when(BookRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        Book book = invocation.getArgument(0);
+                        assertEquals(5L, book.getVersion());
+                        book.setVersion(6L);
+                        return book;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/Book?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(BookRepository, times(0)).findById(any());
+                verify(BookRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                Book edited = Book.builder().title("IT2").author("Stephen King2").genre("Horror2").build();
+                when(BookRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Book.class, 67L));
+                when(BookRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/Book?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/Book?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(BookRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                Book edited = Book.builder().title("IT2").author("Stephen King2").genre("Horror2").build();
+                when(BookRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Book.class, 67L));
+                when(BookRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/Book?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Book with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                Book edited = Book.builder().title("IT2").author("Stephen King2").genre("Horror2").build();
+                when(BookRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(Book.builder().version(1L).build()))
+                                .thenReturn(Optional.of(Book.builder().version(2L).build()));
+                when(BookRepository.existsById(eq(67L))).thenReturn(true);
+                when(BookRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Book.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/Book?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(BookRepository, times(2)).findById(67L);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/Book?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"genre\":\"Thriller\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_Book() throws Exception {
+                // arrange
+
+                Book patched = Book.builder().id(67L).title("IT").author("Stephen King").genre("Thriller").version(6L).build();
+                when(mergePatchService.patch(eq(Book.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/Book?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"genre\":\"Thriller\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(Book.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"genre\":\"Thriller\"}")), eq(5L));
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Book.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Book.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/Book?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"genre\":\"Thriller\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_Book_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Book.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/Book?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"genre\":\"Thriller\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Book with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/Book?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[\"genre\"]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
         @WithMockUser(roles = { "ADMIN", "USER" })
         @Test
         public void admin_cannot_edit_Book_that_does_not_exist() throws Exception {
@@ -305,4 +711,130 @@ public class BookControllerTests extends ControllerTestCase {
                 assertEquals("Book with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                Book first = Book.builder()
+                                .id(6L)
+                                .title("Book 6")
+                                .author("Author 6")
+                                .genre("Fiction")
+                                .build();
+
+                Book second = Book.builder()
+                                .id(7L)
+                                .title("Book 7")
+                                .author("Author 7")
+                                .genre("Fiction")
+                                .build();
+
+                ArrayList<Book> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(BookRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/Book/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(BookRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(BookRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                Book last = Book.builder()
+                                .id(8L)
+                                .title("Book 8")
+                                .author("Author 8")
+                                .genre("Fiction")
+                                .build();
+
+                ArrayList<Book> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(BookRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/Book/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/Book/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/Book/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(BookRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/Book/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(Book.class), any(), eq(BookRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/Book/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(Book.class), any(), eq(BookRepository));
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 Book rows saved", json.get("message"));
+        }
 }
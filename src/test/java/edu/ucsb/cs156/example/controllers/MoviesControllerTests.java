@@ -1,19 +1,31 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Movie;
 import edu.ucsb.cs156.example.repositories.MovieRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.LeaderboardService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.ViewCounterProperties;
+import edu.ucsb.cs156.example.services.ViewCounterService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -28,6 +40,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +55,24 @@ public class MoviesControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        LeaderboardService leaderboards;
+
+        @MockBean
+        ViewCounterService viewCounters;
+
+        @MockBean
+        ViewCounterProperties viewCounterProperties;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
         // Authorization tests for /api/ucsbdates/admin/all
 
         @Test
@@ -125,6 +156,27 @@ public class MoviesControllerTests extends ControllerTestCase {
                 assertEquals("Movie with id 7 not found", json.get("message"));
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_current_if_none_match_does_not_read_the_row() throws Exception {
+
+                // arrange
+
+                when(movieRepository.findVersion(Movie.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/movies?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andReturn();
+
+                // assert
+
+                verify(movieRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_user_can_get_all_ucsbdates() throws Exception {
@@ -194,7 +246,7 @@ public class MoviesControllerTests extends ControllerTestCase {
                                 .views(0)
                                 .build();
 
-                when(movieRepository.findById(eq(15L))).thenReturn(Optional.of(movie1));
+                when(movieRepository.deleteOne(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -203,8 +255,8 @@ public class MoviesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(movieRepository, times(1)).findById(15L);
-                verify(movieRepository, times(1)).delete(any());
+                verify(movieRepository, times(1)).deleteOne(15L);
+                verify(movieRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Movie with id 15 deleted", json.get("message"));
@@ -216,7 +268,7 @@ public class MoviesControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(movieRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(movieRepository.deleteOne(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -225,7 +277,7 @@ public class MoviesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(movieRepository, times(1)).findById(15L);
+                verify(movieRepository, times(1)).deleteOne(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Movie with id 15 not found", json.get("message"));
         }
@@ -236,12 +288,15 @@ public class MoviesControllerTests extends ControllerTestCase {
                 // arrange
 
                 Movie movieOrig = Movie.builder()
+                                .version(3L)
                                 .title("Test Movie")
                                 .rating(0.0)
                                 .views(0)
                                 .build();
 
                 Movie movieEdited = Movie.builder()
+                                .id(67L)
+                                .version(3L)
                                 .title("Changed Movie")
                                 .rating(1.0)
                                 .views(1)
@@ -250,6 +305,7 @@ public class MoviesControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(movieEdited);
 
                 when(movieRepository.findById(eq(67L))).thenReturn(Optional.of(movieOrig));
+                when(movieRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -258,11 +314,13 @@ public class MoviesControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(movieRepository, times(1)).findById(67L);
-                verify(movieRepository, times(1)).save(movieEdited); // should be saved with correct user
+                verify(movieRepository, times(1)).updateVersioned(movieEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -296,4 +354,466 @@ public class MoviesControllerTests extends ControllerTestCase {
                 assertEquals("Movie with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                Movie edited = Movie.builder()
+                                .title("Changed Movie")
+                                .rating(1.0)
+                                .views(1)
+                                .build();
+                when(movieRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        Movie row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/movies?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(movieRepository, times(0)).findById(any());
+                verify(movieRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                Movie edited = Movie.builder()
+                                .title("Changed Movie")
+                                .rating(1.0)
+                                .views(1)
+                                .build();
+                when(movieRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Movie.class, 67L));
+                when(movieRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/movies?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/movies?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(movieRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                Movie edited = Movie.builder()
+                                .title("Changed Movie")
+                                .rating(1.0)
+                                .views(1)
+                                .build();
+                when(movieRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Movie.class, 67L));
+                when(movieRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/movies?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Movie with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                Movie edited = Movie.builder()
+                                .title("Changed Movie")
+                                .rating(1.0)
+                                .views(1)
+                                .build();
+                when(movieRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(Movie.builder().version(1L).build()))
+                                .thenReturn(Optional.of(Movie.builder().version(2L).build()));
+                when(movieRepository.existsById(eq(67L))).thenReturn(true);
+                when(movieRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Movie.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/movies?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(movieRepository, times(2)).findById(67L);
+        }
+
+        // Authorization tests for /api/movies PATCH
+
+        @Test
+        public void logged_out_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/movies?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"rating\":4.5}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/movies?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"rating\":4.5}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_Movie() throws Exception {
+                // arrange
+
+                Movie patched = Movie.builder()
+                                .id(67L)
+                                .title("Test Movie")
+                                .rating(4.5)
+                                .views(0)
+                                .version(6L)
+                                .build();
+                when(mergePatchService.patch(eq(Movie.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/movies?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\":4.5}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(Movie.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"rating\":4.5}")), eq(5L));
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Movie.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Movie.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/movies?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\":4.5}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_Movie_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Movie.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/movies?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\":4.5}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Movie with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/movies?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[1]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                Movie first = Movie.builder()
+                                .id(6L)
+                                .title("Movie 6")
+                                .rating(4.5)
+                                .views(100)
+                                .build();
+
+                Movie second = Movie.builder()
+                                .id(7L)
+                                .title("Movie 7")
+                                .rating(4.5)
+                                .views(100)
+                                .build();
+
+                ArrayList<Movie> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(movieRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/movies/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(movieRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(movieRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                Movie last = Movie.builder()
+                                .id(8L)
+                                .title("Movie 8")
+                                .rating(4.5)
+                                .views(100)
+                                .build();
+
+                ArrayList<Movie> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(movieRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/movies/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/movies/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/movies/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(movieRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/movies/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(Movie.class), any(), eq(movieRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/movies/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(Movie.class), any(), eq(movieRepository));
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 Movie rows saved", json.get("message"));
+        }
+
+        // Tests for GET /api/movies/top
+
+        @Test
+        public void logged_out_users_cannot_get_top() throws Exception {
+                mockMvc.perform(get("/api/movies/top"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_top_movies_by_rating_by_default() throws Exception {
+
+                // arrange
+
+                Movie top = Movie.builder()
+                                .id(7L)
+                                .title("Spirited Away")
+                                .rating(9.6)
+                                .views(1200)
+                                .build();
+
+                when(leaderboards.topMovies(eq("rating"), eq(10))).thenReturn(List.of(top));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/movies/top"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(leaderboards, times(1)).topMovies("rating", 10);
+                assertEquals(mapper.writeValueAsString(List.of(top)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_top_movies_by_views_and_n_is_capped() throws Exception {
+                mockMvc.perform(get("/api/movies/top?by=views&n=5000"))
+                                .andExpect(status().isOk());
+                verify(leaderboards, times(1)).topMovies("views", LeaderboardService.CAPACITY);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void top_movies_rejects_unknown_ranking() throws Exception {
+                mockMvc.perform(get("/api/movies/top?by=title"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        // Tests for POST /api/movies/{id}/view
+
+        @Test
+        public void logged_out_users_cannot_count_a_view() throws Exception {
+                mockMvc.perform(post("/api/movies/7/view").with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_view_is_accepted_when_batched() throws Exception {
+
+                // arrange
+
+                when(viewCounterProperties.getDurability()).thenReturn(ViewCounterProperties.Durability.BATCHED);
+                when(viewCounters.view(ViewCounterService.Table.MOVIES, 7L)).thenReturn(true);
+
+                // act
+                MvcResult response = mockMvc.perform(post("/api/movies/7/view").with(csrf()))
+                                .andExpect(status().isAccepted()).andReturn();
+
+                // assert
+
+                verify(viewCounters, times(1)).view(ViewCounterService.Table.MOVIES, 7L);
+                verify(movieRepository, times(0)).save(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("view of Movie with id 7 counted", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_view_is_ok_when_immediate() throws Exception {
+                when(viewCounterProperties.getDurability()).thenReturn(ViewCounterProperties.Durability.IMMEDIATE);
+                when(viewCounters.view(ViewCounterService.Table.MOVIES, 7L)).thenReturn(true);
+
+                mockMvc.perform(post("/api/movies/7/view").with(csrf()))
+                                .andExpect(status().isOk());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void view_of_a_missing_movie_is_not_found_when_immediate() throws Exception {
+                when(viewCounterProperties.getDurability()).thenReturn(ViewCounterProperties.Durability.IMMEDIATE);
+                when(viewCounters.view(ViewCounterService.Table.MOVIES, 7L)).thenReturn(false);
+
+                MvcResult response = mockMvc.perform(post("/api/movies/7/view").with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Movie with id 7 not found", json.get("message"));
+        }
 }
@@ -1,19 +1,31 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Music;
 import edu.ucsb.cs156.example.repositories.MusicRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.LeaderboardService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.ViewCounterProperties;
+import edu.ucsb.cs156.example.services.ViewCounterService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -28,6 +40,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +55,24 @@ public class MusicControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        LeaderboardService leaderboards;
+
+        @MockBean
+        ViewCounterService viewCounters;
+
+        @MockBean
+        ViewCounterProperties viewCounterProperties;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
         // Authorization tests for /api/ucsbdates/admin/all
 
         @Test
@@ -126,6 +157,27 @@ public class MusicControllerTests extends ControllerTestCase {
                 assertEquals("Music with id 7 not found", json.get("message"));
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_current_if_none_match_does_not_read_the_row() throws Exception {
+
+                // arrange
+
+                when(musicRepository.findVersion(Music.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/musics?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andReturn();
+
+                // assert
+
+                verify(musicRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_user_can_get_all_ucsbdates() throws Exception {
@@ -199,7 +251,7 @@ public class MusicControllerTests extends ControllerTestCase {
                                 .views(0)
                                 .build();
 
-                when(musicRepository.findById(eq(15L))).thenReturn(Optional.of(music1));
+                when(musicRepository.deleteOne(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -208,8 +260,8 @@ public class MusicControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(musicRepository, times(1)).findById(15L);
-                verify(musicRepository, times(1)).delete(any());
+                verify(musicRepository, times(1)).deleteOne(15L);
+                verify(musicRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Music with id 15 deleted", json.get("message"));
@@ -221,7 +273,7 @@ public class MusicControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(musicRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(musicRepository.deleteOne(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -230,7 +282,7 @@ public class MusicControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(musicRepository, times(1)).findById(15L);
+                verify(musicRepository, times(1)).deleteOne(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Music with id 15 not found", json.get("message"));
         }
@@ -241,6 +293,7 @@ public class MusicControllerTests extends ControllerTestCase {
                 // arrange
 
                 Music musicOrig = Music.builder()
+                                .version(3L)
                                 .title("Test Music")
                                 .author("Test Name")
                                 .rating(0)
@@ -248,6 +301,8 @@ public class MusicControllerTests extends ControllerTestCase {
                                 .build();
 
                 Music musicEdited = Music.builder()
+                                .id(67L)
+                                .version(3L)
                                 .title("Changed Music")
                                 .author("Changed Author")
                                 .rating(1)
@@ -257,6 +312,7 @@ public class MusicControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(musicEdited);
 
                 when(musicRepository.findById(eq(67L))).thenReturn(Optional.of(musicOrig));
+                when(musicRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -265,11 +321,13 @@ public class MusicControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(musicRepository, times(1)).findById(67L);
-                verify(musicRepository, times(1)).save(musicEdited); // should be saved with correct user
+                verify(musicRepository, times(1)).updateVersioned(musicEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -304,4 +362,475 @@ public class MusicControllerTests extends ControllerTestCase {
                 assertEquals("Music with id 67 not found", json.get("message"));
 
         }
-}
\ No newline at end of file
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                Music edited = Music.builder()
+                                .title("Test Music")
+                                .author("Test Name")
+                                .rating(0)
+                                .views(0)
+                                .build();
+                when(musicRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        Music row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/musics?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(musicRepository, times(0)).findById(any());
+                verify(musicRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                Music edited = Music.builder()
+                                .title("Test Music")
+                                .author("Test Name")
+                                .rating(0)
+                                .views(0)
+                                .build();
+                when(musicRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Music.class, 67L));
+                when(musicRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/musics?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/musics?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(musicRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                Music edited = Music.builder()
+                                .title("Test Music")
+                                .author("Test Name")
+                                .rating(0)
+                                .views(0)
+                                .build();
+                when(musicRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Music.class, 67L));
+                when(musicRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/musics?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Music with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                Music edited = Music.builder()
+                                .title("Test Music")
+                                .author("Test Name")
+                                .rating(0)
+                                .views(0)
+                                .build();
+                when(musicRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(Music.builder().version(1L).build()))
+                                .thenReturn(Optional.of(Music.builder().version(2L).build()));
+                when(musicRepository.existsById(eq(67L))).thenReturn(true);
+                when(musicRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Music.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/musics?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(musicRepository, times(2)).findById(67L);
+        }
+
+        // Authorization tests for /api/musics PATCH
+
+        @Test
+        public void logged_out_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/musics?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"author\":\"New Name\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/musics?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"author\":\"New Name\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_Music() throws Exception {
+                // arrange
+
+                Music patched = Music.builder()
+                                .id(67L)
+                                .title("Test Music")
+                                .author("New Name")
+                                .rating(0)
+                                .views(0)
+                                .version(6L)
+                                .build();
+                when(mergePatchService.patch(eq(Music.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/musics?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"author\":\"New Name\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(Music.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"author\":\"New Name\"}")), eq(5L));
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Music.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Music.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/musics?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"author\":\"New Name\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_Music_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Music.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/musics?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"author\":\"New Name\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Music with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/musics?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[1]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                Music first = Music.builder()
+                                .id(6L)
+                                .title("Song 6")
+                                .author("Artist 6")
+                                .rating(4.5f)
+                                .views(100)
+                                .build();
+
+                Music second = Music.builder()
+                                .id(7L)
+                                .title("Song 7")
+                                .author("Artist 7")
+                                .rating(4.5f)
+                                .views(100)
+                                .build();
+
+                ArrayList<Music> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(musicRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/musics/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(musicRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(musicRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                Music last = Music.builder()
+                                .id(8L)
+                                .title("Song 8")
+                                .author("Artist 8")
+                                .rating(4.5f)
+                                .views(100)
+                                .build();
+
+                ArrayList<Music> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(musicRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/musics/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/musics/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/musics/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(musicRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/musics/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(Music.class), any(), eq(musicRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/musics/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(Music.class), any(), eq(musicRepository));
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 Music rows saved", json.get("message"));
+        }
+
+        // Tests for GET /api/musics/top
+
+        @Test
+        public void logged_out_users_cannot_get_top() throws Exception {
+                mockMvc.perform(get("/api/musics/top"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_top_musics_by_rating_by_default() throws Exception {
+
+                // arrange
+
+                Music top = Music.builder()
+                                .id(7L)
+                                .title("Blue in Green")
+                                .author("Miles Davis")
+                                .rating(9.6f)
+                                .views(1200)
+                                .build();
+
+                when(leaderboards.topMusics(eq("rating"), eq(10))).thenReturn(List.of(top));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/musics/top"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(leaderboards, times(1)).topMusics("rating", 10);
+                assertEquals(mapper.writeValueAsString(List.of(top)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_top_musics_by_views_and_n_is_capped() throws Exception {
+                mockMvc.perform(get("/api/musics/top?by=views&n=5000"))
+                                .andExpect(status().isOk());
+                verify(leaderboards, times(1)).topMusics("views", LeaderboardService.CAPACITY);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void top_musics_rejects_unknown_ranking() throws Exception {
+                mockMvc.perform(get("/api/musics/top?by=title"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        // Tests for POST /api/musics/{id}/view
+
+        @Test
+        public void logged_out_users_cannot_count_a_view() throws Exception {
+                mockMvc.perform(post("/api/musics/7/view").with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_view_is_accepted_when_batched() throws Exception {
+
+                // arrange
+
+                when(viewCounterProperties.getDurability()).thenReturn(ViewCounterProperties.Durability.BATCHED);
+                when(viewCounters.view(ViewCounterService.Table.MUSICS, 7L)).thenReturn(true);
+
+                // act
+                MvcResult response = mockMvc.perform(post("/api/musics/7/view").with(csrf()))
+                                .andExpect(status().isAccepted()).andReturn();
+
+                // assert
+
+                verify(viewCounters, times(1)).view(ViewCounterService.Table.MUSICS, 7L);
+                verify(musicRepository, times(0)).save(any());
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("view of Music with id 7 counted", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_view_is_ok_when_immediate() throws Exception {
+                when(viewCounterProperties.getDurability()).thenReturn(ViewCounterProperties.Durability.IMMEDIATE);
+                when(viewCounters.view(ViewCounterService.Table.MUSICS, 7L)).thenReturn(true);
+
+                mockMvc.perform(post("/api/musics/7/view").with(csrf()))
+                                .andExpect(status().isOk());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void view_of_a_missing_music_is_not_found_when_immediate() throws Exception {
+                when(viewCounterProperties.getDurability()).thenReturn(ViewCounterProperties.Durability.IMMEDIATE);
+                when(viewCounters.view(ViewCounterService.Table.MUSICS, 7L)).thenReturn(false);
+
+                MvcResult response = mockMvc.perform(post("/api/musics/7/view").with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Music with id 7 not found", json.get("message"));
+        }
+}
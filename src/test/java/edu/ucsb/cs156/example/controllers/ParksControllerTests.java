@@ -1,10 +1,15 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.Park;
 import edu.ucsb.cs156.example.repositories.ParkRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,8 +17,11 @@ import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -28,6 +36,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +51,15 @@ public class ParksControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
         // Authorization tests for /api/ucsbdates/admin/all
 
         @Test
@@ -124,6 +142,27 @@ public class ParksControllerTests extends ControllerTestCase {
                 assertEquals("Park with id 7 not found", json.get("message"));
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_current_if_none_match_does_not_read_the_row() throws Exception {
+
+                // arrange
+
+                when(parkRepository.findVersion(Park.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/parks?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andReturn();
+
+                // assert
+
+                verify(parkRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_user_can_get_all_ucsbdates() throws Exception {
@@ -193,7 +232,7 @@ public class ParksControllerTests extends ControllerTestCase {
                                 .rating("3.9")
                                 .build();
 
-                when(parkRepository.findById(eq(15L))).thenReturn(Optional.of(park1));
+                when(parkRepository.deleteOne(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -202,8 +241,8 @@ public class ParksControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(parkRepository, times(1)).findById(15L);
-                verify(parkRepository, times(1)).delete(any());
+                verify(parkRepository, times(1)).deleteOne(15L);
+                verify(parkRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Park with id 15 deleted", json.get("message"));
@@ -215,7 +254,7 @@ public class ParksControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(parkRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(parkRepository.deleteOne(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -224,7 +263,7 @@ public class ParksControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(parkRepository, times(1)).findById(15L);
+                verify(parkRepository, times(1)).deleteOne(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Park with id 15 not found", json.get("message"));
         }
@@ -235,12 +274,15 @@ public class ParksControllerTests extends ControllerTestCase {
                 // arrange
 
                 Park parkOrig = Park.builder()
+                                .version(3L)
                                 .name("Test Park")
                                 .address("123 Fake Ave")
                                 .rating("3.9")
                                 .build();
 
                 Park parkEdited = Park.builder()
+                                .id(67L)
+                                .version(3L)
                                 .name("Changed Park")
                                 .address("1234 Fake Ave")
                                 .rating("4.0")
@@ -248,6 +290,7 @@ public class ParksControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(parkEdited);
 
                 when(parkRepository.findById(eq(67L))).thenReturn(Optional.of(parkOrig));
+                when(parkRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -256,11 +299,13 @@ public class ParksControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(parkRepository, times(1)).findById(67L);
-                verify(parkRepository, times(1)).save(parkEdited); // should be saved with correct user
+                verify(parkRepository, times(1)).updateVersioned(parkEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -294,4 +339,366 @@ public class ParksControllerTests extends ControllerTestCase {
                 assertEquals("Park with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                Park edited = Park.builder()
+                                .name("Test Park")
+                                .address("123 Fake Ave")
+                                .rating("3.9")
+                                .build();
+                when(parkRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        Park row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/parks?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(parkRepository, times(0)).findById(any());
+                verify(parkRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                Park edited = Park.builder()
+                                .name("Test Park")
+                                .address("123 Fake Ave")
+                                .rating("3.9")
+                                .build();
+                when(parkRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Park.class, 67L));
+                when(parkRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/parks?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/parks?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(parkRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                Park edited = Park.builder()
+                                .name("Test Park")
+                                .address("123 Fake Ave")
+                                .rating("3.9")
+                                .build();
+                when(parkRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Park.class, 67L));
+                when(parkRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/parks?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Park with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                Park edited = Park.builder()
+                                .name("Test Park")
+                                .address("123 Fake Ave")
+                                .rating("3.9")
+                                .build();
+                when(parkRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(Park.builder().version(1L).build()))
+                                .thenReturn(Optional.of(Park.builder().version(2L).build()));
+                when(parkRepository.existsById(eq(67L))).thenReturn(true);
+                when(parkRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Park.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/parks?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(parkRepository, times(2)).findById(67L);
+        }
+
+        // Authorization tests for /api/parks PATCH
+
+        @Test
+        public void logged_out_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/parks?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"rating\":\"4.2\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/parks?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"rating\":\"4.2\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_Park() throws Exception {
+                // arrange
+
+                Park patched = Park.builder()
+                                .id(67L)
+                                .name("Test Park")
+                                .address("123 Fake Ave")
+                                .rating("4.2")
+                                .version(6L)
+                                .build();
+                when(mergePatchService.patch(eq(Park.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/parks?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\":\"4.2\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(Park.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"rating\":\"4.2\"}")), eq(5L));
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Park.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Park.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/parks?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\":\"4.2\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_Park_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Park.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/parks?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"rating\":\"4.2\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Park with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/parks?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[1]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                Park first = Park.builder()
+                                .id(6L)
+                                .name("Park 6")
+                                .address("6 Main St")
+                                .rating("5")
+                                .build();
+
+                Park second = Park.builder()
+                                .id(7L)
+                                .name("Park 7")
+                                .address("7 Main St")
+                                .rating("5")
+                                .build();
+
+                ArrayList<Park> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(parkRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/parks/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(parkRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(parkRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                Park last = Park.builder()
+                                .id(8L)
+                                .name("Park 8")
+                                .address("8 Main St")
+                                .rating("5")
+                                .build();
+
+                ArrayList<Park> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(parkRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/parks/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/parks/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/parks/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(parkRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/parks/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(Park.class), any(), eq(parkRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/parks/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(Park.class), any(), eq(parkRepository));
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 Park rows saved", json.get("message"));
+        }
 }
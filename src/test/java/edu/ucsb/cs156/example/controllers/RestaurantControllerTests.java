@@ -1,11 +1,16 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.controllers.RestaurantController;
 import edu.ucsb.cs156.example.entities.Restaurant;
 import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -13,8 +18,11 @@ import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -27,6 +35,7 @@ import java.util.Optional;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -41,6 +50,15 @@ public class RestaurantControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
         // Authorization tests for /api/restaurant/admin/all
 
         @Test
@@ -152,6 +170,27 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 assertEquals("Restaurant with id 10 not found", json.get("message"));
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_current_if_none_match_does_not_read_the_row() throws Exception {
+
+                // arrange
+
+                when(restaurantRepository.findVersion(Restaurant.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/restaurant?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andReturn();
+
+                // assert
+
+                verify(restaurantRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_user_can_get_all_restaurants() throws Exception {
@@ -242,7 +281,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                 .description("Burrito joint, and iconic Isla Vista location")
                                 .build();
 
-                when(restaurantRepository.findById(eq(6L))).thenReturn(Optional.of(freebirds));
+                when(restaurantRepository.deleteOne(eq(6L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -251,8 +290,8 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(restaurantRepository, times(1)).findById(6L);
-                verify(restaurantRepository, times(1)).delete(any());
+                verify(restaurantRepository, times(1)).deleteOne(6L);
+                verify(restaurantRepository, times(0)).findById(any());
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Restaurant with id 6 deleted", json.get("message"));
@@ -264,7 +303,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(restaurantRepository.findById(eq(10L))).thenReturn(Optional.empty());
+                when(restaurantRepository.deleteOne(eq(10L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -273,7 +312,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(restaurantRepository, times(1)).findById(10L);
+                verify(restaurantRepository, times(1)).deleteOne(10L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("Restaurant with id 10 not found", json.get("message"));
         }
@@ -284,6 +323,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 // arrange
 
                 Restaurant habitOrig = Restaurant.builder()
+                                .version(3L)
                                 .name("The Habit")
                                 .address("888 Embarcadero del Norte")
                                 .city("Isla Vista")
@@ -293,6 +333,8 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                 .build();
 
                 Restaurant habitEdited = Restaurant.builder()
+                                .id(4L)
+                                .version(3L)
                                 .name("The Habit Burger Grill")
                                 .address("5735 Hollister Ave.")
                                 .city("Goleta")
@@ -304,6 +346,7 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(habitEdited);
 
                 when(restaurantRepository.findById(eq(4L))).thenReturn(Optional.of(habitOrig));
+                when(restaurantRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -312,11 +355,13 @@ public class RestaurantControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(restaurantRepository, times(1)).findById(4L);
-                verify(restaurantRepository, times(1)).save(habitEdited); // should be saved with updated info
+                verify(restaurantRepository, times(1)).updateVersioned(habitEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -354,4 +399,510 @@ public class RestaurantControllerTests extends ControllerTestCase {
                 assertEquals("Restaurant with id 5 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                Restaurant edited = Restaurant.builder()
+                                .name("Freebirds")
+                                .address("879 Embarcadero del Norte")
+                                .city("Isla Vista")
+                                .state("CA")
+                                .zip("93117")
+                                .description("Burrito joint, and iconic Isla Vista location")
+                                .build();
+                when(restaurantRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        Restaurant row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/restaurant?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(restaurantRepository, times(0)).findById(any());
+                verify(restaurantRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                Restaurant edited = Restaurant.builder()
+                                .name("Freebirds")
+                                .address("879 Embarcadero del Norte")
+                                .city("Isla Vista")
+                                .state("CA")
+                                .zip("93117")
+                                .description("Burrito joint, and iconic Isla Vista location")
+                                .build();
+                when(restaurantRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Restaurant.class, 67L));
+                when(restaurantRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/restaurant?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/restaurant?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(restaurantRepository, times(1)).updateVersioned(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                Restaurant edited = Restaurant.builder()
+                                .name("Freebirds")
+                                .address("879 Embarcadero del Norte")
+                                .city("Isla Vista")
+                                .state("CA")
+                                .zip("93117")
+                                .description("Burrito joint, and iconic Isla Vista location")
+                                .build();
+                when(restaurantRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Restaurant.class, 67L));
+                when(restaurantRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/restaurant?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Restaurant with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                Restaurant edited = Restaurant.builder()
+                                .name("Freebirds")
+                                .address("879 Embarcadero del Norte")
+                                .city("Isla Vista")
+                                .state("CA")
+                                .zip("93117")
+                                .description("Burrito joint, and iconic Isla Vista location")
+                                .build();
+                when(restaurantRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(Restaurant.builder().version(1L).build()))
+                                .thenReturn(Optional.of(Restaurant.builder().version(2L).build()));
+                when(restaurantRepository.existsById(eq(67L))).thenReturn(true);
+                when(restaurantRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Restaurant.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/restaurant?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(restaurantRepository, times(2)).findById(67L);
+        }
+
+        // Authorization tests for /api/restaurant PATCH
+
+        @Test
+        public void logged_out_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/restaurant?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"description\":\"Closed Mondays\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/restaurant?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"description\":\"Closed Mondays\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_Restaurant() throws Exception {
+                // arrange
+
+                Restaurant patched = Restaurant.builder()
+                                .id(67L)
+                                .name("Freebirds")
+                                .address("879 Embarcadero del Norte")
+                                .city("Isla Vista")
+                                .state("CA")
+                                .zip("93117")
+                                .description("Closed Mondays")
+                                .version(6L)
+                                .build();
+                when(mergePatchService.patch(eq(Restaurant.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/restaurant?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"description\":\"Closed Mondays\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(Restaurant.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"description\":\"Closed Mondays\"}")), eq(5L));
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Restaurant.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(Restaurant.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/restaurant?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"description\":\"Closed Mondays\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_Restaurant_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(Restaurant.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/restaurant?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"description\":\"Closed Mondays\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("Restaurant with id 67 not found", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/restaurant?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[1]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                Restaurant first = Restaurant.builder()
+                                .id(6L)
+                                .name("Restaurant 6")
+                                .address("6 State St")
+                                .city("Santa Barbara")
+                                .state("CA")
+                                .zip("93101")
+                                .description("Tacos")
+                                .build();
+
+                Restaurant second = Restaurant.builder()
+                                .id(7L)
+                                .name("Restaurant 7")
+                                .address("7 State St")
+                                .city("Santa Barbara")
+                                .state("CA")
+                                .zip("93101")
+                                .description("Tacos")
+                                .build();
+
+                ArrayList<Restaurant> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(restaurantRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(restaurantRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(restaurantRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                Restaurant last = Restaurant.builder()
+                                .id(8L)
+                                .name("Restaurant 8")
+                                .address("8 State St")
+                                .city("Santa Barbara")
+                                .state("CA")
+                                .zip("93101")
+                                .description("Tacos")
+                                .build();
+
+                ArrayList<Restaurant> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(restaurantRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/restaurant/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/restaurant/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(restaurantRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/restaurant/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(Restaurant.class), any(), eq(restaurantRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/restaurant/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(Restaurant.class), any(), eq(restaurantRepository));
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 Restaurant rows saved", json.get("message"));
+        }
+
+        // Tests for GET /api/restaurant/search
+
+        @Test
+        public void logged_out_users_cannot_search() throws Exception {
+                mockMvc.perform(get("/api/restaurant/search?city=Goleta"))
+                                .andExpect(status().is(403));
+        }
+
+        private Restaurant goletaRestaurant(long id) {
+                return Restaurant.builder()
+                                .id(id)
+                                .name("Restaurant " + id)
+                                .address(id + " Hollister Ave")
+                                .city("Goleta")
+                                .state("CA")
+                                .zip("93117")
+                                .description("Burritos")
+                                .build();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_by_state_and_city() throws Exception {
+
+                // arrange
+
+                ArrayList<Restaurant> expected = new ArrayList<>(Arrays.asList(goletaRestaurant(3L)));
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(restaurantRepository.findByStateAndCityAndIdGreaterThan(eq("CA"), eq("Goleta"), eq(0L), eq(page)))
+                                .thenReturn(expected);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/search?state=CA&city=Goleta"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                verify(restaurantRepository, times(1)).findByStateAndCityAndIdGreaterThan(eq("CA"), eq("Goleta"), eq(0L), eq(page));
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_by_state() throws Exception {
+
+                // arrange
+
+                ArrayList<Restaurant> expected = new ArrayList<>(Arrays.asList(goletaRestaurant(3L)));
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(restaurantRepository.findByStateAndIdGreaterThan(eq("CA"), eq(0L), eq(page))).thenReturn(expected);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/search?state=CA"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(restaurantRepository, times(1)).findByStateAndIdGreaterThan(eq("CA"), eq(0L), eq(page));
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_by_city_and_gets_next_cursor() throws Exception {
+
+                // arrange
+
+                ArrayList<Restaurant> expected = new ArrayList<>(Arrays.asList(goletaRestaurant(11L), goletaRestaurant(12L)));
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(restaurantRepository.findByCityAndIdGreaterThan(eq("Goleta"), eq(10L), eq(page))).thenReturn(expected);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/search?city=Goleta&after=10&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "12"))
+                                .andReturn();
+
+                // assert
+
+                verify(restaurantRepository, times(1)).findByCityAndIdGreaterThan(eq("Goleta"), eq(10L), eq(page));
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_search_by_zip() throws Exception {
+
+                // arrange
+
+                ArrayList<Restaurant> expected = new ArrayList<>(Arrays.asList(goletaRestaurant(3L)));
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(restaurantRepository.findByZipAndIdGreaterThan(eq("93117"), eq(0L), eq(page))).thenReturn(expected);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/restaurant/search?zip=93117"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(restaurantRepository, times(1)).findByZipAndIdGreaterThan(eq("93117"), eq(0L), eq(page));
+                assertEquals(mapper.writeValueAsString(expected), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void search_rejects_zip_combined_with_city() throws Exception {
+                mockMvc.perform(get("/api/restaurant/search?zip=93117&city=Goleta"))
+                                .andExpect(status().isBadRequest());
+                verify(restaurantRepository, times(0)).findByZipAndIdGreaterThan(any(), eq(0L), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void search_requires_at_least_one_location_parameter() throws Exception {
+                mockMvc.perform(get("/api/restaurant/search"))
+                                .andExpect(status().isBadRequest());
+        }
 }
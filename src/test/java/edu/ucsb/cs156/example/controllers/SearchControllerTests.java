@@ -0,0 +1,95 @@
+package edu.ucsb.cs156.example.controllers;
+
+import edu.ucsb.cs156.example.ControllerTestCase;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+import edu.ucsb.cs156.example.services.SearchIndexService;
+import edu.ucsb.cs156.example.testconfig.TestConfig;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.test.context.support.WithMockUser;
+import org.springframework.test.web.servlet.MvcResult;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.security.test.web.servlet.request.SecurityMockMvcRequestPostProcessors.csrf;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import java.util.Map;
+
+@WebMvcTest(controllers = SearchController.class)
+@Import(TestConfig.class)
+public class SearchControllerTests extends ControllerTestCase {
+
+  @MockBean
+  SearchIndexService searchIndexService;
+
+  @MockBean
+  UserRepository userRepository;
+
+  @Test
+  public void logged_out_users_cannot_search() throws Exception {
+    mockMvc.perform(get("/api/search?q=taco"))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = { "USER" })
+  @Test
+  public void logged_in_user_can_search() throws Exception {
+    List<SearchHit> hits = List.of(new SearchHit("restaurants", "2", "Taco Bell", 1.5f));
+    when(searchIndexService.search("taco", List.of("restaurants", "books"), 20)).thenReturn(hits);
+
+    MvcResult response = mockMvc.perform(get("/api/search?q=taco&types=restaurants,books"))
+        .andExpect(status().isOk()).andReturn();
+
+    assertEquals(mapper.writeValueAsString(hits), response.getResponse().getContentAsString());
+  }
+
+  @WithMockUser(roles = { "USER" })
+  @Test
+  public void limit_is_capped() throws Exception {
+    when(searchIndexService.search("taco", null, SearchController.MAX_RESULTS)).thenReturn(List.of());
+
+    mockMvc.perform(get("/api/search?q=taco&limit=100000"))
+        .andExpect(status().isOk());
+
+    verify(searchIndexService).search("taco", null, SearchController.MAX_RESULTS);
+  }
+
+  @WithMockUser(roles = { "USER" })
+  @Test
+  public void unknown_types_are_rejected() throws Exception {
+    mockMvc.perform(get("/api/search?q=taco&types=users"))
+        .andExpect(status().isBadRequest());
+
+    verify(searchIndexService, never()).search(eq("taco"), eq(List.of("users")), eq(20));
+  }
+
+  @WithMockUser(roles = { "USER" })
+  @Test
+  public void regular_users_cannot_reindex() throws Exception {
+    mockMvc.perform(post("/api/search/reindex").with(csrf()))
+        .andExpect(status().is(403));
+  }
+
+  @WithMockUser(roles = { "ADMIN", "USER" })
+  @Test
+  public void admin_can_reindex() throws Exception {
+    when(searchIndexService.reindex()).thenReturn(42L);
+
+    MvcResult response = mockMvc.perform(post("/api/search/reindex").with(csrf()))
+        .andExpect(status().isOk()).andReturn();
+
+    assertEquals(mapper.writeValueAsString(Map.of("message", "42 documents indexed")),
+        response.getResponse().getContentAsString());
+  }
+}
@@ -1,10 +1,16 @@
 package edu.ucsb.cs156.example.controllers;
 
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import edu.ucsb.cs156.example.repositories.UserRepository;
 import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.UCSBDate;
 import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.UCSBDateTimelineService;
 
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -12,8 +18,11 @@ import java.util.Map;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
 import org.springframework.context.annotation.Import;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -26,8 +35,11 @@ import java.time.LocalDateTime;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -42,6 +54,18 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        UCSBDateTimelineService ucsbDateTimeline;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
         // Authorization tests for /api/ucsbdates/admin/all
 
         @Test
@@ -128,6 +152,27 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                 assertEquals("UCSBDate with id 7 not found", json.get("message"));
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void test_get_by_id_with_a_current_if_none_match_does_not_read_the_row() throws Exception {
+
+                // arrange
+
+                when(ucsbDateRepository.findVersion(UCSBDate.class, 7L)).thenReturn(Optional.of(4L));
+
+                // act
+
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates?id=7").header("If-None-Match", "\"4\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"4\""))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, never()).findById(any());
+                assertEquals("", response.getResponse().getContentAsString());
+        }
+
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_user_can_get_all_ucsbdates() throws Exception {
@@ -189,6 +234,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
 
                 // assert
                 verify(ucsbDateRepository, times(1)).save(ucsbDate1);
+                verify(ucsbDateTimeline, times(1)).put(ucsbDate1);
                 String expectedJson = mapper.writeValueAsString(ucsbDate1);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
@@ -207,7 +253,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .localDateTime(ldt1)
                                 .build();
 
-                when(ucsbDateRepository.findById(eq(15L))).thenReturn(Optional.of(ucsbDate1));
+                when(ucsbDateRepository.deleteOne(eq(15L))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -216,8 +262,9 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(15L);
-                verify(ucsbDateRepository, times(1)).delete(any());
+                verify(ucsbDateRepository, times(1)).deleteOne(15L);
+                verify(ucsbDateRepository, times(0)).findById(any());
+                verify(ucsbDateTimeline, times(1)).remove(15L);
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 15 deleted", json.get("message"));
@@ -229,7 +276,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(ucsbDateRepository.findById(eq(15L))).thenReturn(Optional.empty());
+                when(ucsbDateRepository.deleteOne(eq(15L))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -238,7 +285,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDateRepository, times(1)).findById(15L);
+                verify(ucsbDateRepository, times(1)).deleteOne(15L);
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDate with id 15 not found", json.get("message"));
         }
@@ -252,12 +299,15 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                 LocalDateTime ldt2 = LocalDateTime.parse("2023-01-03T00:00:00");
 
                 UCSBDate ucsbDateOrig = UCSBDate.builder()
+                                .version(3L)
                                 .name("firstDayOfClasses")
                                 .quarterYYYYQ("20222")
                                 .localDateTime(ldt1)
                                 .build();
 
                 UCSBDate ucsbDateEdited = UCSBDate.builder()
+                                .id(67L)
+                                .version(3L)
                                 .name("firstDayOfFestivus")
                                 .quarterYYYYQ("20232")
                                 .localDateTime(ldt2)
@@ -266,6 +316,7 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(ucsbDateEdited);
 
                 when(ucsbDateRepository.findById(eq(67L))).thenReturn(Optional.of(ucsbDateOrig));
+                when(ucsbDateRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -274,11 +325,14 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(ucsbDateRepository, times(1)).findById(67L);
-                verify(ucsbDateRepository, times(1)).save(ucsbDateEdited); // should be saved with correct user
+                verify(ucsbDateRepository, times(1)).updateVersioned(ucsbDateEdited);
+                verify(ucsbDateTimeline, times(1)).put(ucsbDateEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -315,4 +369,504 @@ public class UCSBDatesControllerTests extends ControllerTestCase {
                 assertEquals("UCSBDate with id 67 not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+                when(ucsbDateRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        UCSBDate row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(ucsbDateRepository, times(0)).findById(any());
+                verify(ucsbDateRepository, times(1)).updateVersioned(any());
+                verify(ucsbDateTimeline, times(1)).put(argThat(row -> row.getId() == 67L && row.getVersion() == 6L));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+                when(ucsbDateRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDate.class, 67L));
+                when(ucsbDateRepository.existsById(eq(67L))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(ucsbDateRepository, times(1)).updateVersioned(any());
+                verify(ucsbDateTimeline, times(0)).put(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+                when(ucsbDateRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDate.class, 67L));
+                when(ucsbDateRepository.existsById(eq(67L))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDate with id 67 not found", json.get("message"));
+                verify(ucsbDateTimeline, times(0)).put(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                UCSBDate edited = UCSBDate.builder()
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+                when(ucsbDateRepository.findById(eq(67L)))
+                                .thenReturn(Optional.of(UCSBDate.builder().version(1L).build()))
+                                .thenReturn(Optional.of(UCSBDate.builder().version(2L).build()));
+                when(ucsbDateRepository.existsById(eq(67L))).thenReturn(true);
+                when(ucsbDateRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDate.class, 67L))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/ucsbdates?id=67")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(ucsbDateRepository, times(2)).findById(67L);
+                verify(ucsbDateTimeline, times(1)).put(argThat(row -> row.getId() == 67L && row.getVersion() == 2L));
+        }
+
+        // Authorization tests for /api/ucsbdates PATCH
+
+        @Test
+        public void logged_out_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/ucsbdates?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"name\":\"lastDayOfClasses\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_patch() throws Exception {
+                mockMvc.perform(patch("/api/ucsbdates?id=67")
+                                .contentType("application/merge-patch+json")
+                                .content("{\"name\":\"lastDayOfClasses\"}")
+                                .with(csrf()))
+                                .andExpect(status().is(403));
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_some_fields_of_a_UCSBDate() throws Exception {
+                // arrange
+
+                UCSBDate patched = UCSBDate.builder()
+                                .id(67L)
+                                .name("lastDayOfClasses")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .version(6L)
+                                .build();
+                when(mergePatchService.patch(eq(UCSBDate.class), eq(67L), any(), eq(5L))).thenReturn(Optional.of(patched));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\":\"lastDayOfClasses\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andReturn();
+
+                // assert
+                verify(mergePatchService, times(1)).patch(eq(UCSBDate.class), eq(67L),
+                                eq((ObjectNode) mapper.readTree("{\"name\":\"lastDayOfClasses\"}")), eq(5L));
+                verify(ucsbDateTimeline, times(1)).put(patched);
+                assertEquals(mapper.writeValueAsString(patched), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_patch_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(UCSBDate.class), eq(67L), any(), eq(5L)))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDate.class, 67L));
+
+                // act
+                mockMvc.perform(
+                                patch("/api/ucsbdates?id=67")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\":\"lastDayOfClasses\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(mergePatchService, times(1)).patch(any(), any(), any(), any());
+                verify(ucsbDateTimeline, times(0)).put(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_cannot_patch_a_UCSBDate_that_does_not_exist() throws Exception {
+                // arrange
+
+                when(mergePatchService.patch(eq(UCSBDate.class), eq(67L), any(), eq(null))).thenReturn(Optional.empty());
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                patch("/api/ucsbdates?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"name\":\"lastDayOfClasses\"}")
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDate with id 67 not found", json.get("message"));
+                verify(ucsbDateTimeline, times(0)).put(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void a_merge_patch_must_be_an_object() throws Exception {
+                mockMvc.perform(
+                                patch("/api/ucsbdates?id=67")
+                                                .contentType("application/merge-patch+json")
+                                                .content("[1]")
+                                                .with(csrf()))
+                                .andExpect(status().isBadRequest());
+
+                verify(mergePatchService, times(0)).patch(any(), any(), any(), any());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                UCSBDate first = UCSBDate.builder()
+                                .id(6L)
+                                .name("day6")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                UCSBDate second = UCSBDate.builder()
+                                .id(7L)
+                                .name("day7")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                ArrayList<UCSBDate> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                PageRequest page = PageRequest.of(0, 2, Sort.by("id"));
+                when(ucsbDateRepository.findByIdGreaterThan(eq(5L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/all?after=5&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "7"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findByIdGreaterThan(eq(5L), eq(page));
+                verify(ucsbDateRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                UCSBDate last = UCSBDate.builder()
+                                .id(8L)
+                                .name("day8")
+                                .quarterYYYYQ("20222")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                ArrayList<UCSBDate> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                PageRequest page = PageRequest.of(0, ApiController.DEFAULT_PAGE_SIZE, Sort.by("id"));
+                when(ucsbDateRepository.findByIdGreaterThan(eq(7L), eq(page))).thenReturn(expectedPage);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/all?after=7"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/ucsbdates/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(ucsbDateRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/ucsbdates/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.ingest(any(), eq(UCSBDate.class), any(), eq(ucsbDateRepository))).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/ucsbdates/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).ingest(any(), eq(UCSBDate.class), any(), eq(ucsbDateRepository));
+                verify(ucsbDateTimeline, times(1)).reload();
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 UCSBDate rows saved", json.get("message"));
+        }
+
+        // Tests for GET /api/ucsbdates/range and /upcoming
+
+        @Test
+        public void logged_out_users_cannot_get_range_or_upcoming() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/range?from=2022-01-01T00:00:00&to=2022-02-01T00:00:00"))
+                                .andExpect(status().is(403));
+                mockMvc.perform(get("/api/ucsbdates/upcoming"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_dates_in_a_range() throws Exception {
+
+                // arrange
+
+                LocalDateTime from = LocalDateTime.parse("2022-01-01T00:00:00");
+                LocalDateTime to = LocalDateTime.parse("2022-02-01T00:00:00");
+
+                UCSBDate ucsbDate1 = UCSBDate.builder()
+                                .id(1L)
+                                .name("firstDayOfClasses")
+                                .quarterYYYYQ("20221")
+                                .localDateTime(LocalDateTime.parse("2022-01-03T00:00:00"))
+                                .build();
+
+                ArrayList<UCSBDate> expectedDates = new ArrayList<>(Arrays.asList(ucsbDate1));
+                PageRequest page = PageRequest.of(0, 50, Sort.by("localDateTime", "id"));
+                when(ucsbDateRepository.findInRangeAfter(eq(from), eq(Long.MIN_VALUE), eq(to), eq(page)))
+                                .thenReturn(expectedDates);
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/range?from=2022-01-01T00:00:00&to=2022-02-01T00:00:00&limit=50"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateRepository, times(1)).findInRangeAfter(eq(from), eq(Long.MIN_VALUE), eq(to), eq(page));
+                verify(ucsbDateRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(expectedDates), response.getResponse().getContentAsString());
+                assertNull(response.getResponse().getHeader(ApiController.NEXT_CURSOR_HEADER));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void a_full_range_page_has_a_cursor_that_fetches_the_next_one() throws Exception {
+
+                // arrange
+
+                LocalDateTime from = LocalDateTime.parse("2022-01-01T00:00:00");
+                LocalDateTime to = LocalDateTime.parse("2022-02-01T00:00:00");
+                LocalDateTime jan3 = LocalDateTime.parse("2022-01-03T00:00:00");
+
+                UCSBDate ucsbDate1 = UCSBDate.builder().id(7L).name("firstDayOfClasses").quarterYYYYQ("20221")
+                                .localDateTime(jan3).build();
+                UCSBDate ucsbDate2 = UCSBDate.builder().id(2L).name("addDeadline").quarterYYYYQ("20221")
+                                .localDateTime(LocalDateTime.parse("2022-01-21T00:00:00")).build();
+
+                PageRequest page = PageRequest.of(0, 1, Sort.by("localDateTime", "id"));
+                when(ucsbDateRepository.findInRangeAfter(eq(from), eq(Long.MIN_VALUE), eq(to), eq(page)))
+                                .thenReturn(Arrays.asList(ucsbDate1));
+                when(ucsbDateRepository.findInRangeAfter(eq(jan3), eq(7L), eq(to), eq(page)))
+                                .thenReturn(Arrays.asList(ucsbDate2));
+
+                // act
+
+                MvcResult first = mockMvc.perform(get("/api/ucsbdates/range?from=2022-01-01T00:00:00&to=2022-02-01T00:00:00&limit=1"))
+                                .andExpect(status().isOk()).andReturn();
+                String cursor = first.getResponse().getHeader(ApiController.NEXT_CURSOR_HEADER);
+                MvcResult second = mockMvc.perform(get("/api/ucsbdates/range").param("from", "2022-01-01T00:00:00")
+                                .param("to", "2022-02-01T00:00:00").param("limit", "1").param("after", cursor))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                assertEquals("2022-01-03T00:00,7", cursor);
+                assertEquals(mapper.writeValueAsString(Arrays.asList(ucsbDate1)), first.getResponse().getContentAsString());
+                assertEquals(mapper.writeValueAsString(Arrays.asList(ucsbDate2)), second.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_rejects_a_cursor_it_did_not_issue() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/range?from=2022-01-01T00:00:00&to=2022-02-01T00:00:00&after=7"))
+                                .andExpect(status().isBadRequest());
+                mockMvc.perform(get("/api/ucsbdates/range?from=2022-01-01T00:00:00&to=2022-02-01T00:00:00&after=2022-01-03T00:00,x"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void range_rejects_to_before_from() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/range?from=2022-02-01T00:00:00&to=2022-01-01T00:00:00"))
+                                .andExpect(status().isBadRequest());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_upcoming_dates_from_the_timeline() throws Exception {
+
+                // arrange
+
+                UCSBDate ucsbDate1 = UCSBDate.builder()
+                                .id(1L)
+                                .name("lastDayOfClasses")
+                                .quarterYYYYQ("20231")
+                                .localDateTime(LocalDateTime.parse("2023-03-17T00:00:00"))
+                                .build();
+
+                when(ucsbDateTimeline.upcoming(eq(10))).thenReturn(Arrays.asList(ucsbDate1));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdates/upcoming"))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+
+                verify(ucsbDateTimeline, times(1)).upcoming(10);
+                verify(ucsbDateRepository, times(0)).findAll();
+                assertEquals(mapper.writeValueAsString(Arrays.asList(ucsbDate1)), response.getResponse().getContentAsString());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void upcoming_limit_is_clamped() throws Exception {
+                mockMvc.perform(get("/api/ucsbdates/upcoming?limit=100000"))
+                                .andExpect(status().isOk());
+                verify(ucsbDateTimeline, times(1)).upcoming(ApiController.MAX_PAGE_SIZE);
+        }
 }
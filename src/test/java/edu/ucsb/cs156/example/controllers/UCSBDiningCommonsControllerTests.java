@@ -5,15 +5,23 @@ import edu.ucsb.cs156.example.testconfig.TestConfig;
 import edu.ucsb.cs156.example.ControllerTestCase;
 import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
 import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import edu.ucsb.cs156.example.services.BulkIngestService;
+import edu.ucsb.cs156.example.services.MergePatchService;
+import edu.ucsb.cs156.example.services.NdjsonExportService;
+import edu.ucsb.cs156.example.services.UCSBDiningCommonsSnapshotService;
+import edu.ucsb.cs156.example.services.UCSBDiningCommonsSnapshotService.Snapshot;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Map;
+import java.util.TreeMap;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.web.servlet.MvcResult;
 
@@ -25,6 +33,7 @@ import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -40,6 +49,26 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
         @MockBean
         UserRepository userRepository;
 
+        @MockBean
+        NdjsonExportService ndjsonExportService;
+
+        @MockBean
+        BulkIngestService bulkIngestService;
+
+        @MockBean
+        UCSBDiningCommonsSnapshotService ucsbDiningCommonsSnapshot;
+
+        @MockBean
+        MergePatchService mergePatchService;
+
+        private Snapshot snapshotOf(long version, UCSBDiningCommons... commons) {
+                TreeMap<String, UCSBDiningCommons> byCode = new TreeMap<>();
+                for (UCSBDiningCommons c : commons) {
+                        byCode.put(c.getCode(), c);
+                }
+                return new Snapshot(version, byCode);
+        }
+
         // Authorization tests for /api/ucsbdiningcommons/admin/all
 
         @Test
@@ -51,6 +80,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
         @WithMockUser(roles = { "USER" })
         @Test
         public void logged_in_users_can_get_all() throws Exception {
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(1L));
                 mockMvc.perform(get("/api/ucsbdiningcommons/all"))
                                 .andExpect(status().is(200)); // logged
         }
@@ -95,15 +125,17 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .longitude(-119.85277)
                                 .build();
 
-                when(ucsbDiningCommonsRepository.findById(eq("carrillo"))).thenReturn(Optional.of(commons));
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(7L, commons));
 
                 // act
                 MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons?code=carrillo"))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(UCSBDiningCommonsSnapshotService.SNAPSHOT_VERSION_HEADER, "7"))
+                                .andReturn();
 
                 // assert
 
-                verify(ucsbDiningCommonsRepository, times(1)).findById(eq("carrillo"));
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
                 String expectedJson = mapper.writeValueAsString(commons);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
@@ -115,7 +147,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
                 // arrange
 
-                when(ucsbDiningCommonsRepository.findById(eq("munger-hall"))).thenReturn(Optional.empty());
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(7L));
 
                 // act
                 MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons?code=munger-hall"))
@@ -123,7 +155,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
                 // assert
 
-                verify(ucsbDiningCommonsRepository, times(1)).findById(eq("munger-hall"));
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("EntityNotFoundException", json.get("type"));
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
@@ -158,20 +190,58 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                 ArrayList<UCSBDiningCommons> expectedCommons = new ArrayList<>();
                 expectedCommons.addAll(Arrays.asList(carrillo, dlg));
 
-                when(ucsbDiningCommonsRepository.findAll()).thenReturn(expectedCommons);
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(3L, dlg, carrillo));
 
                 // act
                 MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all"))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(UCSBDiningCommonsSnapshotService.SNAPSHOT_VERSION_HEADER, "3"))
+                                .andExpect(header().string("ETag", "\"ucsbdiningcommons-3\""))
+                                .andReturn();
 
                 // assert
 
-                verify(ucsbDiningCommonsRepository, times(1)).findAll();
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
                 String expectedJson = mapper.writeValueAsString(expectedCommons);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
         }
 
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void all_commons_is_not_modified_while_the_snapshot_is_unchanged() throws Exception {
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(3L));
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/all").header("If-None-Match", "\"ucsbdiningcommons-3\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("Vary", "Accept-Encoding"));
+                mockMvc.perform(get("/api/ucsbdiningcommons/all").header("Accept-Encoding", "gzip")
+                                .header("If-None-Match", "\"ucsbdiningcommons-3-gzip\""))
+                                .andExpect(status().isNotModified())
+                                .andExpect(header().string("ETag", "\"ucsbdiningcommons-3-gzip\""));
+                mockMvc.perform(get("/api/ucsbdiningcommons/all").header("If-None-Match", "\"ucsbdiningcommons-2\""))
+                                .andExpect(status().isOk());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_can_patch_a_commons_and_the_snapshot_follows() throws Exception {
+                UCSBDiningCommons patched = UCSBDiningCommons.builder().code("ortega").name("Ortega")
+                                .hasSackMeal(true).version(2L).build();
+                when(mergePatchService.patch(eq(UCSBDiningCommons.class), eq("ortega"), any(), eq(null)))
+                                .thenReturn(Optional.of(patched));
+
+                mockMvc.perform(
+                                patch("/api/ucsbdiningcommons?code=ortega")
+                                                .contentType("application/merge-patch+json")
+                                                .content("{\"hasSackMeal\":true}")
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                verify(ucsbDiningCommonsSnapshot, times(1)).put(patched);
+        }
+
         @WithMockUser(roles = { "ADMIN", "USER" })
         @Test
         public void an_admin_user_can_post_a_new_commons() throws Exception {
@@ -197,6 +267,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
 
                 // assert
                 verify(ucsbDiningCommonsRepository, times(1)).save(ortega);
+                verify(ucsbDiningCommonsSnapshot, times(1)).put(ortega);
                 String expectedJson = mapper.writeValueAsString(ortega);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(expectedJson, responseString);
@@ -217,7 +288,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .longitude(-119.867427)
                                 .build();
 
-                when(ucsbDiningCommonsRepository.findById(eq("portola"))).thenReturn(Optional.of(portola));
+                when(ucsbDiningCommonsRepository.deleteOne(eq("portola"))).thenReturn(1);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -226,8 +297,9 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isOk()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("portola");
-                verify(ucsbDiningCommonsRepository, times(1)).delete(any());
+                verify(ucsbDiningCommonsRepository, times(1)).deleteOne("portola");
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
+                verify(ucsbDiningCommonsSnapshot, times(1)).remove("portola");
 
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id portola deleted", json.get("message"));
@@ -239,7 +311,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                         throws Exception {
                 // arrange
 
-                when(ucsbDiningCommonsRepository.findById(eq("munger-hall"))).thenReturn(Optional.empty());
+                when(ucsbDiningCommonsRepository.deleteOne(eq("munger-hall"))).thenReturn(0);
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -248,7 +320,8 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .andExpect(status().isNotFound()).andReturn();
 
                 // assert
-                verify(ucsbDiningCommonsRepository, times(1)).findById("munger-hall");
+                verify(ucsbDiningCommonsRepository, times(1)).deleteOne("munger-hall");
+                verify(ucsbDiningCommonsSnapshot, times(0)).remove(any());
                 Map<String, Object> json = responseToJson(response);
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
         }
@@ -259,6 +332,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                 // arrange
 
                 UCSBDiningCommons carrilloOrig = UCSBDiningCommons.builder()
+                                .version(3L)
                                 .name("Carrillo")
                                 .code("carrillo")
                                 .hasSackMeal(false)
@@ -269,6 +343,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                 .build();
 
                 UCSBDiningCommons carrilloEdited = UCSBDiningCommons.builder()
+                                .version(3L)
                                 .name("Carrillo Dining Hall")
                                 .code("carrillo")
                                 .hasSackMeal(true)
@@ -281,6 +356,7 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                 String requestBody = mapper.writeValueAsString(carrilloEdited);
 
                 when(ucsbDiningCommonsRepository.findById(eq("carrillo"))).thenReturn(Optional.of(carrilloOrig));
+                when(ucsbDiningCommonsRepository.updateVersioned(any())).thenAnswer(invocation -> invocation.getArgument(0));
 
                 // act
                 MvcResult response = mockMvc.perform(
@@ -289,11 +365,14 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                                                 .characterEncoding("utf-8")
                                                 .content(requestBody)
                                                 .with(csrf()))
-                                .andExpect(status().isOk()).andReturn();
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"3\""))
+                                .andReturn();
 
                 // assert
                 verify(ucsbDiningCommonsRepository, times(1)).findById("carrillo");
-                verify(ucsbDiningCommonsRepository, times(1)).save(carrilloEdited); // should be saved with updated info
+                verify(ucsbDiningCommonsRepository, times(1)).updateVersioned(carrilloEdited);
+                verify(ucsbDiningCommonsSnapshot, times(1)).put(carrilloEdited);
                 String responseString = response.getResponse().getContentAsString();
                 assertEquals(requestBody, responseString);
         }
@@ -332,4 +411,401 @@ public class UCSBDiningCommonsControllerTests extends ControllerTestCase {
                 assertEquals("UCSBDiningCommons with id munger-hall not found", json.get("message"));
 
         }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_is_one_conditional_update() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .name("Carrillo Dining Hall")
+                                .hasSackMeal(true)
+                                .hasTakeOutMeal(true)
+                                .hasDiningCam(false)
+                                .latitude(34.409954)
+                                .longitude(-119.85278)
+                                .build();
+                when(ucsbDiningCommonsRepository.updateVersioned(any())).thenAnswer(invocation -> {
+                        UCSBDiningCommons row = invocation.getArgument(0);
+                        assertEquals(5L, row.getVersion());
+                        row.setVersion(6L);
+                        return row;
+                });
+
+                // act
+                mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"6\""))
+                                .andExpect(jsonPath("$.version").value(6));
+
+                // assert
+                verify(ucsbDiningCommonsRepository, times(0)).findById(any());
+                verify(ucsbDiningCommonsRepository, times(1)).updateVersioned(any());
+                verify(ucsbDiningCommonsSnapshot, times(1)).put(argThat(row -> "carrillo".equals(row.getCode()) && row.getVersion() == 6L));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_a_stale_if_match_is_412() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .name("Carrillo Dining Hall")
+                                .hasSackMeal(true)
+                                .hasTakeOutMeal(true)
+                                .hasDiningCam(false)
+                                .latitude(34.409954)
+                                .longitude(-119.85278)
+                                .build();
+                when(ucsbDiningCommonsRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDiningCommons.class, "carrillo"));
+                when(ucsbDiningCommonsRepository.existsById(eq("carrillo"))).thenReturn(true);
+
+                // act
+                mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // a tag that is not one of our versions can never match
+                mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .header("If-Match", "W/\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isPreconditionFailed());
+
+                // assert
+                verify(ucsbDiningCommonsRepository, times(1)).updateVersioned(any());
+                verify(ucsbDiningCommonsSnapshot, times(0)).put(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_with_if_match_of_a_missing_row_is_404() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .name("Carrillo Dining Hall")
+                                .hasSackMeal(true)
+                                .hasTakeOutMeal(true)
+                                .hasDiningCam(false)
+                                .latitude(34.409954)
+                                .longitude(-119.85278)
+                                .build();
+                when(ucsbDiningCommonsRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDiningCommons.class, "carrillo"));
+                when(ucsbDiningCommonsRepository.existsById(eq("carrillo"))).thenReturn(false);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .header("If-Match", "\"5\"")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isNotFound()).andReturn();
+
+                // assert
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("UCSBDiningCommons with id carrillo not found", json.get("message"));
+                verify(ucsbDiningCommonsSnapshot, times(0)).put(any());
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void admin_edit_without_if_match_retries_a_lost_race() throws Exception {
+                // arrange
+
+                UCSBDiningCommons edited = UCSBDiningCommons.builder()
+                                .name("Carrillo Dining Hall")
+                                .hasSackMeal(true)
+                                .hasTakeOutMeal(true)
+                                .hasDiningCam(false)
+                                .latitude(34.409954)
+                                .longitude(-119.85278)
+                                .build();
+                when(ucsbDiningCommonsRepository.findById(eq("carrillo")))
+                                .thenReturn(Optional.of(UCSBDiningCommons.builder().version(1L).build()))
+                                .thenReturn(Optional.of(UCSBDiningCommons.builder().version(2L).build()));
+                when(ucsbDiningCommonsRepository.existsById(eq("carrillo"))).thenReturn(true);
+                when(ucsbDiningCommonsRepository.updateVersioned(any()))
+                                .thenThrow(new ObjectOptimisticLockingFailureException(UCSBDiningCommons.class, "carrillo"))
+                                .thenAnswer(invocation -> invocation.getArgument(0));
+
+                // act
+                mockMvc.perform(
+                                put("/api/ucsbdiningcommons?code=carrillo")
+                                                .contentType(MediaType.APPLICATION_JSON)
+                                                .content(mapper.writeValueAsString(edited))
+                                                .with(csrf()))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string("ETag", "\"2\""));
+
+                // assert
+                verify(ucsbDiningCommonsRepository, times(2)).findById("carrillo");
+                verify(ucsbDiningCommonsSnapshot, times(1)).put(argThat(row -> "carrillo".equals(row.getCode()) && row.getVersion() == 2L));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_next_cursor_when_keyset_page_is_full() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons first = UCSBDiningCommons.builder()
+                                .code("carrillo")
+                                .name("Carrillo")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                UCSBDiningCommons second = UCSBDiningCommons.builder()
+                                .code("de-la-guerra")
+                                .name("De La Guerra")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                ArrayList<UCSBDiningCommons> expectedPage = new ArrayList<>();
+                expectedPage.addAll(Arrays.asList(first, second));
+
+                UCSBDiningCommons before = UCSBDiningCommons.builder().code("anacapa").name("Anacapa").build();
+                UCSBDiningCommons after = UCSBDiningCommons.builder().code("ortega").name("Ortega").build();
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(1L, after, second, first, before));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all?after=bates&limit=2"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(ApiController.NEXT_CURSOR_HEADER, "de-la-guerra"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_gets_no_next_cursor_on_last_keyset_page() throws Exception {
+
+                // arrange
+
+                UCSBDiningCommons last = UCSBDiningCommons.builder()
+                                .code("ortega")
+                                .name("Ortega")
+                                .hasSackMeal(false)
+                                .hasTakeOutMeal(false)
+                                .hasDiningCam(true)
+                                .latitude(34.409953)
+                                .longitude(-119.85277)
+                                .build();
+
+                ArrayList<UCSBDiningCommons> expectedPage = new ArrayList<>();
+                expectedPage.add(last);
+
+                UCSBDiningCommons dlg = UCSBDiningCommons.builder().code("de-la-guerra").name("De La Guerra").build();
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(1L, dlg, last));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/all?after=de-la-guerra"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().doesNotExist(ApiController.NEXT_CURSOR_HEADER))
+                                .andReturn();
+
+                // assert
+
+                String expectedJson = mapper.writeValueAsString(expectedPage);
+                String responseString = response.getResponse().getContentAsString();
+                assertEquals(expectedJson, responseString);
+        }
+
+        @Test
+        public void logged_out_users_cannot_stream_all() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_stream_all_as_ndjson() throws Exception {
+                // act
+                MvcResult started = mockMvc.perform(get("/api/ucsbdiningcommons/all").accept(NdjsonExportService.APPLICATION_NDJSON_VALUE))
+                                .andExpect(request().asyncStarted()).andReturn();
+
+                mockMvc.perform(asyncDispatch(started))
+                                .andExpect(status().isOk())
+                                .andExpect(content().contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE));
+
+                // assert
+                verify(ndjsonExportService, times(1)).export(any(), any());
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_regular_users_cannot_post_bulk() throws Exception {
+                mockMvc.perform(post("/api/ucsbdiningcommons/bulk")
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("[]")
+                                .with(csrf()))
+                                .andExpect(status().is(403)); // only admins can post
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void an_admin_user_can_post_many_rows_in_bulk() throws Exception {
+                // arrange
+
+                when(bulkIngestService.insert(any(), eq(UCSBDiningCommons.class), any())).thenReturn(3L);
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/ucsbdiningcommons/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{}\n{}\n{}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isOk()).andReturn();
+
+                // assert
+                verify(bulkIngestService, times(1)).insert(any(), eq(UCSBDiningCommons.class), any());
+                verify(ucsbDiningCommonsRepository, times(0)).saveAll(any());
+                verify(ucsbDiningCommonsSnapshot, times(1)).reload();
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("3 UCSBDiningCommons rows saved", json.get("message"));
+        }
+
+        @WithMockUser(roles = { "ADMIN", "USER" })
+        @Test
+        public void bulk_rows_with_an_existing_code_are_a_409() throws Exception {
+                // arrange
+
+                when(bulkIngestService.insert(any(), eq(UCSBDiningCommons.class), any())).thenThrow(new DuplicateKeyException(
+                                "a UCSBDiningCommons with the same key already exists in rows 1001 to 2000; the 1000 rows before them were saved"));
+
+                // act
+                MvcResult response = mockMvc.perform(
+                                post("/api/ucsbdiningcommons/bulk")
+                                                .contentType(NdjsonExportService.APPLICATION_NDJSON_VALUE)
+                                                .content("{\"code\": \"carrillo\"}\n")
+                                                .with(csrf()))
+                                .andExpect(status().isConflict()).andReturn();
+
+                // assert
+                verify(ucsbDiningCommonsSnapshot, times(1)).reload();
+                Map<String, Object> json = responseToJson(response);
+                assertEquals("DuplicateKeyException", json.get("type"));
+                assertEquals("a UCSBDiningCommons with the same key already exists in rows 1001 to 2000; the 1000 rows before them were saved",
+                                json.get("message"));
+        }
+
+        // Tests for GET /api/ucsbdiningcommons/nearest and /within
+
+        UCSBDiningCommons carrillo = UCSBDiningCommons.builder()
+                        .name("Carrillo")
+                        .code("carrillo")
+                        .latitude(34.409953)
+                        .longitude(-119.85277)
+                        .build();
+
+        UCSBDiningCommons ortega = UCSBDiningCommons.builder()
+                        .name("Ortega")
+                        .code("ortega")
+                        .latitude(34.410987)
+                        .longitude(-119.847705)
+                        .build();
+
+        @Test
+        public void logged_out_users_cannot_get_nearest() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.41&lon=-119.85"))
+                                .andExpect(status().is(403));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_nearest_commons_from_the_snapshot() throws Exception {
+
+                // arrange
+
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(4L, carrillo, ortega));
+
+                // act
+                MvcResult response = mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.4125&lon=-119.8484&k=5"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(UCSBDiningCommonsSnapshotService.SNAPSHOT_VERSION_HEADER, "4"))
+                                .andExpect(jsonPath("$.length()").value(2))
+                                .andExpect(jsonPath("$[0].commons.code").value("ortega"))
+                                .andExpect(jsonPath("$[1].commons.code").value("carrillo"))
+                                .andReturn();
+
+                // assert
+
+                verify(ucsbDiningCommonsRepository, times(0)).findAll();
+                assertEquals(200, response.getResponse().getStatus());
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void nearest_defaults_to_one_result() throws Exception {
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(4L, carrillo, ortega));
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.409953&lon=-119.85277"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(1))
+                                .andExpect(jsonPath("$[0].commons.code").value("carrillo"))
+                                .andExpect(jsonPath("$[0].distanceMeters").value(0.0));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void nearest_rejects_bad_coordinates_and_k() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=91&lon=-119.85"))
+                                .andExpect(status().isBadRequest());
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.41&lon=-181"))
+                                .andExpect(status().isBadRequest());
+                mockMvc.perform(get("/api/ucsbdiningcommons/nearest?lat=34.41&lon=-119.85&k=0"))
+                                .andExpect(status().isBadRequest());
+                verify(ucsbDiningCommonsSnapshot, times(0)).current();
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void logged_in_user_can_get_commons_within_a_radius() throws Exception {
+                when(ucsbDiningCommonsSnapshot.current()).thenReturn(snapshotOf(4L, carrillo, ortega));
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/within?lat=34.409953&lon=-119.85277&radius=100"))
+                                .andExpect(status().isOk())
+                                .andExpect(header().string(UCSBDiningCommonsSnapshotService.SNAPSHOT_VERSION_HEADER, "4"))
+                                .andExpect(jsonPath("$.length()").value(1))
+                                .andExpect(jsonPath("$[0].commons.code").value("carrillo"));
+
+                mockMvc.perform(get("/api/ucsbdiningcommons/within?lat=34.409953&lon=-119.85277&radius=1000"))
+                                .andExpect(status().isOk())
+                                .andExpect(jsonPath("$.length()").value(2));
+        }
+
+        @WithMockUser(roles = { "USER" })
+        @Test
+        public void within_rejects_a_negative_radius() throws Exception {
+                mockMvc.perform(get("/api/ucsbdiningcommons/within?lat=34.41&lon=-119.85&radius=-1"))
+                                .andExpect(status().isBadRequest());
+        }
 }
@@ -0,0 +1,87 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.MigrationVersion;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Runs the H2 migrations over a database that already has rows, as an
+ * existing development database does when it picks up a new migration.
+ */
+public class MigrationTests {
+
+  static final String URL = "jdbc:h2:mem:migrations;DB_CLOSE_DELAY=-1";
+
+  Flyway flyway(String target) {
+    return Flyway.configure()
+        .dataSource(URL, "sa", "")
+        .locations("classpath:db/migration/common", "classpath:db/migration/h2")
+        .target(target == null ? MigrationVersion.LATEST : MigrationVersion.fromVersion(target))
+        .load();
+  }
+
+  @AfterEach
+  public void cleanup() {
+    try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+        Statement statement = connection.createStatement()) {
+      statement.execute("DROP ALL OBJECTS");
+    } catch (SQLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  List<String> column(Statement statement, String query) throws SQLException {
+    List<String> values = new ArrayList<>();
+    try (ResultSet rows = statement.executeQuery(query)) {
+      while (rows.next()) {
+        values.add(rows.getString(1));
+      }
+    }
+    return values;
+  }
+
+  @Test
+  public void V6_merges_users_with_the_same_email_before_indexing_it() throws Exception {
+    flyway("5").migrate();
+    try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+        Statement statement = connection.createStatement()) {
+      statement.execute("INSERT INTO users (id, email, email_verified, admin) VALUES "
+          + "(1, 'cgaucho@ucsb.edu', TRUE, FALSE), (2, 'cgaucho@ucsb.edu', TRUE, TRUE), "
+          + "(3, 'ldelplaya@ucsb.edu', TRUE, FALSE), (4, NULL, FALSE, FALSE), (5, NULL, FALSE, FALSE)");
+
+      flyway(null).migrate();
+
+      assertEquals(List.of("1 cgaucho@ucsb.edu TRUE", "3 ldelplaya@ucsb.edu FALSE", "4 null FALSE", "5 null FALSE"),
+          column(statement, "SELECT id || ' ' || COALESCE(email, 'null') || ' ' || admin FROM users ORDER BY id"));
+      assertThrows(SQLException.class, () -> statement.execute(
+          "INSERT INTO users (id, email, email_verified) VALUES (6, 'cgaucho@ucsb.edu', TRUE)"));
+    }
+  }
+
+  @Test
+  public void V5_starts_each_id_sequence_a_block_past_the_ids_in_use() throws Exception {
+    flyway("4").migrate();
+    try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+        Statement statement = connection.createStatement()) {
+      statement.execute("INSERT INTO animals (id, name) VALUES (7, 'Gaucho'), (120, 'Seal')");
+
+      flyway(null).migrate();
+
+      // the pooled optimizer hands out the 50 ids up to each value it reads
+      assertEquals(List.of("170"), column(statement, "SELECT NEXT VALUE FOR animals_seq"));
+      assertEquals(List.of("50"), column(statement, "SELECT NEXT VALUE FOR books_seq"));
+    }
+  }
+}
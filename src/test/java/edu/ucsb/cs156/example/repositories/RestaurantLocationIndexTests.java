@@ -0,0 +1,187 @@
+package edu.ucsb.cs156.example.repositories;
+
+import org.flywaydb.core.Flyway;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the RestaurantRepository location lookups are answered from
+ * the V7 and V11 indexes, in id order, without a table scan or a sort. The
+ * statements explained are the ones Hibernate generates for the derived
+ * finders, captured with a StatementInspector while the finders run, and
+ * the keyset page is the one RestaurantController passes.
+ *
+ * H2 1.4's planner only skips the sort when the ORDER BY columns are a
+ * prefix of the index, even after equality conditions on the leading
+ * columns, so on H2 the test checks that the index the plan reads is
+ * exactly the finder's equality columns followed by id, which returns the
+ * rows in id order. On PostgreSQL the plan must have no Sort node.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "edu.ucsb.cs156.example.repositories.RestaurantLocationIndexTests$Statements")
+public class RestaurantLocationIndexTests {
+
+    public static class Statements implements StatementInspector {
+        static final List<String> sql = new ArrayList<>();
+
+        @Override
+        public String inspect(String statement) {
+            sql.add(statement);
+            return statement;
+        }
+    }
+
+    /** A finder's SQL and the values bound to its parameters. */
+    record Lookup(String sql, Object... parameters) {
+    }
+
+    static final Pageable PAGE = PageRequest.of(0, 100, Sort.by("id"));
+
+    @Autowired
+    RestaurantRepository restaurantRepository;
+
+    @Autowired
+    DataSource dataSource;
+
+    Lookup byStateAndCity;
+    Lookup byState;
+    Lookup byCity;
+    Lookup byZip;
+
+    @BeforeEach
+    public void captureFinderSql() {
+        restaurantRepository.findByStateAndCityAndIdGreaterThan("CA", "Goleta", 0L, PAGE);
+        byStateAndCity = new Lookup(lastStatement(), "CA", "Goleta", 0L, 100);
+        restaurantRepository.findByStateAndIdGreaterThan("CA", 0L, PAGE);
+        byState = new Lookup(lastStatement(), "CA", 0L, 100);
+        restaurantRepository.findByCityAndIdGreaterThan("Goleta", 0L, PAGE);
+        byCity = new Lookup(lastStatement(), "Goleta", 0L, 100);
+        restaurantRepository.findByZipAndIdGreaterThan("93117", 0L, PAGE);
+        byZip = new Lookup(lastStatement(), "93117", 0L, 100);
+    }
+
+    private static String lastStatement() {
+        String statement = Statements.sql.get(Statements.sql.size() - 1);
+        Statements.sql.clear();
+        assertTrue(statement.toLowerCase(Locale.ROOT).contains("order by"), statement);
+        return statement;
+    }
+
+    @Test
+    public void h2_location_lookups_use_indexes_without_sorting() throws Exception {
+        try (Connection connection = dataSource.getConnection()) {
+            assertH2PlanUses(connection, byStateAndCity, "restaurants_state_city_idx", "state", "city", "id");
+            assertH2PlanUses(connection, byState, "restaurants_state_idx", "state", "id");
+            assertH2PlanUses(connection, byCity, "restaurants_city_idx", "city", "id");
+            assertH2PlanUses(connection, byZip, "restaurants_zip_idx", "zip", "id");
+        }
+    }
+
+    /**
+     * Runs only when EXPLAIN_POSTGRES_URL (and optionally EXPLAIN_POSTGRES_USERNAME
+     * and EXPLAIN_POSTGRES_PASSWORD) point at a scratch database. The migrations go
+     * into a throwaway schema that is dropped afterwards. Sequential scans are
+     * disabled because an empty table would otherwise never be read by index.
+     * The PostgreSQL dialect renders these finders exactly as H2's does.
+     */
+    @Test
+    @EnabledIfEnvironmentVariable(named = "EXPLAIN_POSTGRES_URL", matches = ".+")
+    public void postgres_location_lookups_use_indexes_without_sorting() throws Exception {
+        String url = System.getenv("EXPLAIN_POSTGRES_URL");
+        String username = System.getenv("EXPLAIN_POSTGRES_USERNAME");
+        String password = System.getenv("EXPLAIN_POSTGRES_PASSWORD");
+        String schema = "explain_" + Long.toHexString(System.nanoTime());
+        try {
+            Flyway.configure()
+                    .dataSource(url, username, password)
+                    .locations("classpath:db/migration/common", "classpath:db/migration/postgresql")
+                    .schemas(schema)
+                    .load()
+                    .migrate();
+            try (Connection connection = DriverManager.getConnection(url, username, password);
+                    Statement statement = connection.createStatement()) {
+                statement.execute("SET search_path TO " + schema);
+                statement.execute("SET enable_seqscan = off");
+                assertPostgresPlanUses(connection, byStateAndCity, "restaurants_state_city_idx");
+                assertPostgresPlanUses(connection, byState, "restaurants_state_idx");
+                assertPostgresPlanUses(connection, byCity, "restaurants_city_idx");
+                assertPostgresPlanUses(connection, byZip, "restaurants_zip_idx");
+            }
+        } finally {
+            try (Connection connection = DriverManager.getConnection(url, username, password);
+                    Statement statement = connection.createStatement()) {
+                statement.execute("DROP SCHEMA IF EXISTS " + schema + " CASCADE");
+            }
+        }
+    }
+
+    private static void assertH2PlanUses(Connection connection, Lookup lookup, String index, String... columns)
+            throws Exception {
+        String plan = explain(connection, lookup);
+        assertEquals(index, indexNamed(plan), () -> "expected " + index + " in plan for " + lookup.sql() + ":\n" + plan);
+        assertEquals(List.of(columns), indexColumns(connection, index));
+    }
+
+    private static List<String> indexColumns(Connection connection, String index) throws Exception {
+        List<String> columns = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT column_name"
+                + " FROM information_schema.indexes WHERE index_name = ? ORDER BY ordinal_position")) {
+            statement.setString(1, index.toUpperCase(Locale.ROOT));
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    columns.add(rs.getString(1).toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return columns;
+    }
+
+    private static void assertPostgresPlanUses(Connection connection, Lookup lookup, String index) throws Exception {
+        String plan = explain(connection, lookup);
+        assertTrue(plan.contains(index), () -> "expected " + index + " in plan for " + lookup.sql() + ":\n" + plan);
+        assertFalse(plan.contains("sort"), () -> "expected no sort in plan for " + lookup.sql() + ":\n" + plan);
+    }
+
+    // H2 prints the index it reads as /* PUBLIC.INDEX_NAME: condition */
+    private static String indexNamed(String plan) {
+        int start = plan.indexOf("/* public.");
+        return start < 0 ? null : plan.substring(start + "/* public.".length(), plan.indexOf(':', start));
+    }
+
+    private static String explain(Connection connection, Lookup lookup) throws Exception {
+        StringBuilder plan = new StringBuilder();
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + lookup.sql())) {
+            for (int i = 0; i < lookup.parameters().length; i++) {
+                statement.setObject(i + 1, lookup.parameters()[i]);
+            }
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    plan.append(rs.getString(1)).append('\n');
+                }
+            }
+        }
+        return plan.toString().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,115 @@
+package edu.ucsb.cs156.example.repositories;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import edu.ucsb.cs156.example.config.SecondLevelCacheConfig;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.services.TableVersionService;
+
+/**
+ * The VersionedRepository fragment against H2 with the second-level cache
+ * on.  Each repository call runs in its own transaction, as it does from a
+ * controller, so cache entries are settled when the test looks at them.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+    + "edu.ucsb.cs156.example.repositories.VersionedRepositoryTests$Statements")
+@Import({ SecondLevelCacheConfig.class, TableVersionService.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class VersionedRepositoryTests {
+
+  public static class Statements implements StatementInspector {
+    static final List<String> sql = new ArrayList<>();
+
+    @Override
+    public String inspect(String statement) {
+      sql.add(statement.toLowerCase(Locale.ROOT));
+      return statement;
+    }
+  }
+
+  @Autowired
+  RestaurantRepository restaurantRepository;
+
+  @Autowired
+  EntityManagerFactory entityManagerFactory;
+
+  @Autowired
+  TableVersionService tableVersions;
+
+  @AfterEach
+  public void cleanup() {
+    restaurantRepository.deleteAll();
+  }
+
+  Restaurant restaurant(String name) {
+    return restaurantRepository.save(Restaurant.builder().name(name).address("6521 Pardall Rd")
+        .city("Isla Vista").state("CA").zip("93117").description("").build());
+  }
+
+  @Test
+  public void deleteOne_evicts_only_the_deleted_row() {
+    long freebirds = restaurant("Freebirds").getId();
+    long tacoBell = restaurant("Taco Bell").getId();
+    restaurantRepository.findById(freebirds);
+    restaurantRepository.findById(tacoBell);
+    assertTrue(entityManagerFactory.getCache().contains(Restaurant.class, tacoBell));
+    Statements.sql.clear();
+
+    assertEquals(1, restaurantRepository.deleteOne(freebirds));
+    assertEquals(List.of("delete from restaurants where id = ?"), Statements.sql);
+
+    // the deleted id holds a soft lock, so it is read from the table
+    assertTrue(restaurantRepository.findById(freebirds).isEmpty());
+    assertTrue(entityManagerFactory.getCache().contains(Restaurant.class, tacoBell));
+    assertEquals("Taco Bell", restaurantRepository.findById(tacoBell).get().getName());
+  }
+
+  @Test
+  public void deleteOne_of_a_missing_row_deletes_nothing() {
+    long tacoBell = restaurant("Taco Bell").getId();
+
+    assertEquals(0, restaurantRepository.deleteOne(tacoBell + 1));
+    assertTrue(restaurantRepository.findById(tacoBell).isPresent());
+  }
+
+  @Test
+  public void deleteOne_does_not_run_the_post_remove_callbacks() {
+    long freebirds = restaurant("Freebirds").getId();
+    long version = tableVersions.version(Restaurant.class);
+
+    restaurantRepository.deleteOne(freebirds);
+
+    // the DELETE handler publishes EntityDeletedEvent, once, instead
+    assertEquals(version, tableVersions.version(Restaurant.class));
+  }
+
+  @Test
+  public void findVersion_selects_the_version_alone() {
+    Restaurant freebirds = restaurant("Freebirds");
+    Statements.sql.clear();
+
+    assertEquals(Optional.of(freebirds.getVersion()),
+        restaurantRepository.findVersion(Restaurant.class, freebirds.getId()));
+    assertEquals(1, Statements.sql.size(), Statements.sql::toString);
+    assertTrue(Statements.sql.get(0).matches("select \\w+\\.version as \\w+ from restaurants \\w+ where \\w+\\.id=\\?.*"),
+        Statements.sql.get(0));
+    assertEquals(Optional.empty(), restaurantRepository.findVersion(Restaurant.class, freebirds.getId() + 1));
+  }
+}
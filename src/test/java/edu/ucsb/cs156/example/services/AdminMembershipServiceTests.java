@@ -0,0 +1,67 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+class AdminMembershipServiceTests {
+
+  AdminMembershipService service;
+  UserRepository userRepository;
+
+  @BeforeEach
+  void setup() {
+    service = new AdminMembershipService(List.of("phtcon@ucsb.edu"));
+    userRepository = mock(UserRepository.class);
+    service.userRepository = userRepository;
+    when(userRepository.findAdminEmails()).thenReturn(List.of("cgaucho@ucsb.edu"));
+  }
+
+  @Test
+  void test_configured_and_database_admins_are_admins() {
+    assertTrue(service.isAdmin("phtcon@ucsb.edu"));
+    assertTrue(service.isAdmin("cgaucho@ucsb.edu"));
+    assertFalse(service.isAdmin("ldelplaya@ucsb.edu"));
+    assertTrue(service.isConfiguredAdmin("phtcon@ucsb.edu"));
+    assertFalse(service.isConfiguredAdmin("cgaucho@ucsb.edu"));
+  }
+
+  @Test
+  void test_database_admins_are_loaded_once() {
+    service.isAdmin("cgaucho@ucsb.edu");
+    service.isAdmin("ldelplaya@ucsb.edu");
+    service.isAdmin("ldelplaya@ucsb.edu");
+
+    verify(userRepository, times(1)).findAdminEmails();
+  }
+
+  @Test
+  void test_admin_status_changes_are_applied_without_a_reload() {
+    service.onAdminStatusChanged(new AdminStatusChangedEvent("ldelplaya@ucsb.edu", true));
+    service.onAdminStatusChanged(new AdminStatusChangedEvent("cgaucho@ucsb.edu", false));
+
+    assertTrue(service.isAdmin("ldelplaya@ucsb.edu"));
+    assertFalse(service.isAdmin("cgaucho@ucsb.edu"));
+    verify(userRepository, times(1)).findAdminEmails();
+  }
+
+  @Test
+  void test_refresh_rereads_the_database() {
+    service.isAdmin("ldelplaya@ucsb.edu");
+    when(userRepository.findAdminEmails()).thenReturn(List.of("ldelplaya@ucsb.edu"));
+    service.refresh();
+
+    assertTrue(service.isAdmin("ldelplaya@ucsb.edu"));
+    assertFalse(service.isAdmin("cgaucho@ucsb.edu"));
+  }
+}
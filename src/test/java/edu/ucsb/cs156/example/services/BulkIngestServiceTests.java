@@ -0,0 +1,169 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayInputStream;
+import java.sql.SQLException;
+import java.util.List;
+
+import javax.persistence.EntityExistsException;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
+
+import org.hibernate.exception.ConstraintViolationException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+
+class BulkIngestServiceTests {
+
+  BulkIngestService service;
+  BookRepository bookRepository;
+
+  @BeforeEach
+  void setup() {
+    service = new BulkIngestService();
+    service.mapper = new ObjectMapper();
+    service.transactionManager = mock(PlatformTransactionManager.class);
+    service.entityManager = mock(EntityManager.class);
+    service.chunkSize = 2;
+    bookRepository = mock(BookRepository.class);
+  }
+
+  @SuppressWarnings("unchecked")
+  @Test
+  void test_json_array_is_saved_in_chunks_with_ids_cleared() throws Exception {
+    // arrange
+    String body = """
+        [{"id": 7, "title": "Dune", "author": "Herbert", "genre": "SciFi"},
+         {"id": 8, "title": "Emma", "author": "Austen", "genre": "Romance"},
+         {"id": 9, "title": "Ulysses", "author": "Joyce", "genre": "Fiction"}]
+        """;
+
+    // act
+    long count = service.ingest(new ByteArrayInputStream(body.getBytes()), Book.class, book -> book.setId(0),
+        bookRepository);
+
+    // assert
+    assertEquals(3, count);
+    ArgumentCaptor<List<Book>> chunks = ArgumentCaptor.forClass(List.class);
+    verify(bookRepository, times(2)).saveAll(chunks.capture());
+    assertEquals(2, chunks.getAllValues().get(0).size());
+    assertEquals(1, chunks.getAllValues().get(1).size());
+    assertEquals(0L, chunks.getAllValues().get(0).get(0).getId());
+    assertEquals("Ulysses", chunks.getAllValues().get(1).get(0).getTitle());
+    verify(service.transactionManager, times(2)).commit(any());
+  }
+
+  @Test
+  void test_ndjson_body_is_accepted() throws Exception {
+    // arrange
+    String body = "{\"title\": \"Dune\"}\n{\"title\": \"Emma\"}\n";
+
+    // act
+    long count = service.ingest(new ByteArrayInputStream(body.getBytes()), Book.class, book -> book.setId(0),
+        bookRepository);
+
+    // assert
+    assertEquals(2, count);
+    verify(bookRepository, times(1)).saveAll(any());
+  }
+
+  @Test
+  void test_empty_array_saves_nothing() throws Exception {
+    long count = service.ingest(new ByteArrayInputStream("[]".getBytes()), Book.class, book -> book.setId(0),
+        bookRepository);
+
+    assertEquals(0, count);
+    verify(bookRepository, times(0)).saveAll(any());
+  }
+
+  @Test
+  void test_malformed_json_is_rejected() {
+    assertThrows(JsonProcessingException.class, () -> service.ingest(
+        new ByteArrayInputStream("[{\"title\": ".getBytes()), Book.class, book -> book.setId(0), bookRepository));
+  }
+
+  static final String COMMONS = """
+      {"code": "carrillo", "name": "Carrillo", "version": 4}
+      {"code": "ortega", "name": "Ortega"}
+      {"code": "portola", "name": "Portola"}
+      """;
+
+  static PersistenceException constraintViolation(String sqlState) {
+    return new PersistenceException(new ConstraintViolationException("could not execute batch",
+        new SQLException("violation", sqlState), "ucsbdiningcommons_pkey"));
+  }
+
+  @Test
+  void test_insert_persists_every_row_and_flushes_each_chunk() throws Exception {
+    // act
+    long count = service.insert(new ByteArrayInputStream(COMMONS.getBytes()), UCSBDiningCommons.class,
+        commons -> commons.setVersion(0));
+
+    // assert
+    assertEquals(3, count);
+    ArgumentCaptor<UCSBDiningCommons> persisted = ArgumentCaptor.forClass(UCSBDiningCommons.class);
+    verify(service.entityManager, times(3)).persist(persisted.capture());
+    assertEquals("carrillo", persisted.getAllValues().get(0).getCode());
+    assertEquals(0L, persisted.getAllValues().get(0).getVersion());
+    verify(service.entityManager, times(2)).flush();
+    verify(service.transactionManager, times(2)).commit(any());
+  }
+
+  @Test
+  void test_insert_of_an_existing_key_is_a_duplicate_key_naming_the_failed_rows() {
+    // arrange: the first chunk commits, the second hits the primary key
+    doNothing().doThrow(constraintViolation(BulkIngestService.UNIQUE_VIOLATION)).when(service.entityManager).flush();
+
+    // act
+    DuplicateKeyException e = assertThrows(DuplicateKeyException.class, () -> service.insert(
+        new ByteArrayInputStream(COMMONS.getBytes()), UCSBDiningCommons.class, commons -> commons.setVersion(0)));
+
+    // assert
+    assertEquals("a UCSBDiningCommons with the same key already exists in rows 3 to 3; the 2 rows before them were saved",
+        e.getMessage());
+    verify(service.transactionManager, times(1)).commit(any());
+    verify(service.transactionManager, times(1)).rollback(any());
+  }
+
+  @Test
+  void test_insert_of_the_same_key_twice_in_a_chunk_is_a_duplicate_key() {
+    // arrange
+    doNothing().doThrow(new EntityExistsException("already associated with the session"))
+        .when(service.entityManager).persist(any());
+
+    // act and assert
+    DuplicateKeyException e = assertThrows(DuplicateKeyException.class, () -> service.insert(
+        new ByteArrayInputStream(COMMONS.getBytes()), UCSBDiningCommons.class, commons -> commons.setVersion(0)));
+    assertEquals("a UCSBDiningCommons with the same key already exists in rows 1 to 2; the 0 rows before them were saved",
+        e.getMessage());
+  }
+
+  @Test
+  void test_insert_passes_on_other_constraint_violations() {
+    // arrange: NOT NULL rather than unique
+    doThrow(constraintViolation("23502")).when(service.entityManager).flush();
+
+    // act and assert
+    assertThrows(PersistenceException.class, () -> service.insert(
+        new ByteArrayInputStream(COMMONS.getBytes()), UCSBDiningCommons.class, commons -> commons.setVersion(0)));
+  }
+}
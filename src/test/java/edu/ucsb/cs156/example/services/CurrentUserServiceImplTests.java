@@ -0,0 +1,220 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.client.authentication.OAuth2AuthenticationToken;
+import org.springframework.security.oauth2.core.user.DefaultOAuth2User;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import edu.ucsb.cs156.example.entities.User;
+import edu.ucsb.cs156.example.repositories.UserRepository;
+
+class CurrentUserServiceImplTests {
+
+  CurrentUserServiceImpl service;
+  UserRepository userRepository;
+  MockHttpServletRequest request;
+
+  User cgaucho = User.builder().id(1L).email("cgaucho@ucsb.edu").build();
+  Instant now = Instant.parse("2023-05-01T12:00:00Z");
+
+  @BeforeEach
+  void setup() {
+    service = new CurrentUserServiceImpl();
+    userRepository = mock(UserRepository.class);
+    ReflectionTestUtils.setField(service, "userRepository", userRepository);
+    service.adminMembership = new AdminMembershipService(List.of("admin@ucsb.edu"));
+    ApplicationEventPublisher publisher =
+        event -> service.onAdminStatusChanged((AdminStatusChangedEvent) event);
+    ReflectionTestUtils.setField(service, "eventPublisher", publisher);
+    service.wallClock = Clock.fixed(now, ZoneOffset.UTC);
+
+    request = new MockHttpServletRequest();
+    RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+    login("cgaucho@ucsb.edu");
+    when(userRepository.findByEmail("cgaucho@ucsb.edu")).thenReturn(Optional.of(cgaucho));
+  }
+
+  @AfterEach
+  void teardown() {
+    RequestContextHolder.resetRequestAttributes();
+    SecurityContextHolder.clearContext();
+  }
+
+  private void login(String email) {
+    Map<String, Object> attributes = Map.of("sub", email, "email", email, "email_verified", true);
+    DefaultOAuth2User principal = new DefaultOAuth2User(
+        List.of(new SimpleGrantedAuthority("ROLE_USER")), attributes, "sub");
+    SecurityContextHolder.getContext().setAuthentication(
+        new OAuth2AuthenticationToken(principal, principal.getAuthorities(), "google"));
+  }
+
+  @Test
+  void test_user_is_read_once_per_session() {
+    assertEquals(cgaucho, service.getUser());
+    assertEquals(cgaucho, service.getUser());
+
+    verify(userRepository, times(1)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void test_evict_forces_a_fresh_read() {
+    service.getUser();
+    service.evictUser("cgaucho@ucsb.edu");
+    service.getUser();
+    service.getUser();
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void test_cached_user_is_not_reused_for_a_different_login() {
+    User other = User.builder().id(2L).email("ldelplaya@ucsb.edu").build();
+    when(userRepository.findByEmail("ldelplaya@ucsb.edu")).thenReturn(Optional.of(other));
+
+    service.getUser();
+    login("ldelplaya@ucsb.edu");
+
+    assertEquals(other, service.getUser());
+  }
+
+  @Test
+  void test_configured_admin_is_promoted_and_cache_evicted() {
+    User admin = User.builder().id(3L).email("admin@ucsb.edu").build();
+    when(userRepository.findByEmail("admin@ucsb.edu")).thenReturn(Optional.of(admin));
+    login("admin@ucsb.edu");
+
+    assertTrue(service.getUser().getAdmin());
+    service.getUser();
+
+    verify(userRepository, times(1)).save(admin);
+    verify(userRepository, times(2)).findByEmail("admin@ucsb.edu");
+  }
+
+  @Test
+  void test_new_user_is_an_admin_only_if_configured() {
+    when(userRepository.findByEmail(any())).thenReturn(Optional.empty());
+
+    login("admin@ucsb.edu");
+    assertTrue(service.getUser().getAdmin());
+    login("ldelplaya@ucsb.edu");
+    assertFalse(service.getUser().getAdmin());
+
+    verify(userRepository, times(0)).findAdminEmails();
+  }
+
+  @Test
+  void test_a_first_login_that_loses_the_insert_race_uses_the_winning_row() {
+    User winner = User.builder().id(2L).email("ldelplaya@ucsb.edu").build();
+    when(userRepository.findByEmail("ldelplaya@ucsb.edu")).thenReturn(Optional.empty(), Optional.of(winner));
+    when(userRepository.save(any())).thenThrow(new DataIntegrityViolationException("users_email_idx"));
+
+    login("ldelplaya@ucsb.edu");
+
+    assertEquals(winner, service.getUser());
+  }
+
+  @Test
+  void test_without_a_request_every_call_reads() {
+    RequestContextHolder.resetRequestAttributes();
+
+    service.getUser();
+    service.getUser();
+
+    verify(userRepository, times(2)).findByEmail(any());
+  }
+
+  private void advance(Duration duration) {
+    now = now.plus(duration);
+    service.wallClock = Clock.fixed(now, ZoneOffset.UTC);
+  }
+
+  @Test
+  void test_cached_user_survives_session_serialization() throws Exception {
+    service.getUser();
+    Object cached = request.getSession().getAttribute(CurrentUserServiceImpl.SESSION_USER);
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+      out.writeObject(cached);
+    }
+    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+      assertEquals(cached, in.readObject());
+    }
+  }
+
+  @Test
+  void test_cached_user_older_than_the_session_timeout_is_reread() {
+    service.getUser();
+    advance(Duration.ofMinutes(29));
+    service.getUser();
+    advance(Duration.ofMinutes(2));
+    service.getUser();
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void test_evictions_older_than_the_session_timeout_are_pruned() {
+    service.evictUser("one@ucsb.edu");
+    service.evictUser("two@ucsb.edu");
+    advance(Duration.ofMinutes(31));
+    service.evictUser("three@ucsb.edu");
+
+    Map<?, ?> evictedAt = (Map<?, ?>) ReflectionTestUtils.getField(service, "evictedAt");
+    assertEquals(List.of("three@ucsb.edu"), List.copyOf(evictedAt.keySet()));
+    assertInstanceOf(CurrentUserServiceImpl.Eviction.class, evictedAt.get("three@ucsb.edu"));
+  }
+
+  @Test
+  void test_pruning_an_eviction_does_not_bring_back_the_user_it_evicted() {
+    service.getUser();
+    advance(Duration.ofMinutes(10));
+    service.evictUser("cgaucho@ucsb.edu");
+    advance(Duration.ofMinutes(31));
+    service.evictUser("someone-else@ucsb.edu");
+
+    service.getUser();
+
+    verify(userRepository, times(2)).findByEmail("cgaucho@ucsb.edu");
+  }
+
+  @Test
+  void test_session_timeout_is_parsed_like_boot_does() {
+    service.setSessionTimeout("45m");
+    assertEquals(Duration.ofMinutes(45), service.sessionTimeout);
+
+    service.setSessionTimeout("1800");
+    assertEquals(Duration.ofMinutes(30), service.sessionTimeout);
+  }
+}
@@ -0,0 +1,101 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.models.NearbyDiningCommons;
+
+class DiningCommonsGeoIndexTests {
+
+  UCSBDiningCommons carrillo = commons("carrillo", 34.409953, -119.85277);
+  UCSBDiningCommons dlg = commons("de-la-guerra", 34.409811, -119.845026);
+  UCSBDiningCommons ortega = commons("ortega", 34.410987, -119.847705);
+  UCSBDiningCommons portola = commons("portola", 34.417723, -119.867427);
+  UCSBDiningCommons unmapped = UCSBDiningCommons.builder().code("unmapped").build();
+
+  DiningCommonsGeoIndex index = DiningCommonsGeoIndex.of(List.of(carrillo, dlg, ortega, portola, unmapped));
+
+  static UCSBDiningCommons commons(String code, double lat, double lon) {
+    return UCSBDiningCommons.builder().code(code).latitude(lat).longitude(lon).build();
+  }
+
+  static List<String> codes(List<NearbyDiningCommons> results) {
+    return results.stream().map(r -> r.getCommons().getCode()).toList();
+  }
+
+  static double haversine(double lat1, double lon1, double lat2, double lon2) {
+    double dLat = Math.toRadians(lat2 - lat1);
+    double dLon = Math.toRadians(lon2 - lon1);
+    double a = Math.pow(Math.sin(dLat / 2), 2)
+        + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.pow(Math.sin(dLon / 2), 2);
+    return 2 * DiningCommonsGeoIndex.EARTH_RADIUS_METERS * Math.asin(Math.sqrt(a));
+  }
+
+  @Test
+  void test_commons_without_coordinates_are_not_indexed() {
+    assertEquals(4, index.size());
+  }
+
+  @Test
+  void test_nearest_returns_closest_first_with_distances() {
+    // standing at the Student Resource Building
+    List<NearbyDiningCommons> results = index.nearest(34.4125, -119.8484, 2);
+
+    assertEquals(List.of("ortega", "de-la-guerra"), codes(results));
+    assertEquals(haversine(34.4125, -119.8484, 34.410987, -119.847705), results.get(0).getDistanceMeters(), 0.01);
+  }
+
+  @Test
+  void test_nearest_with_k_larger_than_the_index_returns_everything() {
+    assertEquals(4, index.nearest(34.41, -119.85, 10).size());
+    assertEquals(List.of(), index.nearest(34.41, -119.85, 0));
+    assertEquals(List.of(), DiningCommonsGeoIndex.of(List.of()).nearest(34.41, -119.85, 3));
+  }
+
+  @Test
+  void test_within_returns_only_commons_inside_the_radius() {
+    // carrillo is ~240m from ortega and ~715m from dlg; portola is ~1.9km away
+    List<NearbyDiningCommons> results = index.within(34.409953, -119.85277, 500);
+
+    assertEquals(List.of("carrillo", "ortega"), codes(results));
+    assertEquals(0.0, results.get(0).getDistanceMeters(), 0.01);
+    assertEquals(List.of(), index.within(34.409953, -119.85277, -1));
+  }
+
+  @Test
+  void test_nearest_and_within_match_a_linear_scan_across_the_globe() {
+    Random random = new Random(156);
+    List<UCSBDiningCommons> all = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      all.add(commons("c" + i, random.nextDouble() * 180 - 90, random.nextDouble() * 360 - 180));
+    }
+    DiningCommonsGeoIndex big = DiningCommonsGeoIndex.of(all);
+
+    for (int trial = 0; trial < 200; trial++) {
+      double lat = random.nextDouble() * 180 - 90;
+      double lon = random.nextDouble() * 360 - 180;
+      List<String> expected = all.stream()
+          .sorted(Comparator.comparingDouble(c -> haversine(lat, lon, c.getLatitude(), c.getLongitude())))
+          .map(UCSBDiningCommons::getCode)
+          .toList();
+
+      assertEquals(expected.subList(0, 7), codes(big.nearest(lat, lon, 7)));
+
+      double radius = 500_000;
+      long inside = all.stream()
+          .filter(c -> haversine(lat, lon, c.getLatitude(), c.getLongitude()) <= radius)
+          .count();
+      List<NearbyDiningCommons> within = big.within(lat, lon, radius);
+      assertEquals(expected.subList(0, (int) inside), codes(within));
+      assertTrue(within.stream().allMatch(r -> r.getDistanceMeters() <= radius + 0.01));
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.repositories.MovieRepository;
+import edu.ucsb.cs156.example.repositories.MusicRepository;
+
+class LeaderboardServiceTests {
+
+  static final PageRequest FIRST_PAGE = PageRequest.of(0, LeaderboardService.CAPACITY);
+
+  LeaderboardService service;
+
+  Movie popular = Movie.builder().id(1).title("Popular").rating(6.0).views(5000).build();
+  Movie acclaimed = Movie.builder().id(2).title("Acclaimed").rating(9.5).views(10).build();
+  Music song = Music.builder().id(3).title("Song").author("Someone").rating(8.0f).views(40).build();
+
+  @BeforeEach
+  void setup() {
+    service = new LeaderboardService();
+    service.movieRepository = mock(MovieRepository.class);
+    service.musicRepository = mock(MusicRepository.class);
+    when(service.movieRepository.findByRatingNotNullOrderByRatingDescIdAsc(FIRST_PAGE)).thenReturn(List.of(acclaimed, popular));
+    when(service.movieRepository.findByViewsNotNullOrderByViewsDescIdAsc(FIRST_PAGE)).thenReturn(List.of(popular, acclaimed));
+    when(service.musicRepository.findAllByOrderByRatingDescIdAsc(FIRST_PAGE)).thenReturn(List.of(song));
+    when(service.musicRepository.findAllByOrderByViewsDescIdAsc(FIRST_PAGE)).thenReturn(List.of(song));
+  }
+
+  @Test
+  void test_each_ranking_loads_from_its_own_index() {
+    assertEquals(List.of(acclaimed, popular), service.topMovies("rating", 10));
+    assertEquals(List.of(popular), service.topMovies("views", 1));
+    assertEquals(List.of(song), service.topMusics("rating", 10));
+    assertEquals(List.of(song), service.topMusics("views", 10));
+  }
+
+  @Test
+  void test_saves_and_deletes_reach_every_ranking_for_the_entity() {
+    service.topMovies("rating", 10);
+    service.topMovies("views", 10);
+    service.topMusics("rating", 10);
+
+    Movie blockbuster = Movie.builder().id(4).title("Blockbuster").rating(7.0).views(90000).build();
+    service.saved(blockbuster);
+    service.removed(acclaimed);
+    service.removed(song);
+
+    assertEquals(List.of(blockbuster, popular), service.topMovies("rating", 10));
+    assertEquals(List.of(blockbuster, popular), service.topMovies("views", 10));
+    assertEquals(List.of(), service.topMusics("rating", 10));
+    verify(service.movieRepository, times(1)).findByRatingNotNullOrderByRatingDescIdAsc(FIRST_PAGE);
+  }
+}
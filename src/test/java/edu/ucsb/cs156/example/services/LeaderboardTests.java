@@ -0,0 +1,140 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Movie;
+
+class LeaderboardTests {
+
+  // stands in for the movies table and the (rating desc, id) index
+  Map<Long, Movie> table = new HashMap<>();
+  AtomicInteger loads = new AtomicInteger();
+
+  List<Movie> ranked(int n) {
+    return table.values().stream()
+        .filter(m -> m.getRating() != null)
+        .sorted(Comparator.comparing(Movie::getRating).reversed().thenComparingLong(Movie::getId))
+        .limit(n)
+        .toList();
+  }
+
+  Leaderboard<Movie> board = new Leaderboard<>(5, Movie::getRating, Movie::getId, n -> {
+    loads.incrementAndGet();
+    return ranked(n);
+  });
+
+  Movie save(long id, Double rating) {
+    Movie movie = Movie.builder().id(id).title("Movie " + id).rating(rating).build();
+    table.put(id, movie);
+    board.saved(movie);
+    return movie;
+  }
+
+  void delete(long id) {
+    table.remove(id);
+    board.removed(id);
+  }
+
+  @Test
+  void test_first_read_loads_and_later_reads_do_not() {
+    save(1, 3.0);
+    save(2, 4.5);
+    save(3, null);
+
+    assertEquals(ranked(3), board.top(3));
+    assertEquals(ranked(3), board.top(3));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void test_saves_that_rank_are_applied_without_a_load() {
+    for (long id = 1; id <= 10; id++) {
+      save(id, (double) id);
+    }
+    assertEquals(ranked(5), board.top(5));
+
+    save(11, 9.5);
+    save(12, 0.5);
+    save(3, 100.0);
+
+    assertEquals(ranked(5), board.top(5));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void test_deletes_shrink_the_prefix_and_refill_only_when_needed() {
+    for (long id = 1; id <= 10; id++) {
+      save(id, (double) id);
+    }
+    board.top(5);
+
+    delete(10);
+    delete(9);
+    assertEquals(ranked(3), board.top(3));
+    assertEquals(1, loads.get());
+
+    assertEquals(ranked(5), board.top(5));
+    assertEquals(2, loads.get());
+  }
+
+  @Test
+  void test_a_held_row_that_drops_below_the_prefix_is_not_guessed() {
+    for (long id = 1; id <= 10; id++) {
+      save(id, (double) id);
+    }
+    board.top(5);
+
+    save(10, 0.0);
+
+    assertEquals(ranked(5), board.top(5));
+  }
+
+  @Test
+  void test_small_tables_never_reload() {
+    save(1, 1.0);
+    board.top(5);
+
+    save(2, 2.0);
+    delete(1);
+    save(3, null);
+
+    assertEquals(ranked(5), board.top(5));
+    assertEquals(1, loads.get());
+  }
+
+  @Test
+  void test_n_is_capped_at_capacity() {
+    for (long id = 1; id <= 10; id++) {
+      save(id, (double) id);
+    }
+    assertEquals(5, board.top(50).size());
+    assertEquals(List.of(), board.top(0));
+  }
+
+  @Test
+  void test_random_saves_and_deletes_match_a_full_sort() {
+    Random random = new Random(156);
+    board.top(5);
+    for (int op = 0; op < 20000; op++) {
+      long id = random.nextInt(40);
+      if (random.nextInt(4) == 0) {
+        delete(id);
+      } else {
+        save(id, random.nextInt(10) == 0 ? null : (double) random.nextInt(20));
+      }
+      int n = 1 + random.nextInt(5);
+      assertEquals(ranked(n), board.top(n), "after op " + op);
+    }
+    assertTrue(loads.get() < 5000, "loads " + loads.get());
+  }
+}
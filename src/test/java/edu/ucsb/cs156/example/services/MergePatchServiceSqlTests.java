@@ -0,0 +1,113 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+
+/**
+ * MergePatchService against H2, checking the statements Hibernate sends: a
+ * patch that changes nothing writes nothing and keeps the version, and a
+ * patch of one field sets only that column (and the version), because the
+ * entities are @DynamicUpdate. Each call commits on its own, as it does
+ * from a controller.
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+    + "edu.ucsb.cs156.example.services.MergePatchServiceSqlTests$Statements")
+@Import({ MergePatchService.class, JacksonAutoConfiguration.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+public class MergePatchServiceSqlTests {
+
+  public static class Statements implements StatementInspector {
+    static final List<String> sql = new ArrayList<>();
+
+    @Override
+    public String inspect(String statement) {
+      sql.add(statement.toLowerCase(Locale.ROOT));
+      return statement;
+    }
+  }
+
+  private static final Pattern UPDATE = Pattern.compile("update books set (.*) where .*");
+
+  @Autowired
+  MergePatchService mergePatchService;
+
+  @Autowired
+  BookRepository bookRepository;
+
+  @Autowired
+  ObjectMapper mapper;
+
+  @AfterEach
+  public void cleanup() {
+    bookRepository.deleteAll();
+  }
+
+  Book book() {
+    Book book = bookRepository.save(Book.builder().title("IT").author("Stephen King").genre("Horror").build());
+    Statements.sql.clear();
+    return book;
+  }
+
+  List<String> updates() {
+    return Statements.sql.stream().filter(statement -> statement.startsWith("update")).toList();
+  }
+
+  ObjectNode patch(String json) throws Exception {
+    return (ObjectNode) mapper.readTree(json);
+  }
+
+  @Test
+  public void a_patch_that_changes_nothing_writes_nothing() throws Exception {
+    Book book = book();
+
+    Book patched = mergePatchService.patch(Book.class, book.getId(), patch("{\"genre\":\"Horror\"}"),
+        book.getVersion()).get();
+
+    assertEquals(List.of(), updates());
+    assertEquals(book.getVersion(), patched.getVersion());
+    assertEquals(book.getVersion(), bookRepository.findById(book.getId()).get().getVersion());
+  }
+
+  @Test
+  public void a_patch_of_one_field_updates_only_that_column() throws Exception {
+    Book book = book();
+
+    Book patched = mergePatchService.patch(Book.class, book.getId(), patch("{\"genre\":\"Thriller\"}"),
+        book.getVersion()).get();
+
+    List<String> updates = updates();
+    assertEquals(1, updates.size(), updates::toString);
+    Matcher update = UPDATE.matcher(updates.get(0));
+    assertTrue(update.matches(), updates.get(0));
+    assertEquals(List.of("genre=?", "version=?"), Arrays.asList(update.group(1).split(",\\s*")));
+    assertEquals(book.getVersion() + 1, patched.getVersion());
+
+    Book reread = bookRepository.findById(book.getId()).get();
+    assertEquals("Thriller", reread.getGenre());
+    assertEquals("IT", reread.getTitle());
+    assertEquals(book.getVersion() + 1, reread.getVersion());
+  }
+}
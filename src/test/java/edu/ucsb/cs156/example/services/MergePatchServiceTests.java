@@ -0,0 +1,92 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Optional;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.metamodel.SingularAttribute;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import edu.ucsb.cs156.example.entities.Book;
+
+class MergePatchServiceTests {
+
+  MergePatchService service = new MergePatchService();
+  ObjectMapper mapper = new ObjectMapper();
+  Book book;
+
+  @BeforeEach
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  void setup() {
+    service.mapper = mapper;
+    service.entityManager = mock(EntityManager.class, RETURNS_DEEP_STUBS);
+
+    SingularAttribute id = mock(SingularAttribute.class);
+    when(id.isId()).thenReturn(true);
+    when(id.getName()).thenReturn("id");
+    SingularAttribute version = mock(SingularAttribute.class);
+    when(version.isVersion()).thenReturn(true);
+    when(version.getName()).thenReturn("version");
+    SingularAttribute title = mock(SingularAttribute.class);
+    when(title.getName()).thenReturn("title");
+    when(service.entityManager.getMetamodel().entity(Book.class).getSingularAttributes())
+        .thenReturn((Set) Set.of(id, version, title));
+
+    book = Book.builder().id(7L).title("IT").author("Stephen King").genre("Horror").version(3L).build();
+    when(service.entityManager.find(Book.class, 7L, MergePatchService.FROM_DATABASE)).thenReturn(book);
+  }
+
+  ObjectNode patch(String json) throws Exception {
+    return (ObjectNode) mapper.readTree(json);
+  }
+
+  @Test
+  void test_only_the_members_of_the_patch_change() throws Exception {
+    Optional<Book> patched = service.patch(Book.class, 7L, patch("{\"genre\":\"Thriller\",\"author\":null}"), 3L);
+
+    assertTrue(patched.isPresent());
+    assertEquals("IT", book.getTitle());
+    assertEquals("Thriller", book.getGenre());
+    assertNull(book.getAuthor());
+    verify(service.entityManager).flush();
+  }
+
+  @Test
+  void test_the_id_and_version_are_not_patchable() throws Exception {
+    ObjectNode patch = patch("{\"id\":8,\"version\":99,\"title\":\"It\"}");
+
+    service.patch(Book.class, 7L, patch, null);
+
+    assertEquals(7L, book.getId());
+    assertEquals(3L, book.getVersion());
+    assertEquals("It", book.getTitle());
+    assertEquals(3, patch.size()); // the caller's patch is left as it was
+  }
+
+  @Test
+  void test_a_missing_row_is_empty() throws Exception {
+    assertTrue(service.patch(Book.class, 8L, patch("{}"), null).isEmpty());
+  }
+
+  @Test
+  void test_a_stale_expected_version_changes_nothing() throws Exception {
+    assertThrows(ObjectOptimisticLockingFailureException.class,
+        () -> service.patch(Book.class, 7L, patch("{\"genre\":\"Thriller\"}"), 2L));
+    assertEquals("Horror", book.getGenre());
+  }
+}
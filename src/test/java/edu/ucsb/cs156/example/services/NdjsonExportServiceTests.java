@@ -0,0 +1,44 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.io.ByteArrayOutputStream;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Book;
+
+class NdjsonExportServiceTests {
+
+  @Test
+  void test_export_writes_one_line_per_row_and_detaches_it() throws Exception {
+    // arrange
+    NdjsonExportService service = new NdjsonExportService();
+    service.mapper = new ObjectMapper();
+    service.entityManager = mock(EntityManager.class);
+
+    Book first = Book.builder().id(1L).title("Dune").author("Herbert").genre("SciFi").build();
+    Book second = Book.builder().id(2L).title("Emma").author("Austen").genre("Romance").build();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    // act
+    long count = service.export(() -> Stream.of(first, second), out);
+
+    // assert
+    assertEquals(2, count);
+    String expected = service.mapper.writeValueAsString(first) + "\n"
+        + service.mapper.writeValueAsString(second) + "\n";
+    assertEquals(expected, out.toString());
+    verify(service.entityManager, times(1)).detach(first);
+    verify(service.entityManager, times(1)).detach(second);
+  }
+
+}
@@ -0,0 +1,150 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class RequestCoalescingServiceTests {
+
+  static final String ENDPOINT = "/api/restaurant/all";
+
+  RequestCoalescingService service = new RequestCoalescingService();
+  ExecutorService pool = Executors.newCachedThreadPool();
+  AtomicInteger reads = new AtomicInteger();
+  CountDownLatch release = new CountDownLatch(1);
+
+  @AfterEach
+  void shutdown() {
+    pool.shutdownNow();
+  }
+
+  // a read that does not finish until release is counted down
+  <T> Supplier<T> blocked(T result) {
+    return () -> {
+      reads.incrementAndGet();
+      try {
+        assertTrue(release.await(10, TimeUnit.SECONDS));
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+      return result;
+    };
+  }
+
+  <T> List<Future<T>> concurrently(int requests, String key, Supplier<T> read) throws Exception {
+    List<Future<T>> futures = new ArrayList<>();
+    for (int i = 0; i < requests; i++) {
+      futures.add(pool.submit(() -> service.coalesce(ENDPOINT, key, read)));
+    }
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (service.executed(ENDPOINT) + service.joined(ENDPOINT) < requests && System.nanoTime() < deadline) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+    return futures;
+  }
+
+  @Test
+  void test_concurrent_identical_reads_share_one_call() throws Exception {
+    List<String> rows = List.of("a", "b");
+
+    List<Future<List<String>>> responses = concurrently(20, "/api/restaurant/all? \"restaurants-1\"", blocked(rows));
+
+    for (Future<List<String>> response : responses) {
+      assertSame(rows, response.get(10, TimeUnit.SECONDS));
+    }
+    assertEquals(1, reads.get());
+    assertEquals(1, service.executed(ENDPOINT));
+    assertEquals(19, service.joined(ENDPOINT));
+  }
+
+  @Test
+  void test_every_waiting_request_gets_the_exception() throws Exception {
+    Supplier<Object> failing = () -> {
+      blocked(null).get();
+      throw new IllegalArgumentException("bad");
+    };
+
+    List<Future<Object>> responses = concurrently(5, "key", failing);
+
+    for (Future<Object> response : responses) {
+      ExecutionException e = assertThrows(ExecutionException.class, () -> response.get(10, TimeUnit.SECONDS));
+      assertTrue(e.getCause() instanceof IllegalArgumentException, e.getCause().toString());
+    }
+    assertEquals(1, reads.get());
+  }
+
+  @Test
+  void test_a_finished_read_is_not_reused() {
+    release.countDown();
+
+    service.coalesce(ENDPOINT, "key", blocked("first"));
+    service.coalesce(ENDPOINT, "key", blocked("second"));
+
+    assertEquals(2, reads.get());
+    assertEquals(0, service.joined(ENDPOINT));
+  }
+
+  @Test
+  void test_different_keys_do_not_share() throws Exception {
+    Future<String> before = pool.submit(() -> service.coalesce(ENDPOINT, "all \"restaurants-1\"", blocked("old")));
+    Future<String> after = pool.submit(() -> service.coalesce(ENDPOINT, "all \"restaurants-2\"", blocked("new")));
+    while (reads.get() < 2) {
+      Thread.sleep(1);
+    }
+    release.countDown();
+
+    assertEquals("old", before.get(10, TimeUnit.SECONDS));
+    assertEquals("new", after.get(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  void test_a_read_that_fails_its_own_request_is_rethrown_as_is() {
+    ResponseStatusException thrown = assertThrows(ResponseStatusException.class,
+        () -> service.coalesce(ENDPOINT, "key", () -> {
+          throw new ResponseStatusException(HttpStatus.BAD_REQUEST);
+        }));
+    assertEquals(400, thrown.getRawStatusCode());
+  }
+
+  @Test
+  void test_counts_are_published_per_endpoint() throws Exception {
+    SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    service.coalesce("/api/Book/all", "early", () -> "registered before binding");
+    service.bindTo(registry);
+
+    concurrently(3, "key", blocked("rows")).forEach(f -> {
+      try {
+        f.get(10, TimeUnit.SECONDS);
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    });
+
+    assertEquals(1.0, registry.get("coalescing.requests").tag("endpoint", ENDPOINT).tag("result", "executed")
+        .functionCounter().count());
+    assertEquals(2.0, registry.get("coalescing.requests").tag("endpoint", ENDPOINT).tag("result", "joined")
+        .functionCounter().count());
+    assertEquals(1.0, registry.get("coalescing.requests").tag("endpoint", "/api/Book/all").tag("result", "executed")
+        .functionCounter().count());
+  }
+}
@@ -0,0 +1,78 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import edu.ucsb.cs156.example.entities.Book;
+
+class ResponseBodyCacheServiceTests {
+
+  ResponseBodyCacheService service = new ResponseBodyCacheService();
+  ObjectMapper mapper = new ObjectMapper();
+  AtomicInteger reads = new AtomicInteger();
+  List<Book> books = List.of(
+      Book.builder().id(1L).title("IT").author("Stephen King").genre("Horror").build(),
+      Book.builder().id(2L).title("Dune").author("Frank Herbert").genre("Science Fiction").build());
+  Supplier<List<Book>> rows = () -> {
+    reads.incrementAndGet();
+    return books;
+  };
+
+  @BeforeEach
+  void setup() {
+    service.mapper = mapper;
+    service.maxBytes = 1 << 20;
+  }
+
+  @Test
+  void test_the_body_is_built_once_per_etag() throws Exception {
+    ResponseBodyCacheService.Body first = service.get(Book.class, "\"books-1\"", rows);
+    ResponseBodyCacheService.Body second = service.get(Book.class, "\"books-1\"", rows);
+
+    assertSame(first, second);
+    assertEquals(1, reads.get());
+    assertArrayEquals(mapper.writeValueAsBytes(books), first.json());
+  }
+
+  @Test
+  void test_a_new_etag_rebuilds_the_body() {
+    service.get(Book.class, "\"books-1\"", rows);
+    ResponseBodyCacheService.Body body = service.get(Book.class, "\"books-2\"", rows);
+
+    assertEquals("\"books-2\"", body.etag());
+    assertEquals(2, reads.get());
+  }
+
+  @Test
+  void test_the_gzipped_body_is_the_same_json() throws Exception {
+    ResponseBodyCacheService.Body body = service.get(Book.class, "\"books-1\"", rows);
+
+    try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body.gzip()))) {
+      assertArrayEquals(body.json(), in.readAllBytes());
+    }
+  }
+
+  @Test
+  void test_bodies_over_max_bytes_are_not_kept() {
+    service.maxBytes = 10;
+
+    ResponseBodyCacheService.Body body = service.get(Book.class, "\"books-1\"", rows);
+    service.get(Book.class, "\"books-1\"", rows);
+
+    assertNull(body.gzip());
+    assertEquals(2, reads.get());
+  }
+}
@@ -0,0 +1,176 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import edu.ucsb.cs156.example.entities.Animal;
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Park;
+import edu.ucsb.cs156.example.entities.Restaurant;
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.models.SearchHit;
+import edu.ucsb.cs156.example.repositories.AnimalRepository;
+import edu.ucsb.cs156.example.repositories.BookRepository;
+import edu.ucsb.cs156.example.repositories.ParkRepository;
+import edu.ucsb.cs156.example.repositories.RestaurantRepository;
+
+class SearchIndexServiceTests {
+
+  SearchIndexService service;
+
+  Restaurant freebirds = Restaurant.builder().id(1L).name("Freebirds").address("879 Embarcadero del Norte")
+      .city("Isla Vista").state("CA").zip("93117").description("Burritos and tacos, open late").build();
+  Restaurant tacoBell = Restaurant.builder().id(2L).name("Taco Bell").address("6521 Pardall Rd")
+      .city("Isla Vista").state("CA").zip("93117").description("Fast food").build();
+  Book tacoBook = Book.builder().id(1L).title("The Taco Cleanse").author("Wes Allison").genre("Cooking").build();
+  Park shoreline = Park.builder().id(3L).name("Shoreline Park").address("Shoreline Dr").rating("5").build();
+  Animal pelican = Animal.builder().id(4L).name("Brown Pelican").genus("Pelecanus").species("occidentalis").build();
+
+  String databaseState = "animals=1/4/0,books=1/1/0,parks=1/3/0,restaurants=2/2/0";
+
+  @BeforeEach
+  void setup() throws Exception {
+    service = open("");
+    Stream.of(freebirds, tacoBell, tacoBook, shoreline, pelican).forEach(service::index);
+  }
+
+  SearchIndexService open(String indexDir) throws Exception {
+    SearchIndexService opened = new SearchIndexService(indexDir);
+    opened.animalRepository = mock(AnimalRepository.class);
+    opened.bookRepository = mock(BookRepository.class);
+    opened.parkRepository = mock(ParkRepository.class);
+    opened.restaurantRepository = mock(RestaurantRepository.class);
+    when(opened.animalRepository.streamAll()).thenReturn(Stream.empty());
+    when(opened.bookRepository.streamAll()).thenReturn(Stream.empty());
+    when(opened.parkRepository.streamAll()).thenReturn(Stream.of(shoreline));
+    when(opened.restaurantRepository.streamAll()).thenReturn(Stream.of(freebirds));
+    opened.entityManager = mock(EntityManager.class);
+    when(opened.entityManager.createQuery(anyString(), eq(Object[].class))).thenAnswer(invocation -> {
+      String entity = invocation.getArgument(0, String.class).replaceAll(".* from (\\w+) e$", "$1");
+      String[] row = databaseState.replaceAll(".*" + entity + "=([^,]*).*", "$1").split("/");
+      @SuppressWarnings("unchecked")
+      TypedQuery<Object[]> query = mock(TypedQuery.class);
+      when(query.getSingleResult()).thenReturn(new Object[] { Long.valueOf(row[0]), Long.valueOf(row[1]),
+          Long.valueOf(row[2]) });
+      return query;
+    });
+    return opened;
+  }
+
+  @AfterEach
+  void teardown() throws Exception {
+    service.close();
+  }
+
+  private List<String> keys(List<SearchHit> hits) {
+    return hits.stream().map(h -> h.getType() + ":" + h.getId()).collect(Collectors.toList());
+  }
+
+  @Test
+  void test_matches_across_types_best_first() throws Exception {
+    List<SearchHit> hits = service.search("taco", null, 10);
+
+    assertEquals(Set.of("restaurants:2", "books:1", "restaurants:1"), Set.copyOf(keys(hits)));
+    assertEquals("Taco Bell", hits.get(0).getLabel());
+    assertTrue(hits.get(0).getScore() > hits.get(2).getScore());
+  }
+
+  @Test
+  void test_types_filter_the_results() throws Exception {
+    assertEquals(List.of("books:1"), keys(service.search("taco", List.of("books", "parks"), 10)));
+  }
+
+  @Test
+  void test_other_fields_are_searched() throws Exception {
+    assertEquals(List.of("animals:4"), keys(service.search("pelecanus", null, 10)));
+    assertEquals(List.of("parks:3"), keys(service.search("shoreline dr", null, 1)));
+  }
+
+  @Test
+  void test_update_replaces_and_remove_deletes() throws Exception {
+    tacoBell.setName("Del Taco");
+    service.index(tacoBell);
+    service.remove(tacoBook);
+
+    assertEquals(Set.of("restaurants:2", "restaurants:1"), Set.copyOf(keys(service.search("taco", null, 10))));
+    assertEquals(List.of(), keys(service.search("bell", null, 10)));
+  }
+
+  @Test
+  void test_unsearchable_entities_are_ignored() throws Exception {
+    service.index(UCSBDate.builder().id(9L).name("Taco Tuesday").build());
+
+    assertEquals(3, service.search("taco", null, 10).size());
+  }
+
+  @Test
+  void test_reindex_rebuilds_from_the_repositories() throws Exception {
+    assertEquals(2, service.reindex());
+    assertEquals(List.of("restaurants:1"), keys(service.search("taco", null, 10)));
+    assertEquals(databaseState, service.recordedState());
+  }
+
+  @Test
+  void test_database_state_is_read_per_table() throws Exception {
+    assertEquals(databaseState, service.databaseState());
+  }
+
+  @Test
+  void test_an_index_that_matches_the_database_is_kept_at_startup(@TempDir Path dir) throws Exception {
+    SearchIndexService before = open(dir.toString());
+    Stream.of(freebirds, tacoBell, tacoBook, shoreline, pelican).forEach(before::index);
+    before.close();
+
+    SearchIndexService after = open(dir.toString());
+    after.reindexIfStale();
+
+    verify(after.restaurantRepository, never()).streamAll();
+    assertEquals(3, after.search("taco", null, 10).size());
+    after.close();
+  }
+
+  @Test
+  void test_an_index_the_database_moved_past_is_rebuilt_at_startup(@TempDir Path dir) throws Exception {
+    SearchIndexService before = open(dir.toString());
+    Stream.of(freebirds, tacoBell, tacoBook, shoreline, pelican).forEach(before::index);
+    before.close();
+
+    // Taco Bell was deleted, and others changed, while the app was down
+    databaseState = "animals=1/4/0,books=1/1/0,parks=1/3/0,restaurants=1/2/0";
+    SearchIndexService after = open(dir.toString());
+    after.reindexIfStale();
+
+    assertEquals(List.of("restaurants:1"), keys(after.search("taco", null, 10)));
+    assertEquals(databaseState, after.recordedState());
+    after.close();
+  }
+
+  @Test
+  void test_an_empty_index_is_built_at_startup() throws Exception {
+    SearchIndexService empty = open("");
+    empty.reindexIfStale();
+
+    assertEquals(List.of("restaurants:1"), keys(empty.search("taco", null, 10)));
+    empty.close();
+  }
+}
@@ -0,0 +1,42 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.Book;
+import edu.ucsb.cs156.example.entities.Park;
+
+class TableVersionServiceTests {
+
+  TableVersionService service = new TableVersionService();
+
+  @Test
+  void test_versions_are_per_table() {
+    assertEquals(0, service.version(Book.class));
+    service.changed(Book.class);
+    service.changed(Book.class);
+    assertEquals(2, service.version(Book.class));
+    assertEquals(0, service.version(Park.class));
+  }
+
+  @Test
+  void test_etag_changes_only_when_its_table_does() {
+    String book = service.etag(Book.class);
+    String park = service.etag(Park.class);
+    assertTrue(book.startsWith("\"books-") && book.endsWith("-0\""), book);
+
+    service.changed(Park.class);
+
+    assertEquals(book, service.etag(Book.class));
+    assertNotEquals(park, service.etag(Park.class));
+  }
+
+  @Test
+  void test_single_statement_deletes_count_as_changes() {
+    service.deleted(new EntityDeletedEvent(Book.builder().id(7L).build()));
+    assertEquals(1, service.version(Book.class));
+  }
+}
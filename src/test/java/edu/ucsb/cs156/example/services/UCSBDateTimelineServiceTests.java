@@ -0,0 +1,206 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+
+import edu.ucsb.cs156.example.entities.UCSBDate;
+import edu.ucsb.cs156.example.repositories.UCSBDateRepository;
+
+class UCSBDateTimelineServiceTests {
+
+  static final LocalDateTime NOW = LocalDateTime.parse("2023-01-09T08:00:00");
+
+  UCSBDateTimelineService service;
+
+  UCSBDate firstDay = date(1, "firstDayOfClasses", "2023-01-09T08:00:00");
+  UCSBDate mlkDay = date(2, "mlkDay", "2023-01-16T00:00:00");
+  UCSBDate presidentsDay = date(3, "presidentsDay", "2023-02-20T00:00:00");
+  UCSBDate lastDay = date(4, "lastDayOfClasses", "2023-03-17T00:00:00");
+
+  static UCSBDate date(long id, String name, String at) {
+    return UCSBDate.builder().id(id).name(name).quarterYYYYQ("20231").localDateTime(LocalDateTime.parse(at)).build();
+  }
+
+  void setNow(LocalDateTime now) {
+    service.clock = Clock.fixed(now.toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+  }
+
+  // the ucsbdates table, as findAllFrom pages it
+  List<UCSBDate> table = new ArrayList<>(List.of(firstDay, mlkDay, lastDay));
+
+  @BeforeEach
+  void setup() {
+    service = new UCSBDateTimelineService();
+    service.ucsbDateRepository = mock(UCSBDateRepository.class);
+    setNow(NOW);
+    when(service.ucsbDateRepository.findAllFrom(any(), any())).thenAnswer(invocation -> {
+      LocalDateTime from = invocation.getArgument(0);
+      Pageable page = invocation.getArgument(1);
+      return table.stream()
+          .filter(date -> !date.getLocalDateTime().isBefore(from))
+          .sorted(Comparator.comparing(UCSBDate::getLocalDateTime).thenComparing(UCSBDate::getId))
+          .limit(page.getPageSize())
+          .collect(Collectors.toList());
+    });
+  }
+
+  @Test
+  void test_first_read_loads_upcoming_dates_once() {
+    assertEquals(List.of(firstDay, mlkDay), service.upcoming(2));
+    assertEquals(List.of(firstDay, mlkDay, lastDay), service.upcoming(10));
+    verify(service.ucsbDateRepository, times(1)).findAllFrom(NOW, PageRequest.of(0, 1100));
+  }
+
+  @Test
+  void test_only_a_window_is_loaded_and_a_read_past_it_loads_more() {
+    service.windowSize = 2;
+
+    assertEquals(List.of(firstDay, mlkDay), service.upcoming(2));
+    assertEquals(2, service.size());
+    verify(service.ucsbDateRepository, times(1)).findAllFrom(NOW, PageRequest.of(0, 2));
+
+    assertEquals(List.of(firstDay, mlkDay, lastDay), service.upcoming(3));
+    verify(service.ucsbDateRepository, times(1)).findAllFrom(NOW, PageRequest.of(0, 3));
+  }
+
+  @Test
+  void test_a_window_that_holds_every_date_is_not_loaded_again() {
+    service.windowSize = 3;
+
+    // a full page might have more dates behind it; the second load is short
+    assertEquals(List.of(firstDay, mlkDay, lastDay), service.upcoming(10));
+    assertEquals(List.of(firstDay, mlkDay, lastDay), service.upcoming(10));
+
+    verify(service.ucsbDateRepository, times(1)).findAllFrom(NOW, PageRequest.of(0, 3));
+    verify(service.ucsbDateRepository, times(1)).findAllFrom(NOW, PageRequest.of(0, 10));
+  }
+
+  @Test
+  void test_dates_passing_out_of_the_window_are_refilled() {
+    service.windowSize = 2;
+    service.upcoming(2);
+    setNow(LocalDateTime.parse("2023-01-10T00:00:00"));
+    service.prune();
+
+    assertEquals(List.of(mlkDay, lastDay), service.upcoming(2));
+  }
+
+  @Test
+  void test_put_beyond_the_horizon_waits_for_the_next_load() {
+    service.windowSize = 2;
+    service.upcoming(1);
+
+    service.put(presidentsDay);
+    assertEquals(2, service.size());
+
+    table.add(presidentsDay);
+    assertEquals(List.of(firstDay, mlkDay, presidentsDay), service.upcoming(3));
+  }
+
+  @Test
+  void test_puts_inside_the_window_trim_it_once_it_doubles() {
+    service.windowSize = 2;
+    service.upcoming(1);
+
+    service.put(date(5, "a", "2023-01-10T00:00:00"));
+    service.put(date(6, "b", "2023-01-11T00:00:00"));
+    assertEquals(4, service.size());
+    service.put(date(7, "c", "2023-01-12T00:00:00"));
+
+    assertEquals(2, service.size());
+    assertEquals(List.of(firstDay, date(5, "a", "2023-01-10T00:00:00")), service.upcoming(2));
+    verify(service.ucsbDateRepository, times(1)).findAllFrom(any(), any());
+  }
+
+  @Test
+  void test_put_before_first_read_is_left_to_the_load() {
+    service.put(presidentsDay);
+
+    assertEquals(List.of(firstDay, mlkDay, lastDay), service.upcoming(10));
+  }
+
+  @Test
+  void test_put_inserts_and_moves_dates_in_time_order() {
+    service.upcoming(1);
+
+    service.put(presidentsDay);
+    assertEquals(List.of(firstDay, mlkDay, presidentsDay, lastDay), service.upcoming(10));
+
+    UCSBDate movedMlkDay = date(2, "mlkDay", "2023-03-01T00:00:00");
+    service.put(movedMlkDay);
+    assertEquals(List.of(firstDay, presidentsDay, movedMlkDay, lastDay), service.upcoming(10));
+    assertEquals(4, service.size());
+  }
+
+  @Test
+  void test_put_of_a_past_date_removes_it() {
+    service.upcoming(1);
+
+    service.put(date(2, "mlkDay", "2022-01-17T00:00:00"));
+
+    assertEquals(List.of(firstDay, lastDay), service.upcoming(10));
+  }
+
+  @Test
+  void test_remove_drops_the_date() {
+    service.upcoming(1);
+
+    service.remove(1L);
+    service.remove(99L);
+
+    assertEquals(List.of(mlkDay, lastDay), service.upcoming(10));
+  }
+
+  @Test
+  void test_dates_in_the_past_are_skipped_on_read_and_pruned() {
+    service.upcoming(1);
+    setNow(LocalDateTime.parse("2023-01-10T00:00:00"));
+
+    assertEquals(List.of(mlkDay, lastDay), service.upcoming(10));
+    assertEquals(3, service.size());
+
+    service.prune();
+    assertEquals(2, service.size());
+
+    // a pruned date can still be put back if it moves into the future
+    service.put(date(1, "firstDayOfClasses", "2023-01-11T08:00:00"));
+    assertEquals(3, service.size());
+  }
+
+  @Test
+  void test_prune_and_remove_before_first_read_do_not_load() {
+    service.prune();
+    service.remove(1L);
+
+    verify(service.ucsbDateRepository, never()).findAllFrom(any(), any());
+  }
+
+  @Test
+  void test_reload_rereads_the_table() {
+    service.upcoming(1);
+    table.clear();
+    table.add(presidentsDay);
+
+    service.reload();
+
+    assertEquals(List.of(presidentsDay), service.upcoming(10));
+  }
+}
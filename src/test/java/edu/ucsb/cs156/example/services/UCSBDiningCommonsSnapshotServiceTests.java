@@ -0,0 +1,180 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import edu.ucsb.cs156.example.entities.UCSBDiningCommons;
+import edu.ucsb.cs156.example.repositories.UCSBDiningCommonsRepository;
+import edu.ucsb.cs156.example.services.UCSBDiningCommonsSnapshotService.Snapshot;
+
+class UCSBDiningCommonsSnapshotServiceTests {
+
+  UCSBDiningCommonsSnapshotService service;
+
+  UCSBDiningCommons carrillo = UCSBDiningCommons.builder().code("carrillo").name("Carrillo").build();
+  UCSBDiningCommons dlg = UCSBDiningCommons.builder().code("de-la-guerra").name("De La Guerra").build();
+  UCSBDiningCommons ortega = UCSBDiningCommons.builder().code("ortega").name("Ortega")
+      .latitude(34.410987).longitude(-119.847705).build();
+
+  @BeforeEach
+  void setup() {
+    service = new UCSBDiningCommonsSnapshotService();
+    service.ucsbDiningCommonsRepository = mock(UCSBDiningCommonsRepository.class);
+    when(service.ucsbDiningCommonsRepository.findAll()).thenReturn(List.of(ortega, carrillo));
+  }
+
+  @Test
+  void test_first_read_loads_table_once_sorted_by_code() {
+    Snapshot first = service.current();
+    Snapshot second = service.current();
+
+    assertSame(first, second);
+    assertEquals(List.of(carrillo, ortega), List.copyOf(first.all()));
+    assertEquals(carrillo, first.get("carrillo").get());
+    assertTrue(first.get("munger-hall").isEmpty());
+    verify(service.ucsbDiningCommonsRepository, times(1)).findAll();
+  }
+
+  void table(UCSBDiningCommons row) {
+    when(service.ucsbDiningCommonsRepository.findById(row.getCode())).thenReturn(Optional.of(row));
+  }
+
+  @Test
+  void test_put_swaps_in_a_new_version_and_leaves_the_old_snapshot_alone() {
+    Snapshot before = service.current();
+    table(dlg);
+
+    service.put(dlg);
+    Snapshot after = service.current();
+
+    assertEquals(before.version() + 1, after.version());
+    assertEquals(List.of(carrillo, ortega), List.copyOf(before.all()));
+    assertEquals(List.of(carrillo, dlg, ortega), List.copyOf(after.all()));
+    assertThrows(UnsupportedOperationException.class, () -> after.byCode().remove("carrillo"));
+  }
+
+  @Test
+  void test_remove_swaps_in_a_new_version() {
+    Snapshot before = service.current();
+
+    service.remove("carrillo");
+    Snapshot after = service.current();
+
+    assertEquals(before.version() + 1, after.version());
+    assertEquals(List.of(ortega), List.copyOf(after.all()));
+  }
+
+  @Test
+  void test_reload_rereads_the_table() {
+    Snapshot before = service.current();
+    when(service.ucsbDiningCommonsRepository.findAll()).thenReturn(List.of(dlg));
+
+    service.reload();
+    Snapshot after = service.current();
+
+    assertEquals(before.version() + 1, after.version());
+    assertEquals(List.of(dlg), List.copyOf(after.all()));
+  }
+
+  @Test
+  void test_reload_of_an_unchanged_table_keeps_the_snapshot() {
+    Snapshot before = service.current();
+
+    service.reload();
+
+    assertSame(before, service.current());
+  }
+
+  @Test
+  void test_reload_before_first_read_loads_the_table() {
+    service.reload();
+
+    assertEquals(2, service.current().all().size());
+    verify(service.ucsbDiningCommonsRepository, times(1)).findAll();
+  }
+
+  @Test
+  void test_after_returns_at_most_limit_rows_past_the_cursor() {
+    table(dlg);
+    service.put(dlg);
+    Snapshot snapshot = service.current();
+
+    assertEquals(List.of(dlg), snapshot.after("carrillo", 1));
+    assertEquals(List.of(dlg, ortega), snapshot.after("carrillo", 5));
+    assertEquals(List.of(carrillo, dlg, ortega), snapshot.after("", 3));
+    assertEquals(List.of(), snapshot.after("ortega", 3));
+  }
+
+  @Test
+  void test_put_publishes_the_row_the_table_has_now() {
+    UCSBDiningCommons second = UCSBDiningCommons.builder().code("carrillo").name("Carrillo 2").version(2).build();
+    UCSBDiningCommons first = UCSBDiningCommons.builder().code("carrillo").name("Carrillo 1").version(1).build();
+    table(second);
+
+    // the two commits reach the snapshot in the other order
+    service.put(second);
+    Snapshot afterSecond = service.current();
+    service.put(first);
+
+    assertSame(afterSecond, service.current());
+    assertEquals("Carrillo 2", service.current().get("carrillo").get().getName());
+    assertEquals(2L, service.current().get("carrillo").get().getVersion());
+  }
+
+  @Test
+  void test_put_after_a_concurrent_delete_does_not_bring_the_row_back() {
+    UCSBDiningCommons updated = UCSBDiningCommons.builder().code("carrillo").name("Carrillo 1").version(1).build();
+    service.current();
+
+    // the update committed, then the delete committed and published first
+    service.remove("carrillo");
+    service.put(updated);
+
+    assertTrue(service.current().get("carrillo").isEmpty());
+  }
+
+  @Test
+  void test_remove_after_the_commons_was_created_again_keeps_it() {
+    UCSBDiningCommons created = UCSBDiningCommons.builder().code("carrillo").name("New Carrillo").build();
+    service.current();
+    table(created);
+
+    // deleted, created again, and the create published first
+    service.put(created);
+    service.remove("carrillo");
+
+    assertEquals("New Carrillo", service.current().get("carrillo").get().getName());
+  }
+
+  @Test
+  void test_callers_cannot_change_the_snapshot_through_the_rows_they_pass_or_get() {
+    UCSBDiningCommons put = UCSBDiningCommons.builder().code("de-la-guerra").name("De La Guerra").build();
+    table(put);
+    service.put(put);
+    Snapshot snapshot = service.current();
+
+    put.setName("changed after put");
+    snapshot.get("de-la-guerra").get().setName("changed after get");
+    snapshot.all().forEach(commons -> commons.setName("changed after all"));
+    snapshot.after("", 10).forEach(commons -> commons.setName("changed after after"));
+    snapshot.nearest(34.41, -119.85, 1).get(0).getCommons().setName("changed after nearest");
+
+    assertEquals("De La Guerra", snapshot.get("de-la-guerra").get().getName());
+    assertEquals("Carrillo", snapshot.get("carrillo").get().getName());
+    assertEquals("Ortega", snapshot.nearest(34.41, -119.85, 1).get(0).getCommons().getName());
+    assertNotSame(snapshot.get("ortega").get(), snapshot.get("ortega").get());
+  }
+}
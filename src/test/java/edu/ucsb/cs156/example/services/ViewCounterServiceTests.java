@@ -0,0 +1,190 @@
+package edu.ucsb.cs156.example.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import edu.ucsb.cs156.example.entities.Movie;
+import edu.ucsb.cs156.example.entities.Music;
+import edu.ucsb.cs156.example.services.ViewCounterService.Table;
+
+class ViewCounterServiceTests {
+
+  ViewCounterService service;
+
+  @BeforeEach
+  void setup() {
+    service = new ViewCounterService();
+    service.jdbcTemplate = mock(JdbcTemplate.class);
+    service.leaderboards = mock(LeaderboardService.class);
+    service.properties = new ViewCounterProperties();
+    service.tableVersions = new TableVersionService();
+    service.entityManagerFactory = mock(EntityManagerFactory.class, RETURNS_DEEP_STUBS);
+  }
+
+  @SuppressWarnings("unchecked")
+  List<Object[]> flushedBatch(Table table) {
+    ArgumentCaptor<List<Object[]>> batch = ArgumentCaptor.forClass(List.class);
+    verify(service.jdbcTemplate).batchUpdate(eq(table.sql), batch.capture());
+    return batch.getValue();
+  }
+
+  @Test
+  void test_views_are_counted_in_memory_and_flushed_as_one_batch_per_table() {
+    service.view(Table.MOVIES, 1L);
+    service.view(Table.MOVIES, 1L);
+    service.view(Table.MOVIES, 2L);
+    service.view(Table.MUSICS, 1L);
+
+    assertEquals(2, service.pending(Table.MOVIES, 1L));
+    verify(service.jdbcTemplate, never()).update(anyString(), any(Object[].class));
+
+    service.flush();
+
+    List<Object[]> movies = flushedBatch(Table.MOVIES);
+    assertEquals(2, movies.size());
+    assertTrue(movies.stream().anyMatch(row -> row[0].equals(2L) && row[1].equals(1L)));
+    assertTrue(movies.stream().anyMatch(row -> row[0].equals(1L) && row[1].equals(2L)));
+    assertEquals(1, flushedBatch(Table.MUSICS).size());
+    assertEquals(0, service.pending(Table.MOVIES, 1L));
+    verify(service.leaderboards).viewsChanged(Movie.class);
+    verify(service.leaderboards).viewsChanged(Music.class);
+    assertEquals(1, service.tableVersions.version(Movie.class));
+    assertEquals(1, service.tableVersions.version(Music.class));
+  }
+
+  @Test
+  void test_flushed_rows_are_evicted_before_and_after_the_write() {
+    service.view(Table.MOVIES, 1L);
+    service.view(Table.MOVIES, 2L);
+    Cache cache = service.entityManagerFactory.getCache();
+
+    service.flush();
+
+    InOrder order = inOrder(cache, service.jdbcTemplate);
+    order.verify(cache).evict(Movie.class, 1L);
+    order.verify(service.jdbcTemplate).batchUpdate(eq(Table.MOVIES.sql), anyList());
+    order.verify(cache).evict(Movie.class, 1L);
+    verify(cache, times(2)).evict(Movie.class, 2L);
+    verify(cache, never()).evict(eq(Music.class), any());
+  }
+
+  @Test
+  void test_a_failed_flush_only_evicts_before_the_write() {
+    service.view(Table.MOVIES, 1L);
+    when(service.jdbcTemplate.batchUpdate(anyString(), anyList()))
+        .thenThrow(new DataAccessResourceFailureException("down"));
+
+    service.flush();
+
+    verify(service.entityManagerFactory.getCache(), times(1)).evict(Movie.class, 1L);
+  }
+
+  @Test
+  void test_flush_with_nothing_counted_writes_nothing() {
+    service.view(Table.MOVIES, 1L);
+    service.flush();
+    service.flush(); // drops the now idle adder
+    service.flush();
+
+    verify(service.jdbcTemplate, times(1)).batchUpdate(anyString(), anyList());
+    verify(service.leaderboards, times(1)).viewsChanged(Movie.class);
+  }
+
+  @Test
+  void test_a_failed_flush_keeps_the_counts_for_the_next_one() {
+    service.view(Table.MOVIES, 1L);
+    when(service.jdbcTemplate.batchUpdate(anyString(), anyList()))
+        .thenThrow(new DataAccessResourceFailureException("down"));
+
+    service.flush();
+
+    assertEquals(1, service.pending(Table.MOVIES, 1L));
+    verify(service.leaderboards, never()).viewsChanged(any());
+    assertEquals(0, service.tableVersions.version(Movie.class));
+  }
+
+  @Test
+  void test_immediate_durability_writes_each_view() {
+    service.properties.setDurability(ViewCounterProperties.Durability.IMMEDIATE);
+    when(service.jdbcTemplate.update(Table.MUSICS.sql, 1L, 5L)).thenReturn(1);
+    when(service.jdbcTemplate.update(Table.MUSICS.sql, 1L, 6L)).thenReturn(0);
+
+    assertTrue(service.view(Table.MUSICS, 5L));
+    assertFalse(service.view(Table.MUSICS, 6L));
+    assertEquals(0, service.pending(Table.MUSICS, 5L));
+    assertEquals(1, service.tableVersions.version(Music.class));
+    verify(service.entityManagerFactory.getCache(), times(2)).evict(Music.class, 5L);
+    verify(service.entityManagerFactory.getCache(), times(1)).evict(Music.class, 6L);
+
+    service.flush();
+    service.flush();
+    verify(service.leaderboards, times(1)).viewsChanged(Music.class);
+    verify(service.jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+  }
+
+  @Test
+  void test_no_view_is_lost_or_double_counted_while_flushing_concurrently() throws Exception {
+    AtomicLong flushed = new AtomicLong();
+    when(service.jdbcTemplate.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+      List<Object[]> batch = invocation.getArgument(1);
+      batch.forEach(row -> flushed.addAndGet((Long) row[0]));
+      return new int[batch.size()];
+    });
+
+    int threads = 4;
+    int viewsPerThread = 50_000;
+    ExecutorService pool = Executors.newFixedThreadPool(threads + 1);
+    List<Future<?>> viewers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      viewers.add(pool.submit(() -> {
+        for (int i = 0; i < viewsPerThread; i++) {
+          service.view(Table.MOVIES, i % 8);
+        }
+      }));
+    }
+    Future<?> flusher = pool.submit(() -> {
+      while (viewers.stream().anyMatch(f -> !f.isDone())) {
+        service.flush();
+      }
+    });
+    for (Future<?> viewer : viewers) {
+      viewer.get();
+    }
+    flusher.get();
+    service.flush();
+    pool.shutdown();
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+
+    assertEquals((long) threads * viewsPerThread, flushed.get());
+  }
+}
@@ -1,10 +1,15 @@
 package edu.ucsb.cs156.example.testconfig;
 
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 
+import edu.ucsb.cs156.example.services.AdminMembershipService;
 import edu.ucsb.cs156.example.services.CurrentUserService;
 import edu.ucsb.cs156.example.services.GrantedAuthoritiesService;
+import edu.ucsb.cs156.example.services.TableVersionService;
 
 @TestConfiguration
 public class TestConfig {
@@ -18,4 +23,14 @@ public class TestConfig {
     public GrantedAuthoritiesService grantedAuthoritiesService() {
         return new GrantedAuthoritiesService();
     }
+
+    @Bean
+    public TableVersionService tableVersionService() {
+        return new TableVersionService();
+    }
+
+    @Bean
+    public AdminMembershipService adminMembershipService(@Value("${app.admin.emails}") List<String> adminEmails) {
+        return new AdminMembershipService(adminEmails);
+    }
 }